@@ -65,10 +65,17 @@ import com.github.hobbe.android.openkarotz.fragment.SystemFragment;
 import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
 import com.github.hobbe.android.openkarotz.karotz.IKarotz.SoundControlCommand;
 import com.github.hobbe.android.openkarotz.karotz.Karotz;
+import com.github.hobbe.android.openkarotz.karotz.OpenKarotz;
+import com.github.hobbe.android.openkarotz.karotz.OpenKarotzState;
+import com.github.hobbe.android.openkarotz.karotz.StateStore;
+import com.github.hobbe.android.openkarotz.karotz.StateSync;
 import com.github.hobbe.android.openkarotz.model.DrawerItem;
 import com.github.hobbe.android.openkarotz.net.NetUtils;
-import com.github.hobbe.android.openkarotz.task.GetStatusAsyncTask;
-import com.github.hobbe.android.openkarotz.task.SoundControlAsyncTask;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandCallback;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandExecutor;
+import com.github.hobbe.android.openkarotz.task.KarotzCommands;
+import com.github.hobbe.android.openkarotz.util.BitmapCache;
+import com.github.hobbe.android.openkarotz.util.TextureAtlas;
 
 /**
  * Main activity.
@@ -111,6 +118,14 @@ public class MainActivity extends FragmentActivity {
         return result;
     }
 
+    @Override
+    public void onLowMemory() {
+        // Radio logos are decoded again when needed
+        BitmapCache.getInstance().clear();
+        TextureAtlas.clear();
+        super.onLowMemory();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
 
@@ -146,9 +161,26 @@ public class MainActivity extends FragmentActivity {
         menu.findItem(R.id.action_settings).setVisible(!drawerOpen);
         menu.findItem(R.id.action_about).setVisible(!drawerOpen);
 
+        // Added by the radio page only
+        MenuItem search = menu.findItem(R.id.action_search_radio);
+        if (search != null) {
+            search.setVisible(!drawerOpen);
+        }
+
         return super.onPrepareOptionsMenu(menu);
     }
 
+    @Override
+    public void onUserInteraction() {
+        super.onUserInteraction();
+
+        // Poll faster while the user is active
+        StateSync sync = Karotz.getSync();
+        if (sync != null) {
+            sync.onUserActivity();
+        }
+    }
+
     @Override
     public void setTitle(CharSequence title) {
         appTitle = title;
@@ -192,6 +224,16 @@ public class MainActivity extends FragmentActivity {
         }
     }
 
+    @Override
+    protected void onPause() {
+        // Do not poll the Karotz while in background
+        StateSync sync = Karotz.getSync();
+        if (sync != null) {
+            sync.stop();
+        }
+        super.onPause();
+    }
+
     @Override
     protected void onPostCreate(Bundle savedInstanceState) {
         Log.v(LOG_TAG, "onPostCreate, bundle: " + savedInstanceState);
@@ -210,8 +252,7 @@ public class MainActivity extends FragmentActivity {
                 // Set up Karotz instance
                 initializeKarotz();
 
-                GetStatusTask task = new GetStatusTask(this);
-                task.execute();
+                KarotzCommandExecutor.getInstance().execute(this, KarotzCommands.getStatus(), new StatusCallback());
 
             } else {
                 Toast.makeText(MainActivity.this, getString(R.string.err_no_connection), Toast.LENGTH_LONG).show();
@@ -219,6 +260,16 @@ public class MainActivity extends FragmentActivity {
         }
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+
+        StateSync sync = Karotz.getSync();
+        if (sync != null) {
+            sync.start();
+        }
+    }
+
     /**
      * Disable fields.
      */
@@ -237,7 +288,7 @@ public class MainActivity extends FragmentActivity {
     }
 
     private void doActionStopSound() {
-        new SoundControlAsyncTask(this, SoundControlCommand.STOP).execute();
+        KarotzCommandExecutor.getInstance().execute(this, KarotzCommands.soundControl(SoundControlCommand.STOP), null);
     }
 
     /**
@@ -390,6 +441,17 @@ public class MainActivity extends FragmentActivity {
         }
 
         Karotz.initialize(hostname);
+
+        // Show the last known state until the Karotz answers
+        if (hostname != null && Karotz.getInstance() instanceof OpenKarotz) {
+            OpenKarotz karotz = (OpenKarotz) Karotz.getInstance();
+            if (StateStore.getInstance(this).attach(karotz)) {
+                OpenKarotzState state = karotz.getStateCache().peek();
+                if (state != null && state.getStatus().isOnline()) {
+                    enableFields();
+                }
+            }
+        }
     }
 
     private void selectDrawerItem(int position) {
@@ -542,24 +604,22 @@ public class MainActivity extends FragmentActivity {
         }
     }
 
-    private class GetStatusTask extends GetStatusAsyncTask {
+    private class StatusCallback extends KarotzCommandCallback<KarotzStatus> {
 
-        public GetStatusTask(Activity activity) {
-            super(activity);
+        public StatusCallback() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
-            KarotzStatus status = (KarotzStatus) result;
-
+        public void onSuccess(KarotzStatus status) {
             // Check Karotz status
             if (status != null && status.isOnline()) {
                 // Enable fields if Karotz is online
                 enableFields();
             } else {
-                Toast.makeText(getActivity(), getActivity().getString(R.string.err_cannot_connect), Toast.LENGTH_LONG).show();
+                // Fields may have been enabled from the last known state
+                disableFields();
+                Toast.makeText(MainActivity.this, getString(R.string.err_cannot_connect), Toast.LENGTH_LONG).show();
             }
         }
 
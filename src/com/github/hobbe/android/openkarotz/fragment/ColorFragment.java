@@ -28,15 +28,8 @@
 
 package com.github.hobbe.android.openkarotz.fragment;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.HashMap;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import android.app.Activity;
 import android.content.Context;
 import android.graphics.Color;
 import android.graphics.drawable.GradientDrawable;
@@ -55,13 +48,15 @@ import android.widget.Switch;
 
 import com.github.hobbe.android.openkarotz.R;
 import com.github.hobbe.android.openkarotz.activity.MainActivity;
-import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
 import com.github.hobbe.android.openkarotz.karotz.Karotz;
+import com.github.hobbe.android.openkarotz.karotz.KarotzSnapshot;
+import com.github.hobbe.android.openkarotz.karotz.StateChange;
+import com.github.hobbe.android.openkarotz.karotz.StateListener;
 import com.github.hobbe.android.openkarotz.layout.FlowLayout;
-import com.github.hobbe.android.openkarotz.task.GetColorAsyncTask;
-import com.github.hobbe.android.openkarotz.task.GetPulseAsyncTask;
-import com.github.hobbe.android.openkarotz.task.GetStatusAsyncTask;
-import com.github.hobbe.android.openkarotz.task.LedAsyncTask;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandExecutor;
+import com.github.hobbe.android.openkarotz.task.KarotzCommands;
+import com.github.hobbe.android.openkarotz.util.CatalogLoader;
+import com.github.hobbe.android.openkarotz.util.MainThreadExecutor;
 
 /**
  * Appearance fragment.
@@ -82,7 +77,8 @@ public class ColorFragment extends Fragment {
 
         if (savedInstanceState == null) {
             disableFields();
-            new GetStatusTask(getActivity()).execute();
+            // Load the state, fields are bound by the state listener
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.getSnapshot(), null);
         }
     }
 
@@ -92,7 +88,11 @@ public class ColorFragment extends Fragment {
         super.onCreate(savedInstanceState);
 
         // Load colors from asset
-        colors = loadColorsFromAsset();
+        colors = CatalogLoader.loadColors(getActivity(), "colors.json");
+        if (colors == null) {
+            Log.i(LOG_TAG, "Using default color set");
+            colors = DEFAULT_COLORS;
+        }
     }
 
     @Override
@@ -113,13 +113,25 @@ public class ColorFragment extends Fragment {
 
         initializeView(view);
 
-        // Load default values
-        new GetPulseTask(getActivity()).execute();
-        new GetColorTask(getActivity()).execute();
-
         return view;
     }
 
+    @Override
+    public void onPause() {
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().removeStateListener(stateListener);
+        }
+        super.onPause();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().addStateListener(stateListener, MainThreadExecutor.getInstance());
+        }
+    }
+
     private void disableFields() {
         setEnableFields(false);
     }
@@ -160,62 +172,6 @@ public class ColorFragment extends Fragment {
         initializeColorLayout(view);
     }
 
-    private String[] loadColorsFromAsset() {
-
-        String content = loadJsonFromAsset("colors.json");
-        try {
-            JSONObject json = new JSONObject(content);
-            JSONArray list = json.getJSONArray("colors");
-
-            int count = list.length();
-            String[] colorCodes = new String[count];
-
-            for (int i = 0; i < count; i++) {
-                JSONObject element = list.getJSONObject(i);
-                colorCodes[i] = element.getString("code");
-            }
-
-            Log.i(LOG_TAG, "Using color set from asset colors.json");
-            return colorCodes;
-
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Could not parse JSON content: " + e.getMessage(), e);
-        }
-
-        Log.i(LOG_TAG, "Using default color set");
-        // Return default colors
-        return DEFAULT_COLORS;
-    }
-
-    private String loadJsonFromAsset(String filename) {
-        String json = null;
-
-        InputStream is = null;
-        try {
-            is = getActivity().getAssets().open(filename);
-
-            int size = is.available();
-            byte[] buffer = new byte[size];
-            is.read(buffer);
-
-            json = new String(buffer, "UTF-8");
-
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Could not load JSON asset " + filename, e);
-            return null;
-        } finally {
-            if (is != null) {
-                try {
-                    is.close();
-                } catch (IOException e) {
-                    // Ignored
-                }
-            }
-        }
-
-        return json;
-    }
-
     private void setEnableFields(boolean enable) {
         pulseSwitch.setEnabled(enable);
 
@@ -314,77 +270,39 @@ public class ColorFragment extends Fragment {
         public void onClick(View btn) {
             Log.d(LOG_TAG, "Color button clicked: " + Integer.toHexString(color));
             boolean pulse = pulseSwitch.isChecked();
-            new LedChangeTask(getActivity(), color, pulse).execute();
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.led(color, pulse), null);
         }
 
 
         private int color = 0;
     }
 
-    private class GetColorTask extends GetColorAsyncTask {
-
-        public GetColorTask(Activity activity) {
-            super(activity);
-        }
-
-        @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
+    private class KarotzStateListener implements StateListener {
 
-            if (result != null) {
-                // TODO: update color selection
-            }
-        }
-    }
-
-    private class GetPulseTask extends GetPulseAsyncTask {
-
-        public GetPulseTask(Activity activity) {
-            super(activity);
+        public KarotzStateListener() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
+        public void onStateChanged(StateChange change) {
+            KarotzSnapshot state = change.getCurrent();
 
-            boolean pulsing = ((Boolean) result).booleanValue();
-            if (pulsing) {
+            if (change.isLedChanged()) {
                 // Check switch, without triggering listener
                 pulseSwitch.setOnCheckedChangeListener(null);
-                pulseSwitch.setChecked(pulsing);
+                pulseSwitch.setChecked(state.isPulsing());
                 pulseSwitch.setOnCheckedChangeListener(pulseSwitchCheckedChangeListener);
-            }
-        }
-    }
 
-    private class GetStatusTask extends GetStatusAsyncTask {
-
-        public GetStatusTask(Activity activity) {
-            super(activity);
-        }
-
-        @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
-            KarotzStatus status = (KarotzStatus) result;
-            boolean awake = (status != null && status.isAwake());
-            if (awake) {
-                enableFields();
-            } else {
-                disableFields();
+                // TODO: update color selection
             }
-        }
-    }
 
-    private class LedChangeTask extends LedAsyncTask {
-
-        public LedChangeTask(Activity activity, boolean pulse) throws IOException {
-            this(activity, Karotz.getInstance().getColor(), pulse);
-        }
-
-        public LedChangeTask(Activity activity, int color, boolean pulse) {
-            super(activity, color, pulse);
+            if (change.isStatusChanged()) {
+                if (state.getStatus().isAwake()) {
+                    enableFields();
+                } else {
+                    disableFields();
+                }
+            }
         }
     }
 
@@ -397,13 +315,7 @@ public class ColorFragment extends Fragment {
         @Override
         public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
             Log.d(LOG_TAG, "Pulse ON/OFF " + (isChecked ? "" : "un") + "checked");
-            LedChangeTask task = null;
-            try {
-                task = new LedChangeTask(getActivity(), isChecked);
-            } catch (IOException e) {
-                return;
-            }
-            task.execute();
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.pulse(isChecked), null);
         }
     }
 
@@ -417,6 +329,8 @@ public class ColorFragment extends Fragment {
 
     private String[] colors = null;
 
+    private final StateListener stateListener = new KarotzStateListener();
+
     private static final String[] DEFAULT_COLORS = {
             "FF0000", "00FF00", "0000FF", "FF00FF", "FFFF00", "00FFFF", "FFFFFF", "000000"
     };
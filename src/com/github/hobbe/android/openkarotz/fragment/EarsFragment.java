@@ -28,7 +28,8 @@
 
 package com.github.hobbe.android.openkarotz.fragment;
 
-import android.app.Activity;
+import java.util.concurrent.Executor;
+
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.util.Log;
@@ -42,16 +43,17 @@ import android.widget.Switch;
 
 import com.github.hobbe.android.openkarotz.R;
 import com.github.hobbe.android.openkarotz.activity.MainActivity;
+import com.github.hobbe.android.openkarotz.karotz.Karotz;
 import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
 import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
-import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
-import com.github.hobbe.android.openkarotz.task.EarModeAsyncTask;
-import com.github.hobbe.android.openkarotz.task.EarsAsyncTask;
-import com.github.hobbe.android.openkarotz.task.EarsRandomAsyncTask;
-import com.github.hobbe.android.openkarotz.task.EarsResetAsyncTask;
-import com.github.hobbe.android.openkarotz.task.GetEarModeAsyncTask;
-import com.github.hobbe.android.openkarotz.task.GetEarPositionsAsyncTask;
-import com.github.hobbe.android.openkarotz.task.GetStatusAsyncTask;
+import com.github.hobbe.android.openkarotz.karotz.KarotzSnapshot;
+import com.github.hobbe.android.openkarotz.karotz.StateChange;
+import com.github.hobbe.android.openkarotz.karotz.StateListener;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandCallback;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandExecutor;
+import com.github.hobbe.android.openkarotz.task.KarotzCommands;
+import com.github.hobbe.android.openkarotz.util.CoalescingChannel;
+import com.github.hobbe.android.openkarotz.util.MainThreadExecutor;
 import com.github.hobbe.android.openkarotz.widget.RotaryKnob;
 import com.github.hobbe.android.openkarotz.widget.RotaryKnob.RotaryKnobListener;
 
@@ -73,9 +75,8 @@ public class EarsFragment extends Fragment {
 
         if (savedInstanceState == null) {
             disableFields();
-            new GetStatusTask(getActivity()).execute();
-            new GetEarModeTask(getActivity()).execute();
-            new GetEarPositionsTask(getActivity()).execute();
+            // Load the state, fields are bound by the state listener
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.getSnapshot(), null);
         }
     }
 
@@ -99,6 +100,22 @@ public class EarsFragment extends Fragment {
         return view;
     }
 
+    @Override
+    public void onPause() {
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().removeStateListener(stateListener);
+        }
+        super.onPause();
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().addStateListener(stateListener, MainThreadExecutor.getInstance());
+        }
+    }
+
     private void disableFields() {
         setEnableFields(false);
     }
@@ -116,18 +133,36 @@ public class EarsFragment extends Fragment {
     private void initializeEarsKnob(View view) {
         earsKnob = (RotaryKnob) view.findViewById(R.id.rotaryKnobEars);
 
+        // Stream knob moves to the Karotz: one request at a time, newest position wins, in the write lane of the Karotz
+        // so that moves never overlap a reset, a random move or an ear mode change
+        Executor writeExecutor = new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                Karotz.getAsyncInstance().getWriteExecutor().execute(command);
+            }
+        };
+        earsChannel = new CoalescingChannel<EarPosition>(writeExecutor, new CoalescingChannel.Sink<EarPosition>() {
+
+            @Override
+            public void deliver(EarPosition position) throws Exception {
+                // Note: same position for both ears
+                Karotz.getInstance().ears(position, position);
+            }
+        });
+
         earsKnob.setKnobListener(new RotaryKnobListener() {
 
             @Override
             public void onKnobChanged(int direction, int angle) {
-                // TODO: show position in TextView?
+                earsChannel.offer(EarPosition.fromAngle(angle));
             }
 
             @Override
             public void onKnobReleased(int direction, int angle) {
                 EarPosition pos = EarPosition.fromAngle(angle);
                 // Log.v(LOG_TAG, "Knob released on " + angle + "°, ear position " + pos.toString());
-                new RotateEarsTask(getActivity(), pos).execute();
+                earsChannel.offer(pos);
             }
         });
     }
@@ -139,7 +174,7 @@ public class EarsFragment extends Fragment {
 
             @Override
             public void onClick(View v) {
-                new EarsRandomTask(getActivity()).execute();
+                KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.earsRandom(), new EarsRandomCallback());
             }
         });
     }
@@ -151,7 +186,7 @@ public class EarsFragment extends Fragment {
 
             @Override
             public void onClick(View v) {
-                new EarsResetTask(getActivity()).execute();
+                KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.earsReset(), new EarsResetCallback());
             }
         });
     }
@@ -177,17 +212,14 @@ public class EarsFragment extends Fragment {
     }
 
 
-    private class EarModeTask extends EarModeAsyncTask {
+    private class ChangeEarModeCallback extends KarotzCommandCallback<EarMode> {
 
-        public EarModeTask(Activity activity, EarMode mode) {
-            super(activity, mode);
+        public ChangeEarModeCallback() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
-            EarMode newMode = (EarMode) result;
+        public void onSuccess(EarMode newMode) {
             if (newMode != null) {
                 // Check switch, without triggering listener
                 earsDisabledSwitch.setOnCheckedChangeListener(null);
@@ -207,119 +239,92 @@ public class EarsFragment extends Fragment {
         @Override
         public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
             Log.d(LOG_TAG, "Ears disabled switch " + (isChecked ? "" : "un") + "checked");
-            new EarModeTask(getActivity(), isChecked ? EarMode.DISABLED : EarMode.ENABLED).execute();
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.earMode(isChecked ? EarMode.DISABLED : EarMode.ENABLED),
+                    new ChangeEarModeCallback());
         }
     }
 
-    private class EarsRandomTask extends EarsRandomAsyncTask {
+    private class EarsRandomCallback extends KarotzCommandCallback<EarPosition[]> {
 
-        public EarsRandomTask(Activity activity) {
-            super(activity);
+        public EarsRandomCallback() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
-            if (result != null) {
-                EarPosition[] positions = (EarPosition[]) result;
+        public void onSuccess(EarPosition[] positions) {
+            if (positions != null) {
                 // Note: currently one one knob for both ears
                 int angle = positions[0].toAngle();
                 Log.v(LOG_TAG, "Setting angle to " + angle + "°");
                 earsKnob.setAngle(angle * 1.0f);
             }
+            earsChannel.forget();
         }
     }
 
-    private class EarsResetTask extends EarsResetAsyncTask {
+    private class EarsResetCallback extends KarotzCommandCallback<Void> {
 
-        public EarsResetTask(Activity activity) {
-            super(activity);
+        public EarsResetCallback() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
+        public void onSuccess(Void result) {
             Log.v(LOG_TAG, "Resetting angle to 0°");
             earsKnob.setAngle(0f);
+            earsChannel.forget();
         }
     }
 
-    private class GetEarModeTask extends GetEarModeAsyncTask {
+    private class KarotzStateListener implements StateListener {
 
-        public GetEarModeTask(Activity activity) {
-            super(activity);
+        public KarotzStateListener() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
+        public void onStateChanged(StateChange change) {
+            KarotzSnapshot state = change.getCurrent();
 
-            EarMode earMode = (EarMode) result;
-            if (earMode != null) {
-                earsDisabledSwitch.setChecked(earMode.isDisabled());
+            if (change.isEarModeChanged()) {
+                // Check switch, without triggering listener
+                earsDisabledSwitch.setOnCheckedChangeListener(null);
+                earsDisabledSwitch.setChecked(state.getEarMode().isDisabled());
+                earsDisabledSwitch.setOnCheckedChangeListener(earsDisabledSwitchCheckedChangeListener);
             }
-        }
-    }
-
-    private class GetEarPositionsTask extends GetEarPositionsAsyncTask {
-
-        public GetEarPositionsTask(Activity activity) {
-            super(activity);
-        }
-
-        @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
 
-            EarPosition[] positions = (EarPosition[]) result;
-            if (positions != null) {
-                // Note: currently one one knob for both ears
-                int angle = positions[0].toAngle();
-                Log.v(LOG_TAG, "Setting angle to " + angle + "°");
-                earsKnob.setAngle(angle * 1.0f);
+            if (change.isEarsMoved()) {
+                // Note: currently one one knob for both ears. Left alone while dragged or while moves are still being
+                // sent: the state then lags behind the knob, and the knob turns relative to its current angle.
+                EarPosition position = state.getLeftEarPosition();
+                if (earsKnob.isTouched() || earsChannel.isBusy()) {
+                    Log.v(LOG_TAG, "Knob in use, not moved to " + position);
+                } else if (EarPosition.fromAngle(Math.round(earsKnob.getAngle())) != position) {
+                    int angle = position.toAngle();
+                    Log.v(LOG_TAG, "Setting angle to " + angle + "°");
+                    earsKnob.setAngle(angle * 1.0f);
+                }
             }
-        }
-    }
-
-    private class GetStatusTask extends GetStatusAsyncTask {
-
-        public GetStatusTask(Activity activity) {
-            super(activity);
-        }
-
-        @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
-            KarotzStatus status = (KarotzStatus) result;
 
-            // Awake
-            boolean awake = (status != null && status.isAwake());
-            if (awake) {
-                enableFields();
-            } else {
-                disableFields();
+            if (change.isStatusChanged()) {
+                if (state.getStatus().isAwake()) {
+                    enableFields();
+                } else {
+                    disableFields();
+                }
             }
         }
     }
 
-    private class RotateEarsTask extends EarsAsyncTask {
-
-        public RotateEarsTask(Activity activity, EarPosition position) {
-            // Note: same position for both ears
-            super(activity, position, position);
-        }
-
-    }
-
 
     private RotaryKnob earsKnob = null;
+    private CoalescingChannel<EarPosition> earsChannel = null;
     private ImageButton earsResetButton = null;
     private ImageButton earsRandomButton = null;
     private Switch earsDisabledSwitch = null;
     private EarsDisabledSwitchCheckedChangeListener earsDisabledSwitchCheckedChangeListener = null;
 
+    private final StateListener stateListener = new KarotzStateListener();
+
     private static final String LOG_TAG = EarsFragment.class.getSimpleName();
 }
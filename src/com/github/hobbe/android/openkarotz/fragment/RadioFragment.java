@@ -28,9 +28,8 @@
 
 package com.github.hobbe.android.openkarotz.fragment;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.List;
 
 import android.app.ActionBar;
 import android.app.Activity;
@@ -39,15 +38,32 @@ import android.support.v4.app.Fragment;
 import android.support.v4.view.ViewPager;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.MenuItem.OnActionExpandListener;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.SearchView;
+import android.widget.SearchView.OnQueryTextListener;
+import android.widget.Toast;
 
 import com.github.hobbe.android.openkarotz.R;
 import com.github.hobbe.android.openkarotz.activity.MainActivity;
 import com.github.hobbe.android.openkarotz.adapter.RadioTabsPagerAdapter;
+import com.github.hobbe.android.openkarotz.model.RadioCatalog;
 import com.github.hobbe.android.openkarotz.model.RadioGroupModel;
 import com.github.hobbe.android.openkarotz.model.RadioModel;
-import com.github.hobbe.android.openkarotz.util.AssetUtils;
+import com.github.hobbe.android.openkarotz.model.RadioSearchIndex;
+import com.github.hobbe.android.openkarotz.model.RadioSearchIndex.Hit;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandCallback;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandExecutor;
+import com.github.hobbe.android.openkarotz.task.KarotzCommands;
+import com.github.hobbe.android.openkarotz.util.CatalogLoader;
 
 /**
  * Radio fragment.
@@ -84,9 +100,32 @@ public class RadioFragment extends Fragment {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         Log.v(LOG_TAG, "onCreate");
-        radioGroups = loadRadios();
+
+        // Compiled catalog, read once per process; the JSON list is only a fallback
+        RadioCatalog catalog = RadioCatalog.getInstance(getActivity());
+        if (catalog != null) {
+            radioGroups = catalog.getGroups();
+            searchIndex = catalog.getSearchIndex();
+        } else {
+            radioGroups = CatalogLoader.loadRadios(getActivity(), "radios.json");
+        }
 
         super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.radio, menu);
+
+        MenuItem item = menu.findItem(R.id.action_search_radio);
+        item.setOnActionExpandListener(searchListener);
+
+        SearchView searchView = (SearchView) item.getActionView();
+        searchView.setQueryHint(getString(R.string.radio_search_hint));
+        searchView.setOnQueryTextListener(searchListener);
+
+        super.onCreateOptionsMenu(menu, inflater);
     }
 
     @Override
@@ -158,71 +197,89 @@ public class RadioFragment extends Fragment {
         Log.v(LOG_TAG, "Initializing pager adapter");
         // pagerAdapter = new RadioTabsPagerAdapter(getActivity().getSupportFragmentManager(), radioGroups);
         pagerAdapter = new RadioTabsPagerAdapter(getActivity(), viewPager, radioGroups);
+
+        // Search results, shown over the tabs while searching
+        searchLayout = view.findViewById(R.id.layoutRadioSearch);
+        searchAdapter = new ArrayAdapter<Hit>(getActivity(), android.R.layout.simple_list_item_1, new ArrayList<Hit>());
+        ListView searchList = (ListView) view.findViewById(R.id.listRadioSearch);
+        searchList.setAdapter(searchAdapter);
+        searchList.setEmptyView(view.findViewById(R.id.textRadioSearchEmpty));
+        searchList.setOnItemClickListener(searchListener);
     }
 
-    private RadioGroupModel[] loadRadios() {
-        Log.d(LOG_TAG, "Loading radio list");
+    private void search(String query) {
+        if (searchLayout == null) {
+            return;
+        }
+        if (query == null || query.trim().length() == 0) {
+            searchLayout.setVisibility(View.GONE);
+            searchAdapter.clear();
+            return;
+        }
 
-        RadioGroupModel[] radios = null;
+        if (searchIndex == null) {
+            searchIndex = new RadioSearchIndex(radioGroups);
+        }
+        List<Hit> hits = searchIndex.search(query, MAX_SEARCH_RESULTS);
 
-        try {
-            JSONObject json = AssetUtils.loadJsonFromAsset(getActivity(), "radios.json");
-            JSONArray list = json.getJSONArray("radios");
+        searchAdapter.setNotifyOnChange(false);
+        searchAdapter.clear();
+        searchAdapter.addAll(hits);
+        searchAdapter.notifyDataSetChanged();
+        searchLayout.setVisibility(View.VISIBLE);
+    }
 
-            int count = list.length();
-            radios = new RadioGroupModel[count];
 
-            for (int i = 0; i < count; i++) {
-                JSONObject element = list.getJSONObject(i);
-                RadioGroupModel group = loadRadioGroup(element);
-                if (group != null) {
-                    Log.v(LOG_TAG, "Loaded radio group: " + group.getName());
-                    radios[i] = group;
-                }
-            }
+    private class PlayRadioCallback extends KarotzCommandCallback<Boolean> {
 
-            Log.i(LOG_TAG, "Using radio list from asset radios.json");
+        public PlayRadioCallback(String name) {
+            this.name = name;
+        }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Could not parse JSON content: " + e.getMessage(), e);
+        @Override
+        public void onSuccess(Boolean result) {
+            Toast.makeText(getActivity(), getString(R.string.radio_starting) + " " + name, Toast.LENGTH_SHORT).show();
         }
 
-        return radios;
-    }
 
-    /**
-     * Load a radio group.
-     * @param json the JSON object containing the radio group definition
-     * @return the radio group
-     */
-    private static RadioGroupModel loadRadioGroup(JSONObject json) {
+        private final String name;
+    }
 
-        RadioGroupModel group = null;
-        try {
-            String groupId = json.getString("id");
-            String groupName = json.getString("name");
-            Log.d(LOG_TAG, "Loading radio group: " + groupName);
+    private class SearchListener implements OnQueryTextListener, OnActionExpandListener, OnItemClickListener {
 
-            group = new RadioGroupModel(groupId, groupName);
+        public SearchListener() {
+            // Nothing to do
+        }
 
-            JSONArray list = json.getJSONArray("radios");
+        @Override
+        public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+            RadioModel radio = searchAdapter.getItem(position).getRadio();
+            Log.d(LOG_TAG, "Radio search result clicked: " + radio.getUrl());
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.sound(radio.getUrl()), new PlayRadioCallback(radio.getName()));
+        }
 
-            int count = list.length();
-            for (int i = 0; i < count; i++) {
-                JSONObject element = list.getJSONObject(i);
-                String id = element.getString("id");
-                String name = element.getString("name");
-                String url = element.getString("url");
+        @Override
+        public boolean onMenuItemActionCollapse(MenuItem item) {
+            search(null);
+            return true;
+        }
 
-                // Log.v(LOG_TAG, "Adding radio " + name + " to group " + group.getName());
-                group.addRadio(new RadioModel(id, name, url));
-            }
+        @Override
+        public boolean onMenuItemActionExpand(MenuItem item) {
+            return true;
+        }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Could not parse JSON content: " + e.getMessage(), e);
+        @Override
+        public boolean onQueryTextChange(String query) {
+            search(query);
+            return true;
         }
 
-        return group;
+        @Override
+        public boolean onQueryTextSubmit(String query) {
+            search(query);
+            return true;
+        }
     }
 
 
@@ -232,5 +289,12 @@ public class RadioFragment extends Fragment {
 
     private RadioGroupModel[] radioGroups = null;
 
+    private RadioSearchIndex searchIndex = null;
+    private View searchLayout = null;
+    private ArrayAdapter<Hit> searchAdapter = null;
+    private final SearchListener searchListener = new SearchListener();
+
+    private static final int MAX_SEARCH_RESULTS = 20;
+
     private static final String LOG_TAG = RadioFragment.class.getSimpleName();
 }
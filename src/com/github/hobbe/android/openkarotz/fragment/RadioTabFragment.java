@@ -32,7 +32,6 @@ import java.util.HashMap;
 import java.util.Map;
 
 import android.app.Activity;
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.util.Log;
@@ -45,13 +44,18 @@ import android.widget.ImageButton;
 import android.widget.Toast;
 
 import com.github.hobbe.android.openkarotz.R;
-import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+import com.github.hobbe.android.openkarotz.karotz.Karotz;
+import com.github.hobbe.android.openkarotz.karotz.StateChange;
+import com.github.hobbe.android.openkarotz.karotz.StateListener;
 import com.github.hobbe.android.openkarotz.layout.FlowLayout;
 import com.github.hobbe.android.openkarotz.model.RadioGroupModel;
 import com.github.hobbe.android.openkarotz.model.RadioModel;
-import com.github.hobbe.android.openkarotz.task.GetStatusAsyncTask;
-import com.github.hobbe.android.openkarotz.task.SoundAsyncTask;
-import com.github.hobbe.android.openkarotz.util.AssetUtils;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandCallback;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandExecutor;
+import com.github.hobbe.android.openkarotz.task.KarotzCommands;
+import com.github.hobbe.android.openkarotz.util.BitmapCache;
+import com.github.hobbe.android.openkarotz.util.MainThreadExecutor;
+import com.github.hobbe.android.openkarotz.util.TextureAtlas;
 
 /**
  * Tab fragment for radio buttons.
@@ -71,7 +75,8 @@ public class RadioTabFragment extends Fragment {
 
         if (savedInstanceState == null) {
             disableFields();
-            new GetStatusTask(getActivity()).execute();
+            // Load the state, fields are bound by the state listener
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.getStatus(), null);
         }
 
         Log.v(LOG_TAG, "onActivityCreated: " + (group == null ? "no group" : group.getName()));
@@ -128,6 +133,9 @@ public class RadioTabFragment extends Fragment {
 
     @Override
     public void onPause() {
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().removeStateListener(stateListener);
+        }
         super.onPause();
         Log.v(LOG_TAG, "onPause: " + (group == null ? "no group" : group.getName()));
     }
@@ -135,6 +143,9 @@ public class RadioTabFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().addStateListener(stateListener, MainThreadExecutor.getInstance());
+        }
         Log.v(LOG_TAG, "onResume: " + (group == null ? "no group" : group.getName()));
     }
 
@@ -176,19 +187,16 @@ public class RadioTabFragment extends Fragment {
         Log.v(LOG_TAG, "Adding buttons to radio layout: " + (group == null ? "no group" : group.getName()));
         buttonMap.clear();
 
+        // Logos are packed in an atlas decoded once, in background, for all tabs
+        TextureAtlas atlas = TextureAtlas.load(getActivity(), RADIO_ATLAS, atlasCallback);
+
         for (RadioModel radio : group.getRadios()) {
             // Button
             ImageButton btn = (ImageButton) LayoutInflater.from(getActivity()).inflate(R.layout.button_radio, null);
 
             btn.setContentDescription(radio.getName());
 
-            Bitmap bmp = AssetUtils.loadBitmapFromAsset(getActivity(), "radios/" + radio.getId() + ".png");
-            if (bmp != null) {
-                btn.setImageBitmap(bmp);
-            } else {
-                // TODO: Use 80x80 default radio image
-                btn.setImageResource(android.R.drawable.ic_btn_speak_now);
-            }
+            bindLogo(btn, radio.getId(), atlas);
 
             btn.setOnClickListener(new RadioButtonOnClickListener(radio.getUrl(), radio.getName()));
 
@@ -197,6 +205,24 @@ public class RadioTabFragment extends Fragment {
         }
     }
 
+    private void bindLogo(ImageButton btn, String id, TextureAtlas atlas) {
+        if (atlas != null && atlas.contains(id)) {
+            btn.setImageDrawable(atlas.getDrawable(id));
+            return;
+        }
+        if (atlas == null && !atlasFailed) {
+            // Atlas being decoded
+            btn.setImageResource(android.R.color.transparent);
+            return;
+        }
+
+        // Not packed in the atlas: decode the single logo, cached across tabs
+        // TODO: Use 80x80 default radio image
+        int logoSize = getResources().getDimensionPixelSize(R.dimen.radio_logo_size);
+        BitmapCache.getInstance().load(getActivity(), "radios/" + id + ".png", logoSize, logoSize, btn, android.R.color.transparent,
+                android.R.drawable.ic_btn_speak_now);
+    }
+
     private void disableFields() {
         setEnableFields(false);
     }
@@ -248,37 +274,50 @@ public class RadioTabFragment extends Fragment {
     }
 
 
-    private class GetStatusTask extends GetStatusAsyncTask {
+    private class AtlasCallback implements TextureAtlas.Callback {
+
+        public AtlasCallback() {
+            // Nothing to do
+        }
+
+        @Override
+        public void onAtlasLoaded(String name, TextureAtlas atlas) {
+            if (!isAdded()) {
+                return;
+            }
+            atlasFailed = (atlas == null);
+            for (Map.Entry<String, ImageButton> entry : buttonMap.entrySet()) {
+                bindLogo(entry.getValue(), entry.getKey(), atlas);
+            }
+        }
+    }
+
+    private class KarotzStateListener implements StateListener {
 
-        public GetStatusTask(Activity activity) {
-            super(activity);
+        public KarotzStateListener() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
-            KarotzStatus status = (KarotzStatus) result;
-            boolean awake = (status != null && status.isAwake());
-            if (awake) {
-                enableFields();
-            } else {
-                disableFields();
+        public void onStateChanged(StateChange change) {
+            if (change.isStatusChanged()) {
+                if (change.getCurrent().getStatus().isAwake()) {
+                    enableFields();
+                } else {
+                    disableFields();
+                }
             }
         }
     }
 
-    private class PlayRadioTask extends SoundAsyncTask {
+    private class PlayRadioCallback extends KarotzCommandCallback<Boolean> {
 
-        public PlayRadioTask(Activity activity, String url, String name) {
-            super(activity, url);
+        public PlayRadioCallback(String name) {
             this.name = name;
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
+        public void onSuccess(Boolean result) {
             Toast.makeText(getActivity(), getString(R.string.radio_starting) + " " + name, Toast.LENGTH_SHORT).show();
         }
 
@@ -296,7 +335,7 @@ public class RadioTabFragment extends Fragment {
         @Override
         public void onClick(View btn) {
             Log.d(LOG_TAG, "Radio button clicked: " + url);
-            new PlayRadioTask(getActivity(), url, name).execute();
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.sound(url), new PlayRadioCallback(name));
         }
 
 
@@ -313,5 +352,12 @@ public class RadioTabFragment extends Fragment {
     private RadioGroupModel group;
     private final Map<String, ImageButton> buttonMap = new HashMap<String, ImageButton>();
 
+    private final StateListener stateListener = new KarotzStateListener();
+
+    private final TextureAtlas.Callback atlasCallback = new AtlasCallback();
+    private boolean atlasFailed = false;
+
+    private static final String RADIO_ATLAS = "radios_atlas";
+
     private static final String LOG_TAG = RadioTabFragment.class.getSimpleName();
 }
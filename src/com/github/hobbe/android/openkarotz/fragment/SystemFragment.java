@@ -28,8 +28,11 @@
 
 package com.github.hobbe.android.openkarotz.fragment;
 
-import android.app.Activity;
+import java.util.Locale;
+import java.util.Map;
+
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -42,11 +45,23 @@ import android.widget.Toast;
 
 import com.github.hobbe.android.openkarotz.R;
 import com.github.hobbe.android.openkarotz.activity.MainActivity;
-import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
-import com.github.hobbe.android.openkarotz.task.GetStatusAsyncTask;
-import com.github.hobbe.android.openkarotz.task.GetVersionAsyncTask;
-import com.github.hobbe.android.openkarotz.task.SleepAsyncTask;
-import com.github.hobbe.android.openkarotz.task.WakeupAsyncTask;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz;
+import com.github.hobbe.android.openkarotz.karotz.Karotz;
+import com.github.hobbe.android.openkarotz.karotz.KarotzDispatcher;
+import com.github.hobbe.android.openkarotz.karotz.KarotzSnapshot;
+import com.github.hobbe.android.openkarotz.karotz.OpenKarotz;
+import com.github.hobbe.android.openkarotz.karotz.OpenKarotzState;
+import com.github.hobbe.android.openkarotz.karotz.StateCache;
+import com.github.hobbe.android.openkarotz.karotz.StateChange;
+import com.github.hobbe.android.openkarotz.karotz.StateListener;
+import com.github.hobbe.android.openkarotz.karotz.StateSync;
+import com.github.hobbe.android.openkarotz.net.EndpointMetrics;
+import com.github.hobbe.android.openkarotz.net.LatencyHistogram;
+import com.github.hobbe.android.openkarotz.net.NetUtils;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandCallback;
+import com.github.hobbe.android.openkarotz.task.KarotzCommandExecutor;
+import com.github.hobbe.android.openkarotz.task.KarotzCommands;
+import com.github.hobbe.android.openkarotz.util.MainThreadExecutor;
 
 /**
  * System fragment.
@@ -65,8 +80,8 @@ public class SystemFragment extends Fragment {
         super.onActivityCreated(savedInstanceState);
 
         if (savedInstanceState == null) {
-            new GetStatusTask(getActivity()).execute();
-            new GetVersionTask(getActivity()).execute();
+            // Load the state, fields are bound by the state listener
+            KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.getSnapshot(), new SnapshotCallback());
         }
     }
 
@@ -92,7 +107,11 @@ public class SystemFragment extends Fragment {
 
     @Override
     public void onPause() {
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().removeStateListener(stateListener);
+        }
         onOffSwitch.setOnCheckedChangeListener(null);
+        handler.removeCallbacks(diagnosticsRefresher);
         super.onPause();
     }
 
@@ -100,6 +119,22 @@ public class SystemFragment extends Fragment {
     public void onResume() {
         super.onResume();
         onOffSwitch.setOnCheckedChangeListener(onOffSwitchCheckedChangeListener);
+        if (Karotz.isInitialized()) {
+            Karotz.getInstance().addStateListener(stateListener, MainThreadExecutor.getInstance());
+        }
+        handler.post(diagnosticsRefresher);
+    }
+
+    private void initializeDiagnostics(View view) {
+        karotzFreeSpaceTextView = (TextView) view.findViewById(R.id.textKarotzFreeSpace);
+        usbFreeSpaceTextView = (TextView) view.findViewById(R.id.textUsbFreeSpace);
+        ttsCacheSizeTextView = (TextView) view.findViewById(R.id.textTtsCacheSize);
+        moodCountTextView = (TextView) view.findViewById(R.id.textMoodCount);
+        circuitTextView = (TextView) view.findViewById(R.id.textCircuit);
+        pollIntervalTextView = (TextView) view.findViewById(R.id.textPollInterval);
+        cacheHitsTextView = (TextView) view.findViewById(R.id.textCacheHits);
+        inFlightTextView = (TextView) view.findViewById(R.id.textInFlight);
+        latenciesTextView = (TextView) view.findViewById(R.id.textLatencies);
     }
 
     private void initializeOnOffSwitch(View view) {
@@ -119,42 +154,120 @@ public class SystemFragment extends Fragment {
 
         // On/Off status
         initializeOnOffSwitch(view);
+
+        // Diagnostics
+        initializeDiagnostics(view);
     }
 
+    private void refreshDiagnostics() {
+        KarotzDispatcher dispatcher = KarotzCommandExecutor.getInstance().getDispatcher();
+        setText(inFlightTextView, dispatcher.getActiveCount() + " / " + dispatcher.getQueueDepth());
 
-    private class GetStatusTask extends GetStatusAsyncTask {
+        IKarotz karotz = (Karotz.isInitialized() ? Karotz.getInstance() : null);
+        if (!(karotz instanceof OpenKarotz)) {
+            return;
+        }
+        OpenKarotz ok = (OpenKarotz) karotz;
+
+        // Device figures, decoded from the last status answer
+        OpenKarotzState state = ok.getStateCache().peek();
+        if (state != null) {
+            setText(karotzFreeSpaceTextView, toFigure(state.getKarotzFreeSpace()));
+            setText(usbFreeSpaceTextView, toFigure(state.getUsbFreeSpace()));
+            setText(ttsCacheSizeTextView, toFigure(state.getTtsCacheSize()));
+            setText(moodCountTextView, (state.getMoodCount() < 0 ? "-" : String.valueOf(state.getMoodCount())));
+        }
 
-        public GetStatusTask(Activity activity) {
-            super(activity);
+        switch (ok.getCircuitBreaker().getState()) {
+        case OPEN:
+            setText(circuitTextView, getString(R.string.diag_circuit_open));
+            break;
+        case HALF_OPEN:
+            setText(circuitTextView, getString(R.string.diag_circuit_half_open));
+            break;
+        default:
+            setText(circuitTextView, getString(R.string.diag_circuit_closed));
+            break;
         }
 
-        @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
+        StateSync sync = Karotz.getSync();
+        setText(pollIntervalTextView, (sync != null && sync.isRunning() ? (sync.getInterval() / 1000) + " s" : "-"));
+
+        StateCache cache = ok.getStateCache();
+        long hits = cache.getHitCount() + cache.getStaleHitCount();
+        long total = hits + cache.getMissCount();
+        setText(cacheHitsTextView, (total == 0 ? "-" : (hits * 100 / total) + "% (" + hits + " / " + total + ")"));
+
+        // One line per command sent to this Karotz
+        String prefix = ok.getHostname() + ":";
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, EndpointMetrics> entry : NetUtils.getEndpointMetrics().entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            EndpointMetrics metrics = entry.getValue();
+            LatencyHistogram latencies = metrics.getLatencies();
+            String path = entry.getKey().substring(entry.getKey().lastIndexOf('/') + 1);
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(String.format(Locale.US, "%-12s %5d %5d %5d ms  x%d", path, Long.valueOf(latencies.getPercentile(50)),
+                    Long.valueOf(latencies.getPercentile(95)), Long.valueOf(latencies.getPercentile(99)), Long.valueOf(metrics.getRequestCount())));
+            if (metrics.getErrorCount() > 0) {
+                sb.append(" !").append(metrics.getErrorCount());
+            }
+        }
+        setText(latenciesTextView, (sb.length() == 0 ? "-" : sb.toString()));
+    }
 
-            KarotzStatus status = (KarotzStatus) result;
-            onOffSwitch.setChecked(status != null && status.isAwake());
+    private static void setText(TextView view, String text) {
+        // Avoid a layout pass when nothing changed
+        if (!text.contentEquals(view.getText())) {
+            view.setText(text);
         }
     }
 
-    private class GetVersionTask extends GetVersionAsyncTask {
+    private static String toFigure(String value) {
+        return (value == null || value.length() == 0 ? "-" : value);
+    }
 
-        public GetVersionTask(Activity activity) {
-            super(activity);
+
+    private class KarotzStateListener implements StateListener {
+
+        public KarotzStateListener() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
+        public void onStateChanged(StateChange change) {
+            KarotzSnapshot state = change.getCurrent();
 
-            if (result == null) {
-                Toast.makeText(SystemFragment.this.getActivity(), getString(R.string.err_cannot_getversion), Toast.LENGTH_SHORT).show();
-            } else {
-                versionTextView.setText(result.toString());
+            if (change.isStatusChanged()) {
+                // Check switch, without triggering listener
+                onOffSwitch.setOnCheckedChangeListener(null);
+                onOffSwitch.setChecked(state.getStatus().isAwake());
+                onOffSwitch.setOnCheckedChangeListener(onOffSwitchCheckedChangeListener);
+            }
+
+            if (change.isVersionChanged() && state.getVersion() != null) {
+                versionTextView.setText(state.getVersion());
             }
         }
     }
 
+    private class DiagnosticsRefresher implements Runnable {
+
+        public DiagnosticsRefresher() {
+            // Nothing to do
+        }
+
+        @Override
+        public void run() {
+            refreshDiagnostics();
+            handler.postDelayed(this, DIAGNOSTICS_REFRESH_INTERVAL);
+        }
+    }
+
     private class OnOffSwitchCheckedChangeListener implements CompoundButton.OnCheckedChangeListener {
 
         public OnOffSwitchCheckedChangeListener() {
@@ -166,23 +279,21 @@ public class SystemFragment extends Fragment {
             Log.d(LOG_TAG, "ON/OFF " + (isChecked ? "" : "un") + "checked");
 
             if (isChecked) {
-                new WakeupTask(getActivity()).execute();
+                KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.wakeup(), new WakeupCallback());
             } else {
-                new SleepTask(getActivity()).execute();
+                KarotzCommandExecutor.getInstance().execute(getActivity(), KarotzCommands.sleep(), new SleepCallback());
             }
         }
     }
 
-    private class SleepTask extends SleepAsyncTask {
+    private class SleepCallback extends KarotzCommandCallback<Boolean> {
 
-        public SleepTask(Activity activity) {
-            super(activity);
+        public SleepCallback() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
-
+        public void onSuccess(Boolean result) {
             if (Boolean.FALSE.equals(result)) {
                 Toast.makeText(SystemFragment.this.getActivity(), getString(R.string.err_cannot_sleep), Toast.LENGTH_SHORT).show();
 
@@ -194,16 +305,28 @@ public class SystemFragment extends Fragment {
         }
     }
 
-    private class WakeupTask extends WakeupAsyncTask {
+    private class SnapshotCallback extends KarotzCommandCallback<KarotzSnapshot> {
 
-        public WakeupTask(Activity activity) {
-            super(activity);
+        public SnapshotCallback() {
+            // Nothing to do
         }
 
         @Override
-        public void onPostExecute(Object result) {
-            super.onPostExecute(result);
+        public void onSuccess(KarotzSnapshot snapshot) {
+            if (snapshot.getVersion() == null) {
+                Toast.makeText(SystemFragment.this.getActivity(), getString(R.string.err_cannot_getversion), Toast.LENGTH_SHORT).show();
+            }
+        }
+    }
+
+    private class WakeupCallback extends KarotzCommandCallback<Boolean> {
+
+        public WakeupCallback() {
+            // Nothing to do
+        }
 
+        @Override
+        public void onSuccess(Boolean result) {
             if (Boolean.FALSE.equals(result)) {
                 Toast.makeText(SystemFragment.this.getActivity(), getString(R.string.err_cannot_wakeup), Toast.LENGTH_SHORT).show();
 
@@ -221,5 +344,22 @@ public class SystemFragment extends Fragment {
 
     private TextView versionTextView = null;
 
+    private TextView karotzFreeSpaceTextView = null;
+    private TextView usbFreeSpaceTextView = null;
+    private TextView ttsCacheSizeTextView = null;
+    private TextView moodCountTextView = null;
+    private TextView circuitTextView = null;
+    private TextView pollIntervalTextView = null;
+    private TextView cacheHitsTextView = null;
+    private TextView inFlightTextView = null;
+    private TextView latenciesTextView = null;
+
+    private final StateListener stateListener = new KarotzStateListener();
+
+    private final Handler handler = new Handler();
+    private final Runnable diagnosticsRefresher = new DiagnosticsRefresher();
+
+    private static final long DIAGNOSTICS_REFRESH_INTERVAL = 2000L;
+
     private static final String LOG_TAG = SystemFragment.class.getSimpleName();
 }
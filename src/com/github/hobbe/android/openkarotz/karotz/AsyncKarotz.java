@@ -0,0 +1,370 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.SoundControlCommand;
+
+/**
+ * Asynchronous facade over an {@link IKarotz}.
+ * <p>
+ * Every method runs the corresponding blocking call on a {@link KarotzDispatcher} and returns a {@link KarotzFuture}
+ * immediately. Calls changing the Karotz run one after the other, with the other writes to the same host. Calls can be
+ * chained, e.g. wake up, then change the LED, then play a sound:
+ *
+ * <pre>
+ * async.wakeup(true).thenCompose(new KarotzFunction&lt;Boolean, KarotzFuture&lt;Void&gt;&gt;() {
+ *     public KarotzFuture&lt;Void&gt; apply(Boolean awake) {
+ *         return async.led(Color.BLUE, false);
+ *     }
+ * }).thenCompose(...);
+ * </pre>
+ */
+public class AsyncKarotz {
+
+    /**
+     * Initialize a new asynchronous Karotz, using the application dispatcher.
+     * @param karotz the Karotz to drive
+     */
+    public AsyncKarotz(IKarotz karotz) {
+        this(karotz, KarotzDispatcher.getDefault());
+    }
+
+    /**
+     * Initialize a new asynchronous Karotz.
+     * @param karotz the Karotz to drive
+     * @param dispatcher the dispatcher running the blocking calls
+     */
+    public AsyncKarotz(IKarotz karotz, KarotzDispatcher dispatcher) {
+        this.karotz = karotz;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Change the Karotz ear position.
+     * @param left the left ear position
+     * @param right the right ear position
+     * @return the future resulting ear positions as array[left, right]
+     * @see IKarotz#ears(EarPosition, EarPosition)
+     */
+    public KarotzFuture<EarPosition[]> ears(final EarPosition left, final EarPosition right) {
+        return submitWrite(new Callable<EarPosition[]>() {
+
+            @Override
+            public EarPosition[] call() throws Exception {
+                return karotz.ears(left, right);
+            }
+        });
+    }
+
+    /**
+     * Change the Karotz ear mode.
+     * @param mode the ear mode to set
+     * @return the future resulting ear mode
+     * @see IKarotz#earsMode(EarMode)
+     */
+    public KarotzFuture<EarMode> earsMode(final EarMode mode) {
+        return submitWrite(new Callable<EarMode>() {
+
+            @Override
+            public EarMode call() throws Exception {
+                return karotz.earsMode(mode);
+            }
+        });
+    }
+
+    /**
+     * Turn ears in a random position.
+     * @return the future resulting ear positions as array[left, right]
+     * @see IKarotz#earsRandom()
+     */
+    public KarotzFuture<EarPosition[]> earsRandom() {
+        return submitWrite(new Callable<EarPosition[]>() {
+
+            @Override
+            public EarPosition[] call() throws Exception {
+                return karotz.earsRandom();
+            }
+        });
+    }
+
+    /**
+     * Reset ear position.
+     * @return the future completion
+     * @see IKarotz#earsReset()
+     */
+    public KarotzFuture<Void> earsReset() {
+        return submitWrite(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                karotz.earsReset();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Get the Karotz LED color.
+     * @return the future LED color
+     * @see IKarotz#getColor()
+     */
+    public KarotzFuture<Integer> getColor() {
+        return submit(new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                return Integer.valueOf(karotz.getColor());
+            }
+        });
+    }
+
+    /**
+     * Get the Karotz ear mode.
+     * @return the future ear mode
+     * @see IKarotz#getEarMode()
+     */
+    public KarotzFuture<EarMode> getEarMode() {
+        return submit(new Callable<EarMode>() {
+
+            @Override
+            public EarMode call() throws Exception {
+                return karotz.getEarMode();
+            }
+        });
+    }
+
+    /**
+     * Get the Karotz ear positions.
+     * @return the future ear positions as array[left, right]
+     * @see IKarotz#getEarPositions()
+     */
+    public KarotzFuture<EarPosition[]> getEarPositions() {
+        return submit(new Callable<EarPosition[]>() {
+
+            @Override
+            public EarPosition[] call() throws Exception {
+                return karotz.getEarPositions();
+            }
+        });
+    }
+
+    /**
+     * Get the dispatcher running the blocking calls.
+     * @return the dispatcher
+     */
+    public KarotzDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Get the underlying blocking Karotz.
+     * @return the Karotz
+     */
+    public IKarotz getKarotz() {
+        return karotz;
+    }
+
+    /**
+     * Get a complete view of the Karotz state.
+     * @return the future snapshot
+     * @see IKarotz#getSnapshot()
+     */
+    public KarotzFuture<KarotzSnapshot> getSnapshot() {
+        return submit(new Callable<KarotzSnapshot>() {
+
+            @Override
+            public KarotzSnapshot call() throws Exception {
+                return karotz.getSnapshot();
+            }
+        });
+    }
+
+    /**
+     * Get an executor running tasks with the writes to this Karotz, one at a time, e.g. to stream ear moves.
+     * @return the write executor
+     */
+    public Executor getWriteExecutor() {
+        return dispatcher.getWriteLane(karotz.getHostname());
+    }
+
+    /**
+     * Get the Karotz status.
+     * @return the future status
+     * @see IKarotz#getStatus()
+     */
+    public KarotzFuture<KarotzStatus> getStatus() {
+        return submit(new Callable<KarotzStatus>() {
+
+            @Override
+            public KarotzStatus call() throws Exception {
+                return karotz.getStatus();
+            }
+        });
+    }
+
+    /**
+     * Get the Karotz version.
+     * @return the future version
+     * @see IKarotz#getVersion()
+     */
+    public KarotzFuture<String> getVersion() {
+        return submit(new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                return karotz.getVersion();
+            }
+        });
+    }
+
+    /**
+     * Check if Karotz LED is pulsing.
+     * @return the future pulsing state
+     * @see IKarotz#isPulsing()
+     */
+    public KarotzFuture<Boolean> isPulsing() {
+        return submit(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(karotz.isPulsing());
+            }
+        });
+    }
+
+    /**
+     * Change LED color and pulse.
+     * @param color the LED color
+     * @param pulse if {@code true}, LED will pulse
+     * @return the future completion
+     * @see IKarotz#led(int, boolean)
+     */
+    public KarotzFuture<Void> led(final int color, final boolean pulse) {
+        return submitWrite(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                karotz.led(color, pulse);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Put Karotz to sleep.
+     * @return the future success of the action
+     * @see IKarotz#sleep()
+     */
+    public KarotzFuture<Boolean> sleep() {
+        return submitWrite(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(karotz.sleep());
+            }
+        });
+    }
+
+    /**
+     * Make Karotz play a sound from a URL.
+     * @param url the sound URL to play
+     * @return the future success of the action
+     * @see IKarotz#sound(String)
+     */
+    public KarotzFuture<Boolean> sound(final String url) {
+        return submitWrite(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(karotz.sound(url));
+            }
+        });
+    }
+
+    /**
+     * Call sound control with the given command.
+     * @param command the sound control command
+     * @return the future success of the action
+     * @see IKarotz#soundControl(SoundControlCommand)
+     */
+    public KarotzFuture<Boolean> soundControl(final SoundControlCommand command) {
+        return submitWrite(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(karotz.soundControl(command));
+            }
+        });
+    }
+
+    /**
+     * Run any operation reading this Karotz.
+     * @param operation the operation
+     * @return the future result of the operation
+     */
+    public <T> KarotzFuture<T> submit(Callable<T> operation) {
+        return dispatcher.submit(operation);
+    }
+
+    /**
+     * Run any operation changing this Karotz, once its previous writes are done.
+     * @param operation the operation
+     * @return the future result of the operation
+     */
+    public <T> KarotzFuture<T> submitWrite(Callable<T> operation) {
+        return dispatcher.submitWrite(karotz.getHostname(), operation);
+    }
+
+    /**
+     * Wake up Karotz.
+     * @param silent if {@code true}, no sound is played on wake up
+     * @return the future success of the action
+     * @see IKarotz#wakeup(boolean)
+     */
+    public KarotzFuture<Boolean> wakeup(final boolean silent) {
+        return submitWrite(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(karotz.wakeup(silent));
+            }
+        });
+    }
+
+
+    private final IKarotz karotz;
+
+    private final KarotzDispatcher dispatcher;
+}
@@ -0,0 +1,480 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.net.ResponseHandler;
+
+/**
+ * Answer of an OpenKarotz CGI command.
+ * <p>
+ * The CGI answers are flat JSON objects whose values are all strings, e.g.
+ * {@code {"return":"0","left":"3","right":"7"}}. Such answers are scanned directly on the bytes: only the offsets of
+ * keys and values are recorded, and values are converted to primitives on access without building a DOM nor
+ * intermediate strings. Any other shape (nested values, numbers, escaped characters) falls back to {@link JSONObject}.
+ * <p>
+ * An answer that cannot be parsed at all is empty: it has no key.
+ */
+public final class CgiAnswer {
+
+    private CgiAnswer(byte[] data, int[] offsets, int count) {
+        this.data = data;
+        this.offsets = offsets;
+        this.count = count;
+        this.keys = null;
+        this.values = null;
+    }
+
+    private CgiAnswer(String[] keys, String[] values) {
+        this.data = null;
+        this.offsets = null;
+        this.count = keys.length;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Get the value of a key as a boolean flag: {@code true} if the value is {@code "1"}.
+     * @param key the key
+     * @return the flag, {@code false} if the key is missing
+     */
+    public boolean getFlag(String key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return false;
+        }
+        if (data != null) {
+            int start = offsets[4 * i + 2];
+            int end = offsets[4 * i + 3];
+            return (end - start == 1 && data[start] == '1');
+        }
+        return "1".equals(values[i]);
+    }
+
+    /**
+     * Get the value of a key as a hexadecimal number, e.g. a {@code RRGGBB} color code.
+     * @param key the key
+     * @param defaultValue the value returned if the key is missing or not hexadecimal
+     * @return the value
+     */
+    public int getHex(String key, int defaultValue) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return defaultValue;
+        }
+        if (data == null) {
+            try {
+                return (int) Long.parseLong(values[i], 16);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        int start = offsets[4 * i + 2];
+        int end = offsets[4 * i + 3];
+        if (start == end || end - start > 8) {
+            return defaultValue;
+        }
+        int value = 0;
+        for (int p = start; p < end; p++) {
+            int d = Character.digit(data[p], 16);
+            if (d < 0) {
+                return defaultValue;
+            }
+            value = (value << 4) | d;
+        }
+        return value;
+    }
+
+    /**
+     * Get the value of a key as a decimal integer.
+     * @param key the key
+     * @param defaultValue the value returned if the key is missing or not a number
+     * @return the value
+     */
+    public int getInt(String key, int defaultValue) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return defaultValue;
+        }
+        if (data == null) {
+            try {
+                return Integer.parseInt(values[i]);
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+
+        int start = offsets[4 * i + 2];
+        int end = offsets[4 * i + 3];
+        boolean negative = (start < end && data[start] == '-');
+        if (negative) {
+            start++;
+        }
+        if (start == end || end - start > 9) {
+            return defaultValue;
+        }
+        int value = 0;
+        for (int p = start; p < end; p++) {
+            int d = data[p] - '0';
+            if (d < 0 || d > 9) {
+                return defaultValue;
+            }
+            value = value * 10 + d;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Get the message explaining a failure, if any.
+     * @return the message or {@code null}
+     */
+    public String getMessage() {
+        return getString(KEY_MESSAGE);
+    }
+
+    /**
+     * Get the value of a key as a string.
+     * @param key the key
+     * @return the value, {@code null} if the key is missing
+     */
+    public String getString(String key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        if (data == null) {
+            return values[i];
+        }
+        int start = offsets[4 * i + 2];
+        return decode(data, start, offsets[4 * i + 3] - start);
+    }
+
+    /**
+     * Check if the answer contains the given key.
+     * @param key the key
+     * @return {@code true} if the key is present
+     */
+    public boolean has(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Check if the answer has a return code, which all valid CGI answers have.
+     * @return {@code true} if this is a valid answer
+     */
+    public boolean isValid() {
+        return has(KEY_RETURN);
+    }
+
+    /**
+     * Check if the command was successful: return code is {@code "0"}.
+     * @return {@code true} if the command was successful
+     */
+    public boolean isOk() {
+        int i = indexOf(KEY_RETURN);
+        if (i < 0) {
+            return false;
+        }
+        if (data != null) {
+            int start = offsets[4 * i + 2];
+            return (offsets[4 * i + 3] - start == 1 && data[start] == '0');
+        }
+        return "0".equals(values[i]);
+    }
+
+    /**
+     * Get the number of keys.
+     * @return the number of keys
+     */
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        if (data != null) {
+            return decode(data, 0, data.length);
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('"').append(keys[i]).append("\":\"").append(values[i]).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Compare the content of this answer with another one, byte by byte if both were scanned.
+     * @param other the other answer, may be {@code null}
+     * @return {@code true} if both answers have the same content
+     */
+    boolean contentEquals(CgiAnswer other) {
+        if (other == this) {
+            return true;
+        }
+        if (other == null) {
+            return false;
+        }
+        if (data != null && other.data != null) {
+            return Arrays.equals(data, other.data);
+        }
+        return toString().equals(other.toString());
+    }
+
+    private int indexOf(String key) {
+        int len = key.length();
+        if (data == null) {
+            for (int i = 0; i < count; i++) {
+                if (key.equals(keys[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int start = offsets[4 * i];
+            if (offsets[4 * i + 1] - start != len) {
+                continue;
+            }
+            boolean match = true;
+            for (int c = 0; c < len; c++) {
+                if (data[start + c] != key.charAt(c)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse an answer from raw bytes. The bytes are copied: the answer stays valid after the buffer is reused.
+     * @param buffer the buffer
+     * @param offset the offset of the answer in the buffer
+     * @param length the length of the answer
+     * @return the answer, empty if it cannot be parsed
+     */
+    public static CgiAnswer parse(byte[] buffer, int offset, int length) {
+        byte[] data = new byte[length];
+        System.arraycopy(buffer, offset, data, 0, length);
+
+        CgiAnswer answer = scan(data);
+        if (answer == null) {
+            answer = parseWithJsonObject(decode(data, 0, length));
+        }
+        return answer;
+    }
+
+    /**
+     * Parse an answer from a string.
+     * @param json the JSON answer
+     * @return the answer, empty if it cannot be parsed
+     */
+    public static CgiAnswer parse(String json) {
+        if (json == null) {
+            return EMPTY;
+        }
+        try {
+            byte[] data = json.getBytes("UTF-8");
+            return parse(data, 0, data.length);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(byte[] data, int offset, int length) {
+        try {
+            return new String(data, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static CgiAnswer parseWithJsonObject(String json) {
+        try {
+            JSONObject jo = new JSONObject(json);
+
+            int n = 0;
+            Iterator<?> it = jo.keys();
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+
+            String[] keys = new String[n];
+            String[] values = new String[n];
+            it = jo.keys();
+            for (int i = 0; i < n; i++) {
+                keys[i] = (String) it.next();
+                Object value = jo.opt(keys[i]);
+                values[i] = (value == null || value == JSONObject.NULL) ? null : value.toString();
+            }
+
+            return new CgiAnswer(keys, values);
+
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Cannot parse answer: " + json);
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Scan a flat object with string values. Returns {@code null} if the input has any other shape.
+     */
+    private static CgiAnswer scan(byte[] data) {
+        int[] offsets = new int[4 * 8];
+        int n = 0;
+        int len = data.length;
+
+        int p = skipWhitespace(data, 0);
+        if (p >= len || data[p] != '{') {
+            return null;
+        }
+        p = skipWhitespace(data, p + 1);
+
+        if (p < len && data[p] == '}') {
+            return (skipWhitespace(data, p + 1) == len) ? new CgiAnswer(data, offsets, 0) : null;
+        }
+
+        while (true) {
+            if (n * 4 == offsets.length) {
+                int[] grown = new int[offsets.length * 2];
+                System.arraycopy(offsets, 0, grown, 0, offsets.length);
+                offsets = grown;
+            }
+
+            // Key
+            int end = scanString(data, p);
+            if (end < 0) {
+                return null;
+            }
+            offsets[4 * n] = p + 1;
+            offsets[4 * n + 1] = end;
+
+            p = skipWhitespace(data, end + 1);
+            if (p >= len || data[p] != ':') {
+                return null;
+            }
+            p = skipWhitespace(data, p + 1);
+
+            // Value
+            end = scanString(data, p);
+            if (end < 0) {
+                return null;
+            }
+            offsets[4 * n + 2] = p + 1;
+            offsets[4 * n + 3] = end;
+            n++;
+
+            p = skipWhitespace(data, end + 1);
+            if (p >= len) {
+                return null;
+            }
+            if (data[p] == '}') {
+                return (skipWhitespace(data, p + 1) == len) ? new CgiAnswer(data, offsets, n) : null;
+            }
+            if (data[p] != ',') {
+                return null;
+            }
+            p = skipWhitespace(data, p + 1);
+        }
+    }
+
+    /**
+     * Scan a string without escapes starting at the given quote. Returns the offset of the closing quote or -1.
+     */
+    private static int scanString(byte[] data, int start) {
+        if (start >= data.length || data[start] != '"') {
+            return -1;
+        }
+        for (int p = start + 1; p < data.length; p++) {
+            byte b = data[p];
+            if (b == '"') {
+                return p;
+            }
+            if (b == '\\') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] data, int start) {
+        int p = start;
+        while (p < data.length && (data[p] == ' ' || data[p] == '\t' || data[p] == '\r' || data[p] == '\n')) {
+            p++;
+        }
+        return p;
+    }
+
+
+    /** Handler parsing a CGI answer from a response body. */
+    public static final ResponseHandler<CgiAnswer> HANDLER = new ResponseHandler<CgiAnswer>() {
+
+        @Override
+        public CgiAnswer handle(byte[] body, int length) throws IOException {
+            return parse(body, 0, length);
+        }
+    };
+
+    /** Key of the return code. */
+    public static final String KEY_RETURN = "return";
+
+    /** Key of the failure message. */
+    public static final String KEY_MESSAGE = "msg";
+
+    private final byte[] data;
+    private final int[] offsets;
+    private final int count;
+
+    private final String[] keys;
+    private final String[] values;
+
+    private static final CgiAnswer EMPTY = new CgiAnswer(new String[0], new String[0]);
+
+    private static final String LOG_TAG = CgiAnswer.class.getSimpleName();
+}
@@ -0,0 +1,194 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregated result of an operation run on several Karotz of a {@link KarotzFleet}.
+ * @param <T> the result type of the operation on a single Karotz
+ */
+public class FleetResult<T> {
+
+    /**
+     * Initialize a new result for the given hosts.
+     * @param hosts the hosts the operation runs on
+     */
+    FleetResult(List<String> hosts) {
+        this.hosts = new ArrayList<String>(hosts);
+    }
+
+    /**
+     * Get the number of hosts on which the operation failed or timed out.
+     * @return the failure count
+     */
+    public synchronized int getFailureCount() {
+        return outcomes.size() - getSuccessCount();
+    }
+
+    /**
+     * Get the failures, by host.
+     * @return the failure causes by host, in fan-out order
+     */
+    public synchronized Map<String, Throwable> getFailures() {
+        Map<String, Throwable> failures = new LinkedHashMap<String, Throwable>();
+        for (String host : hosts) {
+            Outcome<T> outcome = outcomes.get(host);
+            if (outcome != null && outcome.error != null) {
+                failures.put(host, outcome.error);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Get the hosts the operation ran on.
+     * @return the hosts, in fan-out order
+     */
+    public List<String> getHosts() {
+        return new ArrayList<String>(hosts);
+    }
+
+    /**
+     * Get the latencies, by host.
+     * @return the latencies in milliseconds by host, in fan-out order
+     */
+    public synchronized Map<String, Long> getLatencies() {
+        Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+        for (String host : hosts) {
+            Outcome<T> outcome = outcomes.get(host);
+            if (outcome != null) {
+                latencies.put(host, Long.valueOf(outcome.latency));
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * Get the time the operation took on the given host, until it succeeded, failed or timed out.
+     * @param host the host
+     * @return the latency in milliseconds, or {@code -1} if the host has no outcome
+     */
+    public synchronized long getLatency(String host) {
+        Outcome<T> outcome = outcomes.get(host);
+        return (outcome == null ? -1 : outcome.latency);
+    }
+
+    /**
+     * Get the number of hosts on which the operation succeeded.
+     * @return the success count
+     */
+    public synchronized int getSuccessCount() {
+        int count = 0;
+        for (Outcome<T> outcome : outcomes.values()) {
+            if (outcome.error == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the successful results, by host.
+     * @return the results by host, in fan-out order
+     */
+    public synchronized Map<String, T> getSuccesses() {
+        Map<String, T> successes = new LinkedHashMap<String, T>();
+        for (String host : hosts) {
+            Outcome<T> outcome = outcomes.get(host);
+            if (outcome != null && outcome.error == null) {
+                successes.put(host, outcome.value);
+            }
+        }
+        return successes;
+    }
+
+    /**
+     * Check if the operation succeeded on all hosts.
+     * @return {@code true} if there is no failure
+     */
+    public synchronized boolean isSuccessful() {
+        return getSuccessCount() == hosts.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder("FleetResult {");
+        for (String host : hosts) {
+            Outcome<T> outcome = outcomes.get(host);
+            sb.append(' ').append(host).append(": ");
+            if (outcome == null) {
+                sb.append("pending");
+            } else if (outcome.error == null) {
+                sb.append("ok in ").append(outcome.latency).append("ms");
+            } else {
+                sb.append("failed in ").append(outcome.latency).append("ms (").append(outcome.error.getMessage()).append(')');
+            }
+            sb.append(',');
+        }
+        if (!hosts.isEmpty()) {
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.append(" }").toString();
+    }
+
+    /**
+     * Record the outcome of the operation on a host.
+     * @param host the host
+     * @param value the result, if successful
+     * @param error the failure cause, or {@code null} if successful
+     * @param latency the latency in milliseconds
+     */
+    synchronized void record(String host, T value, Throwable error, long latency) {
+        outcomes.put(host, new Outcome<T>(value, error, latency));
+    }
+
+
+    private static class Outcome<T> {
+
+        public Outcome(T value, Throwable error, long latency) {
+            this.value = value;
+            this.error = error;
+            this.latency = latency;
+        }
+
+
+        final T value;
+        final Throwable error;
+        final long latency;
+    }
+
+
+    private final List<String> hosts;
+
+    private final Map<String, Outcome<T>> outcomes = new LinkedHashMap<String, Outcome<T>>();
+}
@@ -29,12 +29,21 @@
 package com.github.hobbe.android.openkarotz.karotz;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * This interface describes a Karotz.
  */
 public interface IKarotz {
 
+    /**
+     * Register a listener notified of each change of the Karotz state, whatever caused it: a command, or a status
+     * refresh.
+     * @param listener the listener
+     * @param executor the serial executor running notifications, e.g. the UI thread
+     */
+    void addStateListener(StateListener listener, Executor executor);
+
     /**
      * Change the Karotz ear position.
      * <p>
@@ -94,6 +103,13 @@ public interface IKarotz {
      */
     String getHostname();
 
+    /**
+     * Get a complete view of the Karotz state: status, version, LED and ears, as known from a single status request.
+     * @return the snapshot
+     * @throws IOException if an I/O error occurs
+     */
+    KarotzSnapshot getSnapshot() throws IOException;
+
     /**
      * Get the Karotz status.
      * @return the status
@@ -123,6 +139,12 @@ public interface IKarotz {
      */
     void led(int color, boolean pulse) throws IOException;
 
+    /**
+     * Unregister a state listener.
+     * @param listener the listener
+     */
+    void removeStateListener(StateListener listener);
+
     /**
      * Put Karotz to sleep.
      * @return {@code true} if action was successful, else {@code false}. If Karotz was already sleeping, {@code true}
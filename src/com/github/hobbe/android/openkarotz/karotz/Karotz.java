@@ -37,6 +37,27 @@ public class Karotz {
         // No instance
     }
 
+    /**
+     * Get the asynchronous facade of the Karotz instance.
+     *
+     * @return the asynchronous Karotz instance.
+     */
+    public static AsyncKarotz getAsyncInstance() {
+        if (async == null) {
+            throw new IllegalAccessError();
+        }
+        return async;
+    }
+
+    /**
+     * Get the fleet of all Karotz used by the application. The Karotz instance is part of it.
+     *
+     * @return the Karotz fleet.
+     */
+    public static KarotzFleet getFleet() {
+        return FLEET;
+    }
+
     /**
      * Get the Karotz instance.
      * 
@@ -49,15 +70,50 @@ public class Karotz {
         return k;
     }
 
+    /**
+     * Get the background state synchronization of the Karotz instance.
+     *
+     * @return the state synchronization, or {@code null} if not initialized or not an OpenKarotz
+     */
+    public static StateSync getSync() {
+        return sync;
+    }
+
+    /**
+     * Check if the Karotz instance is initialized.
+     *
+     * @return {@code true} if {@link #getInstance()} can be called
+     */
+    public static boolean isInitialized() {
+        return k != null;
+    }
+
     /**
      * Initialize the Karotz application singleton.
      * 
      * @param hostname the Karotz hostname.
      */
     public static void initialize(String hostname) {
-        k = new OpenKarotz(hostname);
+        k = FLEET.add(hostname);
+        async = new AsyncKarotz(k);
+
+        // Keep polling the new instance only, if it was already running
+        boolean syncing = (sync != null && sync.isRunning());
+        if (sync != null) {
+            sync.stop();
+        }
+        sync = (k instanceof OpenKarotz ? new StateSync((OpenKarotz) k) : null);
+        if (syncing && sync != null) {
+            sync.start();
+        }
     }
 
 
     private static IKarotz k = null;
+
+    private static AsyncKarotz async = null;
+
+    private static StateSync sync = null;
+
+    private static final KarotzFleet FLEET = new KarotzFleet();
 }
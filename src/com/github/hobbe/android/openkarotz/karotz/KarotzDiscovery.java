@@ -0,0 +1,376 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.net.NetUtils;
+import com.github.hobbe.android.openkarotz.util.KarotzThreadFactory;
+
+/**
+ * Discovers OpenKarotz devices on the local network.
+ * <p>
+ * Each target address is probed with a request to {@code /cgi-bin/status}, and recognized as an OpenKarotz if it
+ * answers with a status. Probes run in parallel, bounded by the configured parallelism, with short timeouts so that a
+ * full /24 sweep takes a few seconds. Devices are reported to the listener as soon as they answer.
+ */
+public class KarotzDiscovery {
+
+    /**
+     * Initialize a new discovery engine with default parallelism and timeouts.
+     */
+    public KarotzDiscovery() {
+        this(DEFAULT_PARALLELISM, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Initialize a new discovery engine.
+     * @param parallelism the maximum number of concurrent probes
+     * @param connectTimeout the connect timeout of a probe, in milliseconds
+     * @param readTimeout the read timeout of a probe, in milliseconds
+     */
+    public KarotzDiscovery(int parallelism, int connectTimeout, int readTimeout) {
+        this.parallelism = parallelism;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Probe the given addresses. Cancelling the returned future stops the probes not yet started.
+     * @param targets the addresses to probe
+     * @param listener the listener notified of each device found and of the end of the scan, may be {@code null}
+     * @param listenerExecutor the executor running listener notifications, e.g. the UI thread
+     * @return the future list of devices found, in discovery order
+     */
+    public KarotzFuture<List<Device>> scan(List<InetSocketAddress> targets, Listener listener, Executor listenerExecutor) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 1L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new KarotzThreadFactory("KarotzDiscovery"));
+        KarotzFuture<List<Device>> future = new KarotzFuture<List<Device>>(listenerExecutor);
+        Scan scan = new Scan(targets.size(), pool, future, listener, listenerExecutor);
+
+        Log.d(LOG_TAG, "Probing " + targets.size() + " addresses, " + parallelism + " at a time");
+
+        if (targets.isEmpty()) {
+            scan.finish();
+            return future;
+        }
+
+        for (InetSocketAddress target : targets) {
+            pool.execute(new ProbeTask(target, scan));
+        }
+        return future;
+    }
+
+    /**
+     * Probe all hosts of the /24 subnet of the given address, on the default HTTP port.
+     * @param address an address in the subnet, typically the device's own address; it is not probed
+     * @param listener the listener notified of each device found and of the end of the scan, may be {@code null}
+     * @param listenerExecutor the executor running listener notifications, e.g. the UI thread
+     * @return the future list of devices found, in discovery order
+     */
+    public KarotzFuture<List<Device>> scanSubnet(Inet4Address address, Listener listener, Executor listenerExecutor) {
+        return scan(getSubnetTargets(address, HTTP_PORT), listener, listenerExecutor);
+    }
+
+    private Device probe(InetSocketAddress target) {
+        String host = target.getAddress().getHostAddress();
+        long start = System.nanoTime();
+
+        try {
+            URL url = new URL("http", host, target.getPort(), STATUS_PATH);
+            CgiAnswer answer = NetUtils.probeUrl(url, connectTimeout, readTimeout, CgiAnswer.HANDLER);
+            if (!isOpenKarotzStatus(answer)) {
+                Log.d(LOG_TAG, host + " answered, but is not an OpenKarotz");
+                return null;
+            }
+
+            long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return new Device(target, new OpenKarotzState(answer), latency);
+
+        } catch (IOException e) {
+            // Nobody there, or not a web server
+            return null;
+        }
+    }
+
+    /**
+     * Get the IPv4 address of this device on the local network.
+     * @return the first site-local IPv4 address of an active interface, or {@code null} if there is none
+     * @throws SocketException if the network interfaces cannot be listed
+     */
+    public static Inet4Address getLocalAddress() throws SocketException {
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        if (interfaces == null) {
+            return null;
+        }
+
+        for (NetworkInterface ni : Collections.list(interfaces)) {
+            if (!ni.isUp() || ni.isLoopback()) {
+                continue;
+            }
+            for (InetAddress address : Collections.list(ni.getInetAddresses())) {
+                if (address instanceof Inet4Address && address.isSiteLocalAddress()) {
+                    return (Inet4Address) address;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the addresses of all hosts of the /24 subnet of the given address, except the address itself.
+     * @param address an address in the subnet
+     * @param port the port to probe
+     * @return the target addresses
+     */
+    public static List<InetSocketAddress> getSubnetTargets(Inet4Address address, int port) {
+        byte[] ip = address.getAddress();
+        int self = ip[3] & 0xFF;
+
+        List<InetSocketAddress> targets = new ArrayList<InetSocketAddress>(254);
+        for (int i = 1; i < 255; i++) {
+            if (i == self) {
+                continue;
+            }
+            byte[] target = new byte[] {
+                    ip[0], ip[1], ip[2], (byte) i
+            };
+            try {
+                targets.add(new InetSocketAddress(InetAddress.getByAddress(target), port));
+            } catch (UnknownHostException e) {
+                // Cannot happen with a 4-byte address
+                Log.e(LOG_TAG, "Cannot build address: " + e.getMessage(), e);
+            }
+        }
+        return targets;
+    }
+
+    private static boolean isOpenKarotzStatus(CgiAnswer answer) {
+        // Answer: {"version":"200","ears_disabled":"0","sleep":"0","sleep_time":"0","led_color":"0000FF","led_pulse":"1",...}
+        return answer.has("version") && answer.has("sleep") && answer.has("led_color") && answer.has("ears_disabled");
+    }
+
+
+    /**
+     * OpenKarotz device found on the network.
+     */
+    public static class Device {
+
+        Device(InetSocketAddress address, OpenKarotzState state, long latency) {
+            this.address = address;
+            this.state = state;
+            this.latency = latency;
+        }
+
+        /**
+         * Get the device address.
+         * @return the address
+         */
+        public InetSocketAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * Get the device hostname, as expected by {@link Karotz#initialize(String)}.
+         * @return the IP address
+         */
+        public String getHostname() {
+            return address.getAddress().getHostAddress();
+        }
+
+        /**
+         * Get the time the device took to answer the probe.
+         * @return the latency in milliseconds
+         */
+        public long getLatency() {
+            return latency;
+        }
+
+        /**
+         * Get the device state, as returned by the probe.
+         * @return the state
+         */
+        public OpenKarotzState getState() {
+            return state;
+        }
+
+        @Override
+        public String toString() {
+            return "Device { " + getHostname() + ":" + address.getPort() + ", version " + state.getVersion() + ", " + latency + "ms }";
+        }
+
+
+        private final InetSocketAddress address;
+        private final OpenKarotzState state;
+        private final long latency;
+    }
+
+
+    /**
+     * Notified of the discovery progress.
+     */
+    public interface Listener {
+
+        /**
+         * Called when an OpenKarotz device answered.
+         * @param device the device found
+         */
+        void onDeviceFound(Device device);
+
+        /**
+         * Called when all addresses have been probed, or when the scan was cancelled.
+         * @param devices all devices found, in discovery order
+         */
+        void onScanFinished(List<Device> devices);
+    }
+
+
+    private class ProbeTask implements Runnable {
+
+        public ProbeTask(InetSocketAddress target, Scan scan) {
+            this.target = target;
+            this.scan = scan;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!scan.future.isDone()) {
+                    Device device = probe(target);
+                    if (device != null) {
+                        scan.found(device);
+                    }
+                }
+            } finally {
+                if (scan.remaining.decrementAndGet() == 0) {
+                    scan.finish();
+                }
+            }
+        }
+
+
+        private final InetSocketAddress target;
+        private final Scan scan;
+    }
+
+
+    /**
+     * State of a running scan.
+     */
+    private static class Scan {
+
+        public Scan(int count, ThreadPoolExecutor pool, KarotzFuture<List<Device>> future, Listener listener, Executor listenerExecutor) {
+            this.remaining = new AtomicInteger(count);
+            this.pool = pool;
+            this.future = future;
+            this.listener = listener;
+            this.listenerExecutor = listenerExecutor;
+        }
+
+        void found(final Device device) {
+            Log.i(LOG_TAG, "Found OpenKarotz: " + device);
+            synchronized (devices) {
+                devices.add(device);
+            }
+            if (listener != null) {
+                listenerExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onDeviceFound(device);
+                    }
+                });
+            }
+        }
+
+        void finish() {
+            pool.shutdown();
+
+            final List<Device> result;
+            synchronized (devices) {
+                result = new ArrayList<Device>(devices);
+            }
+            if (listener != null) {
+                listenerExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        listener.onScanFinished(result);
+                    }
+                });
+            }
+
+            future.complete(result);
+        }
+
+
+        final AtomicInteger remaining;
+        final ThreadPoolExecutor pool;
+        final KarotzFuture<List<Device>> future;
+        final Listener listener;
+        final Executor listenerExecutor;
+
+        final List<Device> devices = new ArrayList<Device>();
+    }
+
+
+    private final int parallelism;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    private static final int DEFAULT_PARALLELISM = 32;
+
+    private static final int DEFAULT_CONNECT_TIMEOUT = 400;
+
+    private static final int DEFAULT_READ_TIMEOUT = 1500;
+
+    private static final int HTTP_PORT = 80;
+
+    private static final String STATUS_PATH = "/cgi-bin/status";
+
+    private static final String LOG_TAG = KarotzDiscovery.class.getSimpleName();
+}
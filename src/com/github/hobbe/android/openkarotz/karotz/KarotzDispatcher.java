@@ -0,0 +1,384 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.util.KarotzThreadFactory;
+
+/**
+ * Runs the blocking Karotz calls of the application on a bounded thread pool.
+ * <p>
+ * Reads run concurrently. Writes to the same host run one after the other, in submission order, since the Karotz
+ * handles one action at a time; writes to different hosts and reads are not delayed by them. Every call, whether made
+ * through {@link AsyncKarotz}, a command or a background refresh, goes through the same pool and is counted in the same
+ * metrics.
+ */
+public class KarotzDispatcher implements Executor {
+
+    /**
+     * Initialize a new dispatcher.
+     * @param poolSize the number of worker threads
+     * @param queueCapacity the maximum number of tasks waiting for a worker
+     */
+    public KarotzDispatcher(int poolSize, int queueCapacity) {
+        ThreadPoolExecutor p = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+                queueCapacity), new KarotzThreadFactory("Karotz"));
+        p.allowCoreThreadTimeOut(true);
+        this.pool = p;
+    }
+
+    /**
+     * Run a task as a read.
+     * @throws RejectedExecutionException if the queue is full
+     */
+    @Override
+    public void execute(Runnable command) {
+        Task<Object> task = new Task<Object>(Executors.callable(command), new KarotzFuture<Object>(this));
+        task.future.addCallback(FAILURE_LOGGER);
+        dispatch(task);
+    }
+
+    /**
+     * Get the number of tasks currently running.
+     * @return the active count
+     */
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    /**
+     * Get the average time between submission and completion of a task, waiting included.
+     * @return the average latency in milliseconds
+     */
+    public synchronized long getAverageLatency() {
+        return (completedCount == 0 ? 0 : totalLatency / completedCount);
+    }
+
+    /**
+     * Get the average time a task waited before running.
+     * @return the average wait in milliseconds
+     */
+    public synchronized long getAverageWait() {
+        return (completedCount == 0 ? 0 : totalWait / completedCount);
+    }
+
+    /**
+     * Get the number of tasks completed, successfully or not.
+     * @return the completed count
+     */
+    public synchronized long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * Get the number of tasks that failed, typically because the Karotz could not be contacted.
+     * @return the failed count
+     */
+    public synchronized long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * Get the longest time between submission and completion of a task.
+     * @return the maximum latency in milliseconds
+     */
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Get the number of tasks waiting: for a worker, or for the previous write to the same host.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Runnable queued : pool.getQueue()) {
+            if (!(queued instanceof Lane)) {
+                depth++;
+            }
+        }
+        synchronized (lanes) {
+            for (Lane lane : lanes.values()) {
+                depth += lane.tasks.size();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Get the number of tasks rejected because the queue was full.
+     * @return the rejected count
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Get an executor running tasks as writes to the given host, e.g. to stream values to a Karotz without overlapping
+     * its other writes.
+     * @param host the Karotz hostname
+     * @return the executor, throwing {@link RejectedExecutionException} if the queue is full
+     */
+    public Executor getWriteLane(final String host) {
+        return new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                Task<Object> task = new Task<Object>(Executors.callable(command), new KarotzFuture<Object>(KarotzDispatcher.this));
+                task.future.addCallback(FAILURE_LOGGER);
+                enqueueWrite(host, task);
+            }
+        };
+    }
+
+    /**
+     * Run a read operation.
+     * @param operation the operation
+     * @return the future result of the operation, failed if the queue is full
+     */
+    public <T> KarotzFuture<T> submit(Callable<T> operation) {
+        Task<T> task = new Task<T>(operation, new KarotzFuture<T>(this));
+        try {
+            dispatch(task);
+        } catch (RejectedExecutionException e) {
+            task.future.fail(e);
+        }
+        return task.future;
+    }
+
+    /**
+     * Run a write operation, once the previous writes to the same host are done.
+     * @param host the Karotz hostname
+     * @param operation the operation
+     * @return the future result of the operation, failed if the queue is full
+     */
+    public <T> KarotzFuture<T> submitWrite(String host, Callable<T> operation) {
+        Task<T> task = new Task<T>(operation, new KarotzFuture<T>(this));
+        try {
+            enqueueWrite(host, task);
+        } catch (RejectedExecutionException e) {
+            task.future.fail(e);
+        }
+        return task.future;
+    }
+
+    @Override
+    public String toString() {
+        return "KarotzDispatcher { active: " + getActiveCount() + ", queued: " + getQueueDepth() + ", completed: " + getCompletedCount()
+                + ", failed: " + getFailedCount() + ", rejected: " + getRejectedCount() + ", avg latency: " + getAverageLatency() + "ms, max latency: "
+                + getMaxLatency() + "ms }";
+    }
+
+    private void dispatch(Runnable runnable) {
+        try {
+            pool.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            Log.w(LOG_TAG, "Cannot run Karotz task: " + e.getMessage());
+            synchronized (this) {
+                rejectedCount++;
+            }
+            throw e;
+        }
+    }
+
+    private void enqueueWrite(String host, Task<?> task) {
+        Lane lane;
+        synchronized (lanes) {
+            lane = lanes.get(host);
+            if (lane == null) {
+                lane = new Lane(host);
+                lanes.put(host, lane);
+            }
+            lane.tasks.add(task);
+            if (lane.running) {
+                // Run by the worker of the previous write
+                return;
+            }
+            lane.running = true;
+        }
+
+        try {
+            dispatch(lane);
+        } catch (RejectedExecutionException e) {
+            // Writes queued meanwhile behind this one would never run: fail them too
+            LinkedList<Task<?>> dropped;
+            synchronized (lanes) {
+                dropped = new LinkedList<Task<?>>(lane.tasks);
+                dropped.remove(task);
+                lane.tasks.clear();
+                lane.running = false;
+                lanes.remove(host);
+            }
+            for (Task<?> t : dropped) {
+                t.future.fail(e);
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void recordCompletion(long wait, long latency, boolean failed) {
+        completedCount++;
+        totalWait += wait;
+        totalLatency += latency;
+        maxLatency = Math.max(maxLatency, latency);
+        if (failed) {
+            failedCount++;
+        }
+    }
+
+    /**
+     * Get the application dispatcher: 4 worker threads, 64 waiting tasks at most.
+     * @return the dispatcher
+     */
+    public static synchronized KarotzDispatcher getDefault() {
+        if (defaultDispatcher == null) {
+            defaultDispatcher = new KarotzDispatcher(POOL_SIZE, QUEUE_CAPACITY);
+        }
+        return defaultDispatcher;
+    }
+
+
+    /**
+     * Pending writes to one host, run one after the other by the same worker.
+     */
+    private class Lane implements Runnable {
+
+        public Lane(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Task<?> next;
+                synchronized (lanes) {
+                    next = tasks.poll();
+                    if (next == null) {
+                        running = false;
+                        lanes.remove(host);
+                        return;
+                    }
+                }
+                next.run();
+            }
+        }
+
+
+        final String host;
+        final LinkedList<Task<?>> tasks = new LinkedList<Task<?>>();
+        boolean running = false;
+    }
+
+
+    private class Task<T> implements Runnable {
+
+        public Task(Callable<T> operation, KarotzFuture<T> future) {
+            this.operation = operation;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                // Cancelled while waiting
+                return;
+            }
+
+            long started = System.currentTimeMillis();
+            T result = null;
+            Exception error = null;
+            try {
+                result = operation.call();
+            } catch (Exception e) {
+                error = e;
+            }
+
+            // Counted before completion, so that metrics include the result seen by callbacks
+            recordCompletion(started - submitted, System.currentTimeMillis() - submitted, error != null);
+            if (error == null) {
+                future.complete(result);
+            } else {
+                future.fail(error);
+            }
+        }
+
+
+        final Callable<T> operation;
+        final KarotzFuture<T> future;
+
+        final long submitted = System.currentTimeMillis();
+    }
+
+
+    private final ThreadPoolExecutor pool;
+
+    private final Map<String, Lane> lanes = new HashMap<String, Lane>();
+
+    private long completedCount = 0;
+    private long failedCount = 0;
+    private long rejectedCount = 0;
+    private long totalWait = 0;
+    private long totalLatency = 0;
+    private long maxLatency = 0;
+
+    private static KarotzDispatcher defaultDispatcher = null;
+
+    private static final int POOL_SIZE = 4;
+
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static final KarotzCallback<Object> FAILURE_LOGGER = new KarotzCallback<Object>() {
+
+        @Override
+        public void onFailure(Throwable error) {
+            Log.e(LOG_TAG, "Karotz task failed: " + error.getMessage(), error);
+        }
+
+        @Override
+        public void onSuccess(Object result) {
+            // Nothing to do
+        }
+    };
+
+    private static final String LOG_TAG = KarotzDispatcher.class.getSimpleName();
+}
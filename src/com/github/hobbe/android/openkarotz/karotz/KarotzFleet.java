@@ -0,0 +1,383 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.util.KarotzThreadFactory;
+
+/**
+ * Registry of several Karotz, keyed by hostname, with fan-out operations.
+ * <p>
+ * A fan-out operation runs on all registered Karotz, or on a selection of hosts, in parallel with a bounded number of
+ * concurrent calls. Each Karotz has its own timeout, so that one unreachable rabbit does not delay the result of the
+ * others. The timeout is counted from the submission of the operation, time spent waiting for a free thread included:
+ * the returned future completes once every selected Karotz has succeeded, failed or timed out, and at the latest after
+ * the timeout.
+ */
+public class KarotzFleet {
+
+    /**
+     * Initialize a new fleet with default parallelism and timeout.
+     */
+    public KarotzFleet() {
+        this(DEFAULT_PARALLELISM, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Initialize a new fleet.
+     * @param parallelism the maximum number of concurrent calls
+     * @param timeoutMillis the timeout of a call on a single Karotz, in milliseconds
+     */
+    public KarotzFleet(int parallelism, long timeoutMillis) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new KarotzThreadFactory("KarotzFleet"));
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Register a Karotz. A Karotz already registered with the same hostname is replaced.
+     * @param karotz the Karotz
+     */
+    public void add(IKarotz karotz) {
+        synchronized (karotzByHost) {
+            karotzByHost.put(karotz.getHostname(), karotz);
+        }
+    }
+
+    /**
+     * Get the Karotz registered with the given hostname, registering a new OpenKarotz if there is none.
+     * @param hostname the hostname or IP
+     * @return the registered Karotz
+     */
+    public IKarotz add(String hostname) {
+        synchronized (karotzByHost) {
+            IKarotz karotz = karotzByHost.get(hostname);
+            if (karotz == null) {
+                karotz = new OpenKarotz(hostname);
+                karotzByHost.put(hostname, karotz);
+            }
+            return karotz;
+        }
+    }
+
+    /**
+     * Move the ears of several Karotz.
+     * @param hosts the selected hosts, or {@code null} for all
+     * @param left the left ear position
+     * @param right the right ear position
+     * @return the future aggregated ear positions
+     * @see IKarotz#ears(EarPosition, EarPosition)
+     */
+    public KarotzFuture<FleetResult<EarPosition[]>> ears(Collection<String> hosts, final EarPosition left, final EarPosition right) {
+        return execute(hosts, new KarotzFunction<IKarotz, EarPosition[]>() {
+
+            @Override
+            public EarPosition[] apply(IKarotz karotz) throws Exception {
+                return karotz.ears(left, right);
+            }
+        });
+    }
+
+    /**
+     * Run an operation on several Karotz in parallel.
+     * @param hosts the selected hosts, or {@code null} for all
+     * @param operation the operation to run on each Karotz
+     * @return the future aggregated result; a host that is not registered is reported as failed
+     */
+    public <T> KarotzFuture<FleetResult<T>> execute(Collection<String> hosts, KarotzFunction<IKarotz, T> operation) {
+        List<String> targets = (hosts == null ? getHosts() : new ArrayList<String>(hosts));
+        FleetResult<T> result = new FleetResult<T>(targets);
+        KarotzFuture<FleetResult<T>> future = new KarotzFuture<FleetResult<T>>(executor);
+
+        if (targets.isEmpty()) {
+            future.complete(result);
+            return future;
+        }
+
+        AtomicInteger remaining = new AtomicInteger(targets.size());
+        for (String host : targets) {
+            FanOutTask<T> task = new FanOutTask<T>(host, get(host), operation, result, remaining, future);
+            task.schedule();
+            try {
+                executor.execute(task);
+            } catch (RuntimeException e) {
+                task.finish(null, e);
+            }
+        }
+
+        return future;
+    }
+
+    /**
+     * Get the Karotz registered with the given hostname.
+     * @param hostname the hostname or IP
+     * @return the Karotz, or {@code null} if not registered
+     */
+    public IKarotz get(String hostname) {
+        synchronized (karotzByHost) {
+            return karotzByHost.get(hostname);
+        }
+    }
+
+    /**
+     * Get the registered hostnames.
+     * @return the hostnames, in registration order
+     */
+    public List<String> getHosts() {
+        synchronized (karotzByHost) {
+            return new ArrayList<String>(karotzByHost.keySet());
+        }
+    }
+
+    /**
+     * Get the timeout of a call on a single Karotz.
+     * @return the timeout in milliseconds
+     */
+    public long getTimeout() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Change the LED of several Karotz.
+     * @param hosts the selected hosts, or {@code null} for all
+     * @param color the LED color
+     * @param pulse if {@code true}, make the LED pulse
+     * @return the future aggregated completion
+     * @see IKarotz#led(int, boolean)
+     */
+    public KarotzFuture<FleetResult<Void>> led(Collection<String> hosts, final int color, final boolean pulse) {
+        return execute(hosts, new KarotzFunction<IKarotz, Void>() {
+
+            @Override
+            public Void apply(IKarotz karotz) throws Exception {
+                karotz.led(color, pulse);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Unregister a Karotz.
+     * @param hostname the hostname or IP
+     * @return the unregistered Karotz, or {@code null} if not registered
+     */
+    public IKarotz remove(String hostname) {
+        synchronized (karotzByHost) {
+            return karotzByHost.remove(hostname);
+        }
+    }
+
+    /**
+     * Change the timeout of a call on a single Karotz.
+     * @param timeoutMillis the timeout in milliseconds
+     */
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Get the number of registered Karotz.
+     * @return the number of Karotz
+     */
+    public int size() {
+        synchronized (karotzByHost) {
+            return karotzByHost.size();
+        }
+    }
+
+    /**
+     * Put several Karotz to sleep.
+     * @param hosts the selected hosts, or {@code null} for all
+     * @return the future aggregated success
+     * @see IKarotz#sleep()
+     */
+    public KarotzFuture<FleetResult<Boolean>> sleep(Collection<String> hosts) {
+        return execute(hosts, new KarotzFunction<IKarotz, Boolean>() {
+
+            @Override
+            public Boolean apply(IKarotz karotz) throws Exception {
+                return Boolean.valueOf(karotz.sleep());
+            }
+        });
+    }
+
+    /**
+     * Play a sound on several Karotz.
+     * @param hosts the selected hosts, or {@code null} for all
+     * @param url the sound URL
+     * @return the future aggregated success
+     * @see IKarotz#sound(String)
+     */
+    public KarotzFuture<FleetResult<Boolean>> sound(Collection<String> hosts, final String url) {
+        return execute(hosts, new KarotzFunction<IKarotz, Boolean>() {
+
+            @Override
+            public Boolean apply(IKarotz karotz) throws Exception {
+                return Boolean.valueOf(karotz.sound(url));
+            }
+        });
+    }
+
+    /**
+     * Wake up several Karotz.
+     * @param hosts the selected hosts, or {@code null} for all
+     * @param silent if {@code true}, no sound is played on wake up
+     * @return the future aggregated success
+     * @see IKarotz#wakeup(boolean)
+     */
+    public KarotzFuture<FleetResult<Boolean>> wakeup(Collection<String> hosts, final boolean silent) {
+        return execute(hosts, new KarotzFunction<IKarotz, Boolean>() {
+
+            @Override
+            public Boolean apply(IKarotz karotz) throws Exception {
+                return Boolean.valueOf(karotz.wakeup(silent));
+            }
+        });
+    }
+
+    /**
+     * Runs the operation on one Karotz and records its outcome, unless the timeout fires first.
+     */
+    private class FanOutTask<T> implements Runnable {
+
+        public FanOutTask(String host, IKarotz karotz, KarotzFunction<IKarotz, T> operation, FleetResult<T> result, AtomicInteger remaining,
+                KarotzFuture<FleetResult<T>> future) {
+            this.host = host;
+            this.karotz = karotz;
+            this.operation = operation;
+            this.result = result;
+            this.remaining = remaining;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            if (finished.get()) {
+                // Timed out while waiting for a thread
+                return;
+            }
+
+            try {
+                finish(operation.apply(karotz), null);
+            } catch (Throwable e) {
+                finish(null, e);
+            }
+        }
+
+        void finish(T value, Throwable error) {
+            if (!finished.compareAndSet(false, true)) {
+                // Already timed out, or completed just before the timeout
+                return;
+            }
+            ScheduledFuture<?> t = timer;
+            if (t != null) {
+                t.cancel(false);
+            }
+
+            long latency = (start == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (error != null) {
+                Log.w(LOG_TAG, "Fan-out call failed on " + host + ": " + error.getMessage());
+            }
+            result.record(host, value, error, latency);
+
+            if (remaining.decrementAndGet() == 0) {
+                future.complete(result);
+            }
+        }
+
+        /**
+         * Start the timeout, before the task is submitted.
+         */
+        void schedule() {
+            start = System.nanoTime();
+            if (karotz == null) {
+                finish(null, new IllegalArgumentException("No Karotz registered for " + host));
+                return;
+            }
+
+            final long timeout = timeoutMillis;
+            timer = TIMER.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    finish(null, new TimeoutException("Karotz " + host + " did not answer within " + timeout + "ms"));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+
+
+        private final String host;
+        private final IKarotz karotz;
+        private final KarotzFunction<IKarotz, T> operation;
+        private final FleetResult<T> result;
+        private final AtomicInteger remaining;
+        private final KarotzFuture<FleetResult<T>> future;
+
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private volatile long start = 0;
+        private volatile ScheduledFuture<?> timer = null;
+    }
+
+
+    private final Map<String, IKarotz> karotzByHost = new LinkedHashMap<String, IKarotz>();
+
+    private final ThreadPoolExecutor executor;
+
+    private volatile long timeoutMillis;
+
+    // Fires per-Karotz timeouts; the blocked call itself ends with the socket read timeout
+    private static final ScheduledExecutorService TIMER = new ScheduledThreadPoolExecutor(1, new KarotzThreadFactory("KarotzFleetTimer"));
+
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    private static final long DEFAULT_TIMEOUT = 5000L;
+
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static final String LOG_TAG = KarotzFleet.class.getSimpleName();
+}
@@ -0,0 +1,330 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of an asynchronous Karotz operation.
+ * <p>
+ * Besides the blocking {@link Future} methods, callbacks can be registered and further steps chained with
+ * {@link #then(KarotzFunction)} and {@link #thenCompose(KarotzFunction)}: a chained step is only scheduled once the
+ * previous one has completed, so no thread is blocked waiting in between.
+ * @param <T> the result type
+ */
+public class KarotzFuture<T> implements Future<T> {
+
+    /**
+     * Initialize a new, incomplete future.
+     * @param executor the executor running chained steps
+     */
+    public KarotzFuture(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Register a callback, run on the completing thread (or immediately if already complete).
+     * @param callback the callback
+     * @return this future
+     */
+    public KarotzFuture<T> addCallback(KarotzCallback<? super T> callback) {
+        return addCallback(callback, DIRECT);
+    }
+
+    /**
+     * Register a callback, run by the given executor once this future completes.
+     * @param callback the callback
+     * @param callbackExecutor the executor delivering the callback, e.g. the UI thread
+     * @return this future
+     */
+    public KarotzFuture<T> addCallback(final KarotzCallback<? super T> callback, final Executor callbackExecutor) {
+        addListener(new Runnable() {
+
+            @Override
+            public void run() {
+                callbackExecutor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        if (error == null) {
+                            callback.onSuccess(value);
+                        } else {
+                            callback.onFailure(error);
+                        }
+                    }
+                });
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Cancel this future. An operation already running is not interrupted, but its result is discarded.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    /**
+     * Complete this future successfully.
+     * @param result the result
+     * @return {@code true} if this call completed the future, {@code false} if it was already complete
+     */
+    public boolean complete(T result) {
+        return setResult(result, null);
+    }
+
+    /**
+     * Complete this future with a failure.
+     * @param cause the cause of the failure
+     * @return {@code true} if this call completed the future, {@code false} if it was already complete
+     */
+    public boolean fail(Throwable cause) {
+        return setResult(null, cause);
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return done && error instanceof CancellationException;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Chain a step run on the executor with the result of this future.
+     * <p>
+     * If this future fails, the step is skipped and the returned future fails with the same cause.
+     * @param step the step to run
+     * @return the future result of the step
+     */
+    public <R> KarotzFuture<R> then(final KarotzFunction<? super T, R> step) {
+        final KarotzFuture<R> next = new KarotzFuture<R>(executor);
+        addListener(new Runnable() {
+
+            @Override
+            public void run() {
+                if (error != null) {
+                    next.fail(error);
+                    return;
+                }
+                next.run(executor, new Callable<R>() {
+
+                    @Override
+                    public R call() throws Exception {
+                        return step.apply(value);
+                    }
+                });
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Chain an asynchronous step with the result of this future, e.g. another {@link AsyncKarotz} call.
+     * <p>
+     * If this future fails, the step is skipped and the returned future fails with the same cause.
+     * @param step the step returning a future
+     * @return the future result of the future returned by the step
+     */
+    public <R> KarotzFuture<R> thenCompose(final KarotzFunction<? super T, KarotzFuture<R>> step) {
+        final KarotzFuture<R> next = new KarotzFuture<R>(executor);
+        addListener(new Runnable() {
+
+            @Override
+            public void run() {
+                if (error != null) {
+                    next.fail(error);
+                    return;
+                }
+                try {
+                    step.apply(value).addCallback(new KarotzCallback<R>() {
+
+                        @Override
+                        public void onFailure(Throwable cause) {
+                            next.fail(cause);
+                        }
+
+                        @Override
+                        public void onSuccess(R result) {
+                            next.complete(result);
+                        }
+                    });
+                } catch (Exception e) {
+                    next.fail(e);
+                }
+            }
+        });
+        return next;
+    }
+
+    /**
+     * Run the given operation on the executor and complete this future with its outcome.
+     * @param runner the executor running the operation
+     * @param operation the operation
+     */
+    void run(Executor runner, final Callable<T> operation) {
+        Runnable r = new Runnable() {
+
+            @Override
+            public void run() {
+                if (isDone()) {
+                    // Cancelled before start
+                    return;
+                }
+                try {
+                    complete(operation.call());
+                } catch (Throwable e) {
+                    fail(e);
+                }
+            }
+        };
+
+        try {
+            runner.execute(r);
+        } catch (RuntimeException e) {
+            // Typically rejected because the queue is full
+            fail(e);
+        }
+    }
+
+    private void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (error instanceof CancellationException) {
+            throw (CancellationException) error;
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return value;
+    }
+
+    private boolean setResult(T result, Throwable cause) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            value = result;
+            error = cause;
+            done = true;
+            notifyAll();
+
+            toRun = listeners;
+            listeners = null;
+        }
+
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Get a future already completed with the given result.
+     * @param executor the executor running chained steps
+     * @param result the result
+     * @return a completed future
+     */
+    public static <T> KarotzFuture<T> completed(Executor executor, T result) {
+        KarotzFuture<T> future = new KarotzFuture<T>(executor);
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Run an operation on the given executor.
+     * @param executor the executor running the operation and chained steps
+     * @param operation the operation
+     * @return the future result of the operation
+     */
+    public static <T> KarotzFuture<T> submit(Executor executor, Callable<T> operation) {
+        KarotzFuture<T> future = new KarotzFuture<T>(executor);
+        future.run(executor, operation);
+        return future;
+    }
+
+
+    private final Executor executor;
+
+    private List<Runnable> listeners = new ArrayList<Runnable>(2);
+
+    private boolean done = false;
+    private T value = null;
+    private Throwable error = null;
+
+    private static final Executor DIRECT = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+}
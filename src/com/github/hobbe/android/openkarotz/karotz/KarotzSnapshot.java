@@ -0,0 +1,182 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+
+/**
+ * Immutable view of the complete Karotz state, as known at a given time.
+ * <p>
+ * A snapshot is taken from a single status request, so that a page can bind all its fields at once instead of issuing
+ * one request per value.
+ */
+public final class KarotzSnapshot {
+
+    /**
+     * Initialize a new snapshot of the given state.
+     * @param state the state to copy
+     * @param time the time the state was known, in milliseconds
+     */
+    KarotzSnapshot(OpenKarotzState state, long time) {
+        this(state.getStatus(), state.getVersion(), state.getLedColor(), state.isPulsing(), state.getEarMode(), state.getLeftEarPosition(),
+                state.getRightEarPosition(), state.isRestored(), state.getRevision(), time);
+    }
+
+    private KarotzSnapshot(KarotzStatus status, String version, int ledColor, boolean pulsing, EarMode earMode, EarPosition leftEarPosition,
+            EarPosition rightEarPosition, boolean stale, long revision, long time) {
+        this.status = status;
+        this.version = version;
+        this.ledColor = ledColor;
+        this.pulsing = pulsing;
+        this.earMode = earMode;
+        this.leftEarPosition = leftEarPosition;
+        this.rightEarPosition = rightEarPosition;
+        this.stale = stale;
+        this.revision = revision;
+        this.time = time;
+    }
+
+    /**
+     * Get the ear mode.
+     * @return the ear mode
+     */
+    public EarMode getEarMode() {
+        return earMode;
+    }
+
+    /**
+     * Get the ear positions.
+     * @return the ear positions as array[left, right]
+     */
+    public EarPosition[] getEarPositions() {
+        return new EarPosition[] {
+                leftEarPosition, rightEarPosition
+        };
+    }
+
+    /**
+     * Get the LED color.
+     * @return the LED color
+     */
+    public int getLedColor() {
+        return ledColor;
+    }
+
+    /**
+     * Get the left ear position.
+     * @return the left ear position
+     */
+    public EarPosition getLeftEarPosition() {
+        return leftEarPosition;
+    }
+
+    /**
+     * Get the revision of the state, increasing each time the state changes.
+     * @return the revision, or {@code 0} if unknown
+     * @see OpenKarotzState#getRevision()
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Get the right ear position.
+     * @return the right ear position
+     */
+    public EarPosition getRightEarPosition() {
+        return rightEarPosition;
+    }
+
+    /**
+     * Get the status.
+     * @return the status
+     */
+    public KarotzStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the time the state was known.
+     * @return the time in milliseconds, or {@code 0} for the {@link #UNKNOWN unknown} snapshot
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the version.
+     * @return the version, or {@code null} if unknown
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Check if LED is pulsing.
+     * @return {@code true} if LED is pulsing, else {@code false}
+     */
+    public boolean isPulsing() {
+        return pulsing;
+    }
+
+    /**
+     * Check if the state is the last known one, restored from local storage at startup and not yet confirmed by the
+     * Karotz.
+     * @return {@code true} if stale
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    @Override
+    public String toString() {
+        return "KarotzSnapshot { revision: " + revision + ", version: " + version + ", status: " + status.name() + ", color: " + Integer.toHexString(ledColor) + ", pulse: "
+                + pulsing + ", ears: " + earMode.name() + " " + leftEarPosition + "/" + rightEarPosition + (stale ? ", stale" : "") + " }";
+    }
+
+
+    /** Snapshot of a Karotz whose state is unknown, e.g. unreachable. */
+    public static final KarotzSnapshot UNKNOWN = new KarotzSnapshot(new OpenKarotzState(), 0);
+
+    private final KarotzStatus status;
+    private final String version;
+
+    private final int ledColor;
+    private final boolean pulsing;
+
+    private final EarMode earMode;
+    private final EarPosition leftEarPosition;
+    private final EarPosition rightEarPosition;
+
+    private final boolean stale;
+    private final long revision;
+    private final long time;
+}
@@ -31,14 +31,18 @@ package com.github.hobbe.android.openkarotz.karotz;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import android.graphics.Color;
 import android.util.Log;
 
+import com.github.hobbe.android.openkarotz.net.CircuitBreaker;
+import com.github.hobbe.android.openkarotz.net.CircuitOpenException;
 import com.github.hobbe.android.openkarotz.net.NetUtils;
+import com.github.hobbe.android.openkarotz.net.ResponseHandler;
+import com.github.hobbe.android.openkarotz.net.RetryPolicy;
+import com.github.hobbe.android.openkarotz.util.SingleFlight;
 
 /**
  * OpenKarotz implementation.
@@ -52,6 +56,7 @@ public class OpenKarotz implements IKarotz {
     public OpenKarotz(String hostname) {
 
         this.hostname = hostname;
+        this.breaker = new CircuitBreaker(hostname, FAILURE_THRESHOLD, OPEN_PERIOD);
 
         try {
             this.api = new URL(PROTOCOL + "://" + hostname + ":" + PORT);
@@ -60,6 +65,11 @@ public class OpenKarotz implements IKarotz {
         }
     }
 
+    @Override
+    public void addStateListener(StateListener listener, Executor executor) {
+        cache.addListener(listener, executor);
+    }
+
     @Override
     public EarPosition[] ears(EarPosition left, EarPosition right) throws IOException {
 
@@ -69,35 +79,24 @@ public class OpenKarotz implements IKarotz {
         };
 
         // Current position, if available
+        OpenKarotzState state = cache.peek();
         if (state != null) {
             newPositions = new EarPosition[] {
                     state.getLeftEarPosition(), state.getRightEarPosition()
             };
         }
 
-        URL url = new URL(api, CGI_BIN + "/ears?noreset=1&left=" + left.toString() + "&right=" + right.toString());
-        Log.d(LOG_TAG, url.toString());
-
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/ears?noreset=1&left=" + left.toString() + "&right=" + right.toString());
 
         // Answer: {"return":"0","left":"0","right":"0"}
-        try {
-            JSONObject json = new JSONObject(result);
-            boolean ok = "0".equals(json.getString("return"));
-
-            if (ok) {
-                newPositions[0] = EarPosition.fromIntValue(Integer.valueOf(json.getString("left")).intValue());
-                newPositions[1] = EarPosition.fromIntValue(Integer.valueOf(json.getString("right")).intValue());
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Cannot move Karotz ears: " + e.getMessage(), e);
+        if (answer.isOk()) {
+            newPositions[0] = EarPosition.fromIntValue(answer.getInt("left", 0));
+            newPositions[1] = EarPosition.fromIntValue(answer.getInt("right", 0));
+        } else if (!answer.isValid()) {
+            Log.e(LOG_TAG, "Cannot move Karotz ears: " + answer);
         }
 
-        if (state != null) {
-            state.setLeftEarPosition(newPositions[0]);
-            state.setRightEarPosition(newPositions[1]);
-        }
+        updateEarPositions(newPositions[0], newPositions[1]);
 
         return newPositions;
     }
@@ -111,24 +110,16 @@ public class OpenKarotz implements IKarotz {
             return mode;
         }
 
-        URL url = new URL(api, CGI_BIN + "/ears_mode?disable=" + (mode.isEnabled() ? "0" : "1"));
-        Log.d(LOG_TAG, url.toString());
-
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/ears_mode?disable=" + (mode.isEnabled() ? "0" : "1"));
 
         // Answer: {"return":"0","disabled":"0"}
-        try {
-            JSONObject json = new JSONObject(result);
-            boolean ok = "0".equals(json.getString("return"));
-
-            if (ok) {
-                EarMode newMode = "0".equals(json.getString("disabled")) ? EarMode.ENABLED : EarMode.DISABLED;
-                state.setEarMode(newMode);
-                return newMode;
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Cannot en/disable Karotz ears: " + e.getMessage(), e);
+        if (answer.isOk() && answer.has("disabled")) {
+            EarMode newMode = answer.getFlag("disabled") ? EarMode.DISABLED : EarMode.ENABLED;
+            updateEarMode(newMode);
+            return newMode;
+        }
+        if (!answer.isValid()) {
+            Log.e(LOG_TAG, "Cannot en/disable Karotz ears: " + answer);
         }
 
         return currentMode;
@@ -143,91 +134,65 @@ public class OpenKarotz implements IKarotz {
         };
 
         // Current position, if available
+        OpenKarotzState state = cache.peek();
         if (state != null) {
             newPositions = new EarPosition[] {
                     state.getLeftEarPosition(), state.getRightEarPosition()
             };
         }
 
-        URL url = new URL(api, CGI_BIN + "/ears_random");
-        Log.d(LOG_TAG, url.toString());
-
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/ears_random");
 
         // Answer: {"left":"0","right":"0","return":"0"}
         // Answer: {"return":"1","msg":"Unable to perform action, rabbit is sleeping."}
         // Answer: {"return":"1","msg":"Unable to perform action, ears disabled."}
-        try {
-            JSONObject json = new JSONObject(result);
-            boolean ok = "0".equals(json.getString("return"));
-
-            if (ok) {
-                newPositions[0] = EarPosition.fromIntValue(Integer.valueOf(json.getString("left")).intValue());
-                newPositions[1] = EarPosition.fromIntValue(Integer.valueOf(json.getString("right")).intValue());
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Cannot put Karotz ears in random position: " + e.getMessage(), e);
+        if (answer.isOk()) {
+            newPositions[0] = EarPosition.fromIntValue(answer.getInt("left", 0));
+            newPositions[1] = EarPosition.fromIntValue(answer.getInt("right", 0));
+        } else if (!answer.isValid()) {
+            Log.e(LOG_TAG, "Cannot put Karotz ears in random position: " + answer);
         }
 
-        if (state != null) {
-            state.setLeftEarPosition(newPositions[0]);
-            state.setRightEarPosition(newPositions[1]);
-        }
+        updateEarPositions(newPositions[0], newPositions[1]);
 
         return newPositions;
     }
 
     @Override
     public void earsReset() throws IOException {
-        URL url = new URL(api, CGI_BIN + "/ears_reset");
-        Log.d(LOG_TAG, url.toString());
-
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/ears_reset");
 
         // Answer: {"return":"0"}
         // Answer: {"return":"1","msg":"Unable to perform action, rabbit is sleeping."}
         // Answer: {"return":"1","msg":"Unable to perform action, ears disabled."}
-        try {
-            JSONObject json = new JSONObject(result);
-            boolean ok = "0".equals(json.getString("return"));
-
-            if (ok) {
-                if (state != null) {
-                    state.setLeftEarPosition(EarPosition.POSITION_1);
-                    state.setRightEarPosition(EarPosition.POSITION_1);
-                }
-                return;
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Cannot reset Karotz ears: " + e.getMessage(), e);
+        if (answer.isOk()) {
+            updateEarPositions(EarPosition.POSITION_1, EarPosition.POSITION_1);
+        } else if (!answer.isValid()) {
+            Log.e(LOG_TAG, "Cannot reset Karotz ears: " + answer);
         }
     }
 
     @Override
     public int getColor() throws IOException {
-        if (state == null) {
-            status();
-        }
-        return state.getLedColor();
+        return currentState().getLedColor();
     }
 
     @Override
     public EarMode getEarMode() throws IOException {
-        if (isOffline()) {
-            // Re-check state
-            status();
-        }
-        return state.getEarMode();
+        return currentState().getEarMode();
+    }
+
+    /**
+     * Get the circuit breaker failing requests fast while this Karotz is unreachable, e.g. for its counters.
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
     }
 
     @Override
     public EarPosition[] getEarPositions() throws IOException {
-        if (isOffline()) {
-            // Re-check state
-            status();
-        }
+        OpenKarotzState state = currentState();
 
         // Default position
         EarPosition[] positions = new EarPosition[] {
@@ -248,37 +213,48 @@ public class OpenKarotz implements IKarotz {
         return hostname;
     }
 
+    @Override
+    public KarotzSnapshot getSnapshot() throws IOException {
+        OpenKarotzState state = currentState();
+        return new KarotzSnapshot(state, System.currentTimeMillis() - Math.max(0, cache.getStaleness()));
+    }
+
+    /**
+     * Get the state cache of this Karotz, e.g. to change its timings or read its counters.
+     * @return the state cache
+     */
+    public StateCache getStateCache() {
+        return cache;
+    }
+
     @Override
     public KarotzStatus getStatus() throws IOException {
-        if (isOffline()) {
-            // Re-check state
-            status();
-        }
-        return state.getStatus();
+        return currentState().getStatus();
+    }
+
+    /**
+     * Get the number of bytes received in status answers, e.g. to measure the cost of polling.
+     * @return the byte count
+     */
+    public long getStatusBytes() {
+        return statusBytes.get();
     }
 
     @Override
     public String getVersion() throws IOException {
-        if (isOffline()) {
-            // Re-check state
-            status();
-        }
-        return state.getVersion();
+        return currentState().getVersion();
     }
 
     @Override
     public boolean isPulsing() throws IOException {
-        if (isOffline()) {
-            // Re-check state
-            status();
-        }
-        return state.isPulsing();
+        return currentState().isPulsing();
     }
 
     @Override
     public void led(int color, boolean pulse) throws IOException {
         int rgb = color & 0x00FFFFFF;
 
+        OpenKarotzState state = currentState();
         if (pulse == state.isPulsing() && rgb == state.getLedColor()) {
             // No change
             return;
@@ -286,30 +262,35 @@ public class OpenKarotz implements IKarotz {
 
         String c = toColorCode(rgb);
 
-        URL url = new URL(api, CGI_BIN + "/leds?color=" + c + (pulse ? "&pulse=1" : ""));
-        Log.d(LOG_TAG, url.toString());
-
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/leds?color=" + c + (pulse ? "&pulse=1" : ""));
 
         // Answer: {"color":"0000FF","secondary_color":"000000","pulse":"0","no_memory":"0","speed":"700","return":"0"}
         // Answer: {"return":"1","msg":"Unable to perform action, rabbit is sleeping."}
-        try {
-            JSONObject json = new JSONObject(result);
-            boolean ok = "0".equals(json.getString("return"));
-
-            if (ok) {
-                state.setLedColor(Color.parseColor("#" + json.getString("color")));
-                state.setPulsing("1".equals(json.getString("pulse")));
-                return;
-            }
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Cannot change LED on Karotz: " + e.getMessage(), e);
+        if (answer.isOk() && answer.has("color") && answer.has("pulse")) {
+            updateLed(answer.getHex("color", rgb), answer.getFlag("pulse"));
+            return;
+        }
+        if (!answer.isValid()) {
+            Log.e(LOG_TAG, "Cannot change LED on Karotz: " + answer);
         }
 
         // Not OK, set back to previous values
-        state.setLedColor(rgb);
-        state.setPulsing(pulse);
+        updateLed(rgb, pulse);
+    }
+
+    /**
+     * Fetch the state from the Karotz, whatever the age of the cached one, and publish it to the state cache, unless a
+     * command changed the state meanwhile.
+     * @return the published state, or the current one if the fetched state was dropped
+     * @throws IOException if an I/O error occurs
+     */
+    public OpenKarotzState refresh() throws IOException {
+        return cache.refresh(stateLoader);
+    }
+
+    @Override
+    public void removeStateListener(StateListener listener) {
+        cache.removeListener(listener);
     }
 
     @Override
@@ -320,23 +301,19 @@ public class OpenKarotz implements IKarotz {
             return true;
         }
 
-        URL url = new URL(api, CGI_BIN + "/sleep");
-        Log.d(LOG_TAG, url.toString());
+        // Load the state, so that the result can be recorded
+        currentState();
 
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/sleep");
 
         // Answer: {"return":"0"}
         // Answer: {"return":"1","msg":"Unable to perform action, rabbit is already sleeping."}
-        try {
-            JSONObject json = new JSONObject(result);
-            state.setStatus("0".equals(json.getString("return")) ? KarotzStatus.SLEEPING : KarotzStatus.AWAKE);
+        if (answer.isValid()) {
+            updateStatus(answer.isOk() ? KarotzStatus.SLEEPING : KarotzStatus.AWAKE);
             return true;
-        } catch (JSONException e) {
-            state.setStatus(KarotzStatus.UNKNOWN);
-            return false;
         }
-
+        updateStatus(KarotzStatus.UNKNOWN);
+        return false;
     }
 
     @Override
@@ -345,25 +322,18 @@ public class OpenKarotz implements IKarotz {
             return true;
         }
 
-        URL url = new URL(api, CGI_BIN + "/sound?url=" + soundUrl);
-        Log.d(LOG_TAG, url.toString());
-
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/sound?url=" + soundUrl);
 
         // Answer: {"return":"0"}
         // Answer: {"return":"1","msg":"Unable to perform action, rabbit is sleeping."}
-        try {
-            JSONObject json = new JSONObject(result);
-            boolean ok = "0".equals(json.getString("return"));
-
-            if (ok) {
-                Log.i(LOG_TAG, "Karotz is playing sound");
-                return true;
-            }
+        if (answer.isOk()) {
+            Log.i(LOG_TAG, "Karotz is playing sound");
+            return true;
+        }
+        if (answer.isValid()) {
             Log.e(LOG_TAG, "Karotz cannot play the sound");
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Cannot make Karotz play a sound: " + e.getMessage(), e);
+        } else {
+            Log.e(LOG_TAG, "Cannot make Karotz play a sound: " + answer);
         }
 
         return false;
@@ -371,23 +341,16 @@ public class OpenKarotz implements IKarotz {
 
     @Override
     public boolean soundControl(SoundControlCommand command) throws IOException {
-        URL url = new URL(api, CGI_BIN + "/sound_control?cmd=" + command.toString());
-        Log.d(LOG_TAG, url.toString());
-
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/sound_control?cmd=" + command.toString());
 
         // Answer: {"return":"0"}
         // Answer: {"return":"1","msg":"No sound currently playing."}
         // Answer: {"return":"1","msg":"Unable to perform action, rabbit is already sleeping."}
-        try {
-            JSONObject json = new JSONObject(result);
-            return ("0".equals(json.getString("return")));
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Cannot call sound control on Karotz: " + e.getMessage(), e);
+        if (!answer.isValid()) {
+            Log.e(LOG_TAG, "Cannot call sound control on Karotz: " + answer);
         }
 
-        return false;
+        return answer.isOk();
     }
 
     @Override
@@ -398,44 +361,192 @@ public class OpenKarotz implements IKarotz {
             return true;
         }
 
-        URL url = new URL(api, CGI_BIN + "/wakeup" + (silent ? "?silent=1" : ""));
-        Log.d(LOG_TAG, url.toString());
+        // Load the state, so that the result can be recorded
+        currentState();
 
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+        CgiAnswer answer = send("/wakeup" + (silent ? "?silent=1" : ""));
 
         // Answer: {"return":"0","silent":"1"}
+        KarotzStatus status = (answer.isOk() ? KarotzStatus.AWAKE : KarotzStatus.UNKNOWN);
+        updateStatus(status);
+
+        return (status == KarotzStatus.AWAKE);
+    }
+
+    private <T> T download(URL url, ResponseHandler<T> handler) throws IOException {
+        // Outcome always recorded, so that a probe resolves the half-open circuit whatever happens
+        boolean success = false;
         try {
-            JSONObject json = new JSONObject(result);
-            state.setStatus("0".equals(json.getString("return")) ? KarotzStatus.AWAKE : KarotzStatus.UNKNOWN);
-        } catch (JSONException e) {
-            state.setStatus(KarotzStatus.UNKNOWN);
+            T result = NetUtils.downloadUrl(url, handler);
+            success = true;
+            return result;
+        } finally {
+            if (success) {
+                breaker.onSuccess();
+            } else {
+                breaker.onFailure();
+            }
         }
+    }
 
-        return (state.getStatus() == KarotzStatus.AWAKE);
+    private OpenKarotzState currentState() throws IOException {
+        return cache.get(stateLoader);
     }
 
     private boolean isAwake() {
+        OpenKarotzState state = cache.peek();
         return (state != null && state.getStatus() == KarotzStatus.AWAKE);
     }
 
-    private boolean isOffline() {
-        return (state == null || state.getStatus().isOffline());
-    }
-
     private boolean isSleeping() {
+        OpenKarotzState state = cache.peek();
         return (state != null && state.getStatus() == KarotzStatus.SLEEPING);
     }
 
-    private void status() throws IOException {
-        URL url = new URL(api, CGI_BIN + "/status");
+    /**
+     * Send a CGI command and parse its answer.
+     * @param command the command path and query, relative to the CGI directory
+     * @return the answer, empty if it cannot be parsed
+     * @throws IOException if an I/O error occurs
+     */
+    private CgiAnswer send(String command) throws IOException {
+        return send(command, CgiAnswer.HANDLER);
+    }
+
+    /**
+     * Send a CGI command and parse its answer with the given handler.
+     * @param command the command path and query, relative to the CGI directory
+     * @param handler the handler parsing the answer
+     * @return the answer, empty if it cannot be parsed
+     * @throws IOException if an I/O error occurs
+     */
+    private CgiAnswer send(String command, ResponseHandler<CgiAnswer> handler) throws IOException {
+        URL url = new URL(api, CGI_BIN + command);
+        URL statusUrl = new URL(api, CGI_BIN + STATUS);
+
+        switch (breaker.acquire()) {
+        case REJECT:
+            throw new CircuitOpenException(hostname, breaker.getRetryDelay());
+
+        case PROBE:
+            if (!command.startsWith(STATUS)) {
+                // Probe with a lightweight request first, the command may have side effects
+                Log.d(LOG_TAG, "Probing " + hostname);
+                download(statusUrl, CgiAnswer.HANDLER);
+            }
+            break;
+
+        default:
+            break;
+        }
+
         Log.d(LOG_TAG, url.toString());
+        CgiAnswer answer = download(url, handler);
+        Log.d(LOG_TAG, answer.toString());
+
+        return answer;
+    }
+
+    /**
+     * Send an idempotent CGI command, retried with a jittered back-off while the circuit is closed.
+     * @param command the command path and query, relative to the CGI directory
+     * @param handler the handler parsing the answer
+     * @return the answer, empty if it cannot be parsed
+     * @throws IOException if all attempts failed
+     */
+    private CgiAnswer sendIdempotent(String command, ResponseHandler<CgiAnswer> handler) throws IOException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return send(command, handler);
+            } catch (CircuitOpenException e) {
+                throw e;
+            } catch (IOException e) {
+                if (!READ_RETRY.isRetryAllowed(attempt) || breaker.getState() != CircuitBreaker.State.CLOSED) {
+                    throw e;
+                }
+                long delay = READ_RETRY.getDelay(attempt);
+                Log.d(LOG_TAG, "Retrying " + command + " in " + delay + "ms: " + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private OpenKarotzState status() throws IOException {
+        // Concurrent refreshes for the same host share a single request
+        OpenKarotzState fresh = STATUS_FLIGHT.execute(hostname, new Callable<OpenKarotzState>() {
 
-        String result = NetUtils.downloadUrl(url);
-        Log.d(LOG_TAG, result);
+            @Override
+            public OpenKarotzState call() throws IOException {
+                OpenKarotzState s = new OpenKarotzState(sendIdempotent(STATUS, statusHandler));
+                Log.d(LOG_TAG, s.toString());
+                return s;
+            }
+        });
+
+        // Ear positions are not part of the status answer, keep the last known ones
+        OpenKarotzState previous = cache.peek();
+        if (previous != null) {
+            return fresh.withEarPositions(previous.getLeftEarPosition(), previous.getRightEarPosition());
+        }
+
+        return fresh;
+    }
+
+    private void updateEarMode(final EarMode mode) {
+        cache.update(new StateCache.Updater() {
+
+            @Override
+            public OpenKarotzState apply(OpenKarotzState state) {
+                return state.withEarMode(mode);
+            }
+        });
+        cache.invalidate();
+    }
+
+    private void updateEarPositions(final EarPosition left, final EarPosition right) {
+        cache.update(new StateCache.Updater() {
+
+            @Override
+            public OpenKarotzState apply(OpenKarotzState state) {
+                return state.withEarPositions(left, right);
+            }
+        });
+        cache.invalidate();
+    }
+
+    private void updateLed(final int color, final boolean pulse) {
+        cache.update(new StateCache.Updater() {
+
+            @Override
+            public OpenKarotzState apply(OpenKarotzState state) {
+                return state.withLed(color, pulse);
+            }
+        });
+        cache.invalidate();
+    }
+
+    private void updateStatus(final KarotzStatus status) {
+        cache.update(new StateCache.Updater() {
 
-        state = new OpenKarotzState(result);
-        Log.d(LOG_TAG, state.toString());
+            @Override
+            public OpenKarotzState apply(OpenKarotzState state) {
+                return state.withStatus(status);
+            }
+        });
+        cache.invalidate();
+    }
+
+    /**
+     * Get the single-flight group collapsing concurrent status requests, e.g. for its counters.
+     * @return the status single-flight group
+     */
+    public static SingleFlight<String, OpenKarotzState> getStatusSingleFlight() {
+        return STATUS_FLIGHT;
     }
 
     private static String toColorCode(int c) {
@@ -451,7 +562,43 @@ public class OpenKarotz implements IKarotz {
 
     private URL api = null;
 
-    private OpenKarotzState state = null;
+    private final CircuitBreaker breaker;
+
+    private final StateCache cache = new StateCache(STATE_TTL, STATE_MAX_STALE, KarotzDispatcher.getDefault());
+
+    private final AtomicLong statusBytes = new AtomicLong();
+
+    private final ResponseHandler<CgiAnswer> statusHandler = new ResponseHandler<CgiAnswer>() {
+
+        @Override
+        public CgiAnswer handle(byte[] body, int length) throws IOException {
+            statusBytes.addAndGet(length);
+            return CgiAnswer.parse(body, 0, length);
+        }
+    };
+
+    private final StateCache.Loader stateLoader = new StateCache.Loader() {
+
+        @Override
+        public OpenKarotzState load() throws IOException {
+            return status();
+        }
+    };
+
+    private static final SingleFlight<String, OpenKarotzState> STATUS_FLIGHT = new SingleFlight<String, OpenKarotzState>();
+
+    // Status freshness: served as is for 5s, served while revalidating for 1 minute
+    private static final long STATE_TTL = 5000L;
+    private static final long STATE_MAX_STALE = 60000L;
+
+    // Circuit opened after 3 consecutive failures, probed every 10s
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_PERIOD = 10000L;
+
+    // Status retried twice, after up to 250ms then 500ms
+    private static final RetryPolicy READ_RETRY = new RetryPolicy(3, 250L, 2000L);
+
+    private static final String STATUS = "/status";
 
     private static final String PROTOCOL = "http";
 
@@ -28,9 +28,6 @@
 
 package com.github.hobbe.android.openkarotz.karotz;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import android.graphics.Color;
 import android.util.Log;
 
@@ -40,41 +37,119 @@ import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
 
 /**
  * Status for OpenKarotz.
+ * <p>
+ * A state is immutable: changes are made by deriving a new state with the {@code with*} methods, and published
+ * through the {@link StateCache}, which stamps each published change with an increasing revision. A state can thus
+ * be shared between threads without synchronization. A derived state reflects a change acknowledged by the Karotz, so
+ * it is never {@link #isRestored() restored}.
+ * <p>
+ * The status, LED and ear fields are decoded when the state is built. The other fields of the status answer, such as
+ * the free space or the number of moods, are decoded from the retained answer bytes on first access only. They are
+ * those of the last status answer: deriving a state does not change them.
  */
-public class OpenKarotzState {
+public final class OpenKarotzState {
 
     /**
      * Initialize a new status.
      */
     public OpenKarotzState() {
-        // Nothing to do
+        this(null, KarotzStatus.UNKNOWN, Color.GREEN, true, EarMode.ENABLED, EarPosition.POSITION_1, EarPosition.POSITION_1, false, 0);
     }
 
     /**
-     * Initialize a new status from a JSON input.
+     * Initialize a new status from a CGI answer.
      *
-     * @param json the JSON string
+     * @param answer the status answer
      */
-    public OpenKarotzState(String json) {
+    public OpenKarotzState(CgiAnswer answer) {
         // Answer:
         // {"version":"200","ears_disabled":"0","sleep":"0","sleep_time":"0","led_color":"0000FF","led_pulse":"1","tts_cache_size":"4","usb_free_space":"-1","karotz_free_space":"148.4M","eth_mac":"00:00:00:00:00:00","wlan_mac":"01:23:45:67:89:AB","nb_tags":"4","nb_moods":"305","nb_sounds":"14","nb_stories":"0","karotz_percent_used_space":"37","usb_percent_used_space":""}
-        if (json != null) {
-            try {
-                JSONObject jo = new JSONObject(json);
-                version = jo.getString(KEY_VERSION);
-                status = ("1".equals(jo.getString(KEY_SLEEP)) ? KarotzStatus.SLEEPING : KarotzStatus.AWAKE);
-                ledColor = Color.parseColor("#" + jo.getString(KEY_LED_COLOR));
-                pulsing = ("1".equals(jo.getString(KEY_LED_PULSE)));
-                earMode = ("1".equals(jo.getString(KEY_EARS_DISABLED)) ? EarMode.DISABLED : EarMode.ENABLED);
-            } catch (JSONException e) {
-                e.printStackTrace();
-                Log.e(LOG_TAG, "Cannot parse status answer: " + json);
-                status = KarotzStatus.UNKNOWN;
-            }
+        if (answer != null && answer.has(KEY_VERSION) && answer.has(KEY_SLEEP) && answer.has(KEY_LED_COLOR) && answer.has(KEY_LED_PULSE)
+                && answer.has(KEY_EARS_DISABLED)) {
+            version = answer.getString(KEY_VERSION);
+            status = (answer.getFlag(KEY_SLEEP) ? KarotzStatus.SLEEPING : KarotzStatus.AWAKE);
+            ledColor = answer.getHex(KEY_LED_COLOR, 0) & 0x00FFFFFF;
+            pulsing = answer.getFlag(KEY_LED_PULSE);
+            earMode = (answer.getFlag(KEY_EARS_DISABLED) ? EarMode.DISABLED : EarMode.ENABLED);
+            this.answer = answer;
 
         } else {
+            Log.e(LOG_TAG, "Cannot parse status answer: " + answer);
+            version = null;
             status = KarotzStatus.UNKNOWN;
+            ledColor = Color.GREEN & 0x00FFFFFF;
+            pulsing = true;
+            earMode = EarMode.ENABLED;
+            this.answer = null;
+        }
+
+        leftEarPosition = EarPosition.POSITION_1;
+        rightEarPosition = EarPosition.POSITION_1;
+        restored = false;
+        revision = 0;
+    }
+
+    /**
+     * Initialize a new status from a JSON input.
+     *
+     * @param json the JSON string
+     */
+    public OpenKarotzState(String json) {
+        this(json != null ? CgiAnswer.parse(json) : null);
+    }
+
+    /**
+     * Initialize a new status from its fields.
+     *
+     * @param version the version
+     * @param status the status
+     * @param ledColor the LED color
+     * @param pulsing the LED pulsing state
+     * @param earMode the ear mode
+     * @param leftEarPosition the left ear position
+     * @param rightEarPosition the right ear position
+     * @param restored {@code true} if restored from local storage
+     * @param revision the revision
+     */
+    OpenKarotzState(String version, KarotzStatus status, int ledColor, boolean pulsing, EarMode earMode, EarPosition leftEarPosition,
+            EarPosition rightEarPosition, boolean restored, long revision) {
+        this(version, status, ledColor, pulsing, earMode, leftEarPosition, rightEarPosition, restored, revision, null);
+    }
+
+    private OpenKarotzState(String version, KarotzStatus status, int ledColor, boolean pulsing, EarMode earMode, EarPosition leftEarPosition,
+            EarPosition rightEarPosition, boolean restored, long revision, CgiAnswer answer) {
+        this.version = version;
+        this.status = status;
+        this.ledColor = ledColor & 0x00FFFFFF;
+        this.pulsing = pulsing;
+        this.earMode = earMode;
+        this.leftEarPosition = leftEarPosition;
+        this.rightEarPosition = rightEarPosition;
+        this.restored = restored;
+        this.revision = revision;
+        this.answer = answer;
+    }
+
+    /**
+     * Compare the content of this state with another one. The revision is not compared. The other fields of the status
+     * answers are compared on their raw bytes, without decoding them.
+     *
+     * @param obj the other state
+     * @return {@code true} if both states describe the same Karotz state
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof OpenKarotzState)) {
+            return false;
         }
+        OpenKarotzState other = (OpenKarotzState) obj;
+        return status == other.status && ledColor == other.ledColor && pulsing == other.pulsing && earMode == other.earMode
+                && leftEarPosition == other.leftEarPosition && rightEarPosition == other.rightEarPosition && restored == other.restored
+                && (version == null ? other.version == null : version.equals(other.version))
+                && (answer == null ? other.answer == null : answer.contentEquals(other.answer));
     }
 
     /**
@@ -86,13 +161,40 @@ public class OpenKarotzState {
         return earMode;
     }
 
+    /**
+     * Get the MAC address of the Ethernet interface.
+     *
+     * @return the MAC address, or {@code null} if unknown
+     */
+    public String getEthernetMac() {
+        return details().ethernetMac;
+    }
+
+    /**
+     * Get the free space on the Karotz flash memory, as reported by the Karotz.
+     *
+     * @return the free space with its unit, e.g. {@code 148.4M}, or {@code null} if unknown
+     */
+    public String getKarotzFreeSpace() {
+        return details().karotzFreeSpace;
+    }
+
+    /**
+     * Get the used space on the Karotz flash memory.
+     *
+     * @return the percentage of used space, or {@code -1} if unknown
+     */
+    public int getKarotzUsedSpacePercent() {
+        return details().karotzUsedSpacePercent;
+    }
+
     /**
      * Get the LED color.
      *
      * @return the LED color
      */
     public int getLedColor() {
-        return ledColor & 0x00FFFFFF;
+        return ledColor;
     }
 
     /**
@@ -103,6 +205,25 @@ public class OpenKarotzState {
         return leftEarPosition;
     }
 
+    /**
+     * Get the number of moods installed on the Karotz.
+     *
+     * @return the mood count, or {@code -1} if unknown
+     */
+    public int getMoodCount() {
+        return details().moodCount;
+    }
+
+    /**
+     * Get the revision of this state, as stamped by the {@link StateCache} that published it. The revision increases
+     * each time the published content changes, so a reader can compare it with the one of its last read.
+     *
+     * @return the revision, {@code 0} if never published
+     */
+    public long getRevision() {
+        return revision;
+    }
+
     /**
      * Get the right ear position.
      * @return the right ear position
@@ -111,6 +232,24 @@ public class OpenKarotzState {
         return rightEarPosition;
     }
 
+    /**
+     * Get the time the Karotz fell asleep, as reported by the Karotz.
+     *
+     * @return the sleep time, {@code 0} if awake, or {@code -1} if unknown
+     */
+    public long getSleepTime() {
+        return details().sleepTime;
+    }
+
+    /**
+     * Get the number of sounds installed on the Karotz.
+     *
+     * @return the sound count, or {@code -1} if unknown
+     */
+    public int getSoundCount() {
+        return details().soundCount;
+    }
+
     /**
      * Get the status.
      *
@@ -121,79 +260,105 @@ public class OpenKarotzState {
     }
 
     /**
-     * Get the version.
+     * Get the number of stories installed on the Karotz.
      *
-     * @return the version
+     * @return the story count, or {@code -1} if unknown
      */
-    public String getVersion() {
-        return version;
+    public int getStoryCount() {
+        return details().storyCount;
     }
 
     /**
-     * Check if LED is pulsing.
+     * Get the number of RFID tags known by the Karotz.
      *
-     * @return the {@code true} if LED is pulsing, else {@code false}
+     * @return the tag count, or {@code -1} if unknown
      */
-    public boolean isPulsing() {
-        return pulsing;
+    public int getTagCount() {
+        return details().tagCount;
     }
 
     /**
-     * Set the ear mode.
+     * Get the size of the text-to-speech cache, as reported by the Karotz.
      *
-     * @param mode the ear mode
+     * @return the cache size, or {@code null} if unknown
      */
-    public void setEarMode(EarMode mode) {
-        this.earMode = mode;
+    public String getTtsCacheSize() {
+        return details().ttsCacheSize;
     }
 
     /**
-     * Set the LED color.
+     * Get the free space on the USB key.
      *
-     * @param color the color to set
+     * @return the free space with its unit, or {@code null} if unknown or if there is no USB key
      */
-    public void setLedColor(int color) {
-        this.ledColor = color & 0x00FFFFFF;
+    public String getUsbFreeSpace() {
+        return details().usbFreeSpace;
     }
 
     /**
-     * Set the left ear position.
-     * @param position the left ear position to set
+     * Get the used space on the USB key.
+     *
+     * @return the percentage of used space, or {@code -1} if unknown or if there is no USB key
      */
-    public void setLeftEarPosition(EarPosition position) {
-        this.leftEarPosition = position;
+    public int getUsbUsedSpacePercent() {
+        return details().usbUsedSpacePercent;
     }
 
     /**
-     * Set the LED pulsing state.
+     * Get the version.
      *
-     * @param pulsing the pulsing state to set
+     * @return the version
      */
-    public void setPulsing(boolean pulsing) {
-        this.pulsing = pulsing;
+    public String getVersion() {
+        return version;
     }
 
     /**
-     * Set the right ear position.
-     * @param position the right ear position to set
+     * Get the MAC address of the Wi-Fi interface.
+     *
+     * @return the MAC address, or {@code null} if unknown
      */
-    public void setRightEarPosition(EarPosition position) {
-        this.rightEarPosition = position;
+    public String getWlanMac() {
+        return details().wlanMac;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = status.hashCode();
+        h = 31 * h + ledColor;
+        h = 31 * h + (pulsing ? 1 : 0);
+        h = 31 * h + earMode.hashCode();
+        h = 31 * h + leftEarPosition.hashCode();
+        h = 31 * h + rightEarPosition.hashCode();
+        h = 31 * h + (restored ? 1 : 0);
+        h = 31 * h + (version == null ? 0 : version.hashCode());
+        return h;
     }
 
     /**
-     * Set the Karotz status.
+     * Check if LED is pulsing.
      *
-     * @param status the status to set
+     * @return the {@code true} if LED is pulsing, else {@code false}
      */
-    public void setStatus(KarotzStatus status) {
-        this.status = status;
+    public boolean isPulsing() {
+        return pulsing;
+    }
+
+    /**
+     * Check if this state was restored from local storage, and not yet confirmed by the Karotz.
+     *
+     * @return {@code true} if restored
+     */
+    public boolean isRestored() {
+        return restored;
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("OpenKarotzState { \"version\": \"");
+        sb.append("OpenKarotzState { \"revision\": \"");
+        sb.append(revision);
+        sb.append("\", \"version\": \"");
         sb.append(version);
         sb.append("\", \"status\": \"");
         sb.append(status.name());
@@ -207,21 +372,160 @@ public class OpenKarotzState {
         sb.append(leftEarPosition.toString());
         sb.append("\", \"right_ear\": \"");
         sb.append(rightEarPosition.toString());
+        sb.append("\", \"restored\": \"");
+        sb.append(restored ? "1" : "0");
         sb.append("\" }");
         return sb.toString();
     }
 
+    /**
+     * Derive a state with another ear mode.
+     *
+     * @param mode the ear mode
+     * @return the new state
+     */
+    public OpenKarotzState withEarMode(EarMode mode) {
+        return new OpenKarotzState(version, status, ledColor, pulsing, mode, leftEarPosition, rightEarPosition, false, revision, answer);
+    }
+
+    /**
+     * Derive a state with other ear positions.
+     *
+     * @param left the left ear position
+     * @param right the right ear position
+     * @return the new state
+     */
+    public OpenKarotzState withEarPositions(EarPosition left, EarPosition right) {
+        return new OpenKarotzState(version, status, ledColor, pulsing, earMode, left, right, false, revision, answer);
+    }
+
+    /**
+     * Derive a state with another LED color and pulse.
+     *
+     * @param color the LED color
+     * @param pulse the pulsing state
+     * @return the new state
+     */
+    public OpenKarotzState withLed(int color, boolean pulse) {
+        return new OpenKarotzState(version, status, color, pulse, earMode, leftEarPosition, rightEarPosition, false, revision, answer);
+    }
+
+    /**
+     * Derive a state with another Karotz status.
+     *
+     * @param newStatus the status
+     * @return the new state
+     */
+    public OpenKarotzState withStatus(KarotzStatus newStatus) {
+        return new OpenKarotzState(version, newStatus, ledColor, pulsing, earMode, leftEarPosition, rightEarPosition, false, revision, answer);
+    }
+
+    /**
+     * Derive the same state with another revision.
+     *
+     * @param newRevision the revision
+     * @return the new state
+     */
+    OpenKarotzState withRevision(long newRevision) {
+        return new OpenKarotzState(version, status, ledColor, pulsing, earMode, leftEarPosition, rightEarPosition, restored, newRevision, answer);
+    }
+
+    private Details details() {
+        // Racy but safe: details are immutable, at worst decoded twice
+        Details d = details;
+        if (d == null) {
+            d = (answer == null ? Details.UNKNOWN : new Details(answer));
+            details = d;
+        }
+        return d;
+    }
+
+
+    /**
+     * Fields of the status answer decoded on demand.
+     */
+    private static final class Details {
+
+        public Details(CgiAnswer answer) {
+            sleepTime = parseLong(answer.getString("sleep_time"));
+            ttsCacheSize = answer.getString("tts_cache_size");
+            karotzFreeSpace = toSpace(answer.getString("karotz_free_space"));
+            karotzUsedSpacePercent = answer.getInt("karotz_percent_used_space", -1);
+            usbFreeSpace = toSpace(answer.getString("usb_free_space"));
+            usbUsedSpacePercent = answer.getInt("usb_percent_used_space", -1);
+            ethernetMac = answer.getString("eth_mac");
+            wlanMac = answer.getString("wlan_mac");
+            tagCount = answer.getInt("nb_tags", -1);
+            moodCount = answer.getInt("nb_moods", -1);
+            soundCount = answer.getInt("nb_sounds", -1);
+            storyCount = answer.getInt("nb_stories", -1);
+        }
+
+        private Details() {
+            sleepTime = -1;
+            ttsCacheSize = null;
+            karotzFreeSpace = null;
+            karotzUsedSpacePercent = -1;
+            usbFreeSpace = null;
+            usbUsedSpacePercent = -1;
+            ethernetMac = null;
+            wlanMac = null;
+            tagCount = -1;
+            moodCount = -1;
+            soundCount = -1;
+            storyCount = -1;
+        }
+
+        private static long parseLong(String value) {
+            if (value == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
+        private static String toSpace(String value) {
+            // No USB key: -1
+            return (value == null || value.length() == 0 || "-1".equals(value) ? null : value);
+        }
+
+
+        final long sleepTime;
+        final String ttsCacheSize;
+        final String karotzFreeSpace;
+        final int karotzUsedSpacePercent;
+        final String usbFreeSpace;
+        final int usbUsedSpacePercent;
+        final String ethernetMac;
+        final String wlanMac;
+        final int tagCount;
+        final int moodCount;
+        final int soundCount;
+        final int storyCount;
+
+        static final Details UNKNOWN = new Details();
+    }
+
+
+    private final String version;
+
+    private final KarotzStatus status;
 
-    private String version = null;
+    private final int ledColor;
+    private final boolean pulsing;
 
-    private KarotzStatus status = KarotzStatus.UNKNOWN;
+    private final EarMode earMode;
+    private final EarPosition leftEarPosition;
+    private final EarPosition rightEarPosition;
 
-    private int ledColor = Color.GREEN;
-    private boolean pulsing = true;
+    private final boolean restored;
+    private final long revision;
 
-    private EarMode earMode = EarMode.ENABLED;
-    private EarPosition leftEarPosition = EarPosition.POSITION_1;
-    private EarPosition rightEarPosition = EarPosition.POSITION_1;
+    private final CgiAnswer answer;
+    private volatile Details details = null;
 
     private static final String KEY_VERSION = "version";
 
@@ -0,0 +1,503 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import android.util.Log;
+
+/**
+ * Time-bounded cache of the {@link OpenKarotzState}.
+ * <p>
+ * A state younger than the freshness TTL is served as is. An older state, up to the maximum staleness, is still served
+ * immediately while a refresh runs in the background (stale-while-revalidate). Beyond that, the caller waits for a
+ * fresh state. An offline state is served as is for a shorter TTL, so that an unreachable Karotz is not queried by
+ * every read, then always waited for.
+ * <p>
+ * The state is published through an atomic reference and never locked: readers always see a complete state, and
+ * command results are applied with compare-and-set {@link #update(Updater) updates}. A state loaded from the Karotz is
+ * only published if nothing changed while loading it: otherwise it may predate a command result, and is dropped. Each
+ * published change is stamped with the next {@link OpenKarotzState#getRevision() revision}, and notified to the
+ * registered {@link StateListener listeners}.
+ */
+public class StateCache {
+
+    /**
+     * Initialize a new cache.
+     * @param ttlMillis the freshness TTL, in milliseconds
+     * @param maxStaleMillis the maximum age of a state served while revalidating, in milliseconds
+     * @param executor the executor running background revalidations
+     */
+    public StateCache(long ttlMillis, long maxStaleMillis, Executor executor) {
+        this.ttlMillis = ttlMillis;
+        this.maxStaleMillis = maxStaleMillis;
+        this.executor = executor;
+    }
+
+    /**
+     * Register a listener notified of each state change. If a state is already cached, the listener is notified of it
+     * right away, as an initial change.
+     * @param listener the listener
+     * @param listenerExecutor the serial executor running notifications, e.g. the UI thread
+     */
+    public void addListener(StateListener listener, Executor listenerExecutor) {
+        Registration registration = new Registration(listener, listenerExecutor);
+        listeners.add(registration);
+        if (ref.get().state != null) {
+            registration.schedule();
+        }
+    }
+
+    /**
+     * Get the state, loading or revalidating it as needed.
+     * @param loader the loader fetching a fresh state
+     * @return the state
+     * @throws IOException if a synchronous load failed
+     */
+    public OpenKarotzState get(Loader loader) throws IOException {
+        Entry entry = ref.get();
+        long age = System.currentTimeMillis() - entry.loadedAt;
+
+        if (entry.state != null && entry.state.getStatus().isOffline()) {
+            if (age <= Math.min(ttlMillis, OFFLINE_TTL) && !entry.invalidated) {
+                hitCount.incrementAndGet();
+                return entry.state;
+            }
+        } else if (entry.state != null && age <= maxStaleMillis) {
+            if (age <= ttlMillis && !entry.invalidated) {
+                hitCount.incrementAndGet();
+            } else {
+                staleHitCount.incrementAndGet();
+                if (revalidating.compareAndSet(false, true)) {
+                    revalidate(entry, loader);
+                }
+            }
+            return entry.state;
+        }
+
+        missCount.incrementAndGet();
+        return publish(entry, loader.load());
+    }
+
+    /**
+     * Get the number of loaded states dropped, because the state changed while loading them.
+     * @return the drop count
+     */
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    /**
+     * Get the number of requests served by a fresh cached state.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Get the maximum age of a state served while revalidating.
+     * @return the maximum staleness in milliseconds
+     */
+    public long getMaxStaleMillis() {
+        return maxStaleMillis;
+    }
+
+    /**
+     * Get the number of requests that had to wait for a fresh state.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Get the number of background revalidations that failed.
+     * @return the revalidation failure count
+     */
+    public long getRevalidationFailureCount() {
+        return revalidationFailureCount.get();
+    }
+
+    /**
+     * Get the number of background revalidations started.
+     * @return the revalidation count
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /**
+     * Get the revision of the cached state. A reader can compare it with the revision of its last read to know if
+     * anything changed.
+     * @return the revision, or {@code 0} if nothing is cached
+     */
+    public long getRevision() {
+        OpenKarotzState state = ref.get().state;
+        return (state == null ? 0 : state.getRevision());
+    }
+
+    /**
+     * Get the age of the cached state.
+     * @return the age in milliseconds, or {@code -1} if nothing is cached
+     */
+    public long getStaleness() {
+        Entry entry = ref.get();
+        return (entry.state == null ? -1 : System.currentTimeMillis() - entry.loadedAt);
+    }
+
+    /**
+     * Get the number of requests served by a stale state while revalidating.
+     * @return the stale hit count
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    /**
+     * Get the freshness TTL.
+     * @return the TTL in milliseconds
+     */
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * Mark the cached state as needing revalidation, e.g. after a command changed the Karotz. The state is still
+     * served while it is refreshed in the background.
+     */
+    public void invalidate() {
+        while (true) {
+            Entry current = ref.get();
+            if (current.state == null || current.invalidated) {
+                return;
+            }
+            if (ref.compareAndSet(current, new Entry(current.state, current.loadedAt, true))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the cached state without loading it.
+     * @return the cached state or {@code null}
+     */
+    public OpenKarotzState peek() {
+        return ref.get().state;
+    }
+
+    /**
+     * Store a fresh state. It gets the next revision, unless its content is the same as the cached one.
+     * @param fresh the state
+     * @return the published state
+     */
+    public OpenKarotzState put(OpenKarotzState fresh) {
+        while (true) {
+            Entry current = ref.get();
+            OpenKarotzState published = stamp(current.state, fresh);
+            if (ref.compareAndSet(current, new Entry(published, System.currentTimeMillis(), false))) {
+                if (published != current.state) {
+                    fireStateChanged();
+                }
+                return published;
+            }
+        }
+    }
+
+    /**
+     * Load a fresh state, whatever the age of the cached one, e.g. to poll the Karotz. Like any load, the result is
+     * dropped if the state changed meanwhile.
+     * @param loader the loader fetching a fresh state
+     * @return the published state, or the current one if the loaded state was dropped
+     * @throws IOException if the load failed
+     */
+    public OpenKarotzState refresh(Loader loader) throws IOException {
+        Entry expected = ref.get();
+        return publish(expected, loader.load());
+    }
+
+    /**
+     * Unregister a listener. A pending notification is dropped.
+     * @param listener the listener
+     */
+    public void removeListener(StateListener listener) {
+        for (Registration registration : listeners) {
+            if (registration.listener == listener) {
+                registration.removed = true;
+                listeners.remove(registration);
+            }
+        }
+    }
+
+    /**
+     * Restore a state from local storage, if nothing is cached yet. The restored state is served to listeners and
+     * {@link #peek()}, but is stale: the next {@link #get(Loader)} waits for a fresh state.
+     * @param restored the restored state
+     * @return {@code true} if restored, {@code false} if a state was already cached
+     */
+    public boolean restore(OpenKarotzState restored) {
+        Entry current = ref.get();
+        if (current.state != null) {
+            return false;
+        }
+        if (!ref.compareAndSet(current, new Entry(restored.withRevision(1), 0, true))) {
+            return false;
+        }
+        fireStateChanged();
+        return true;
+    }
+
+    /**
+     * Change the cache timings.
+     * @param ttl the freshness TTL, in milliseconds
+     * @param maxStale the maximum age of a state served while revalidating, in milliseconds
+     */
+    public void setTimings(long ttl, long maxStale) {
+        this.ttlMillis = ttl;
+        this.maxStaleMillis = maxStale;
+    }
+
+    @Override
+    public String toString() {
+        return "StateCache { revision: " + getRevision() + ", hits: " + hitCount + ", stale hits: " + staleHitCount + ", misses: " + missCount
+                + ", revalidations: " + revalidationCount + ", failures: " + revalidationFailureCount + ", dropped: " + dropCount + " }";
+    }
+
+    /**
+     * Apply a change to the cached state, e.g. the result of a command. The updater may be called several times if
+     * the state is concurrently changed, and must thus have no side effect. Nothing is done if no state is cached.
+     * @param updater the updater deriving the new state from the current one
+     * @return the published state, or {@code null} if no state is cached
+     */
+    public OpenKarotzState update(Updater updater) {
+        while (true) {
+            Entry current = ref.get();
+            if (current.state == null) {
+                return null;
+            }
+            OpenKarotzState published = stamp(current.state, updater.apply(current.state));
+            if (published == current.state) {
+                return published;
+            }
+            if (ref.compareAndSet(current, new Entry(published, current.loadedAt, current.invalidated))) {
+                fireStateChanged();
+                return published;
+            }
+        }
+    }
+
+    private void fireStateChanged() {
+        for (Registration registration : listeners) {
+            registration.schedule();
+        }
+    }
+
+    private OpenKarotzState publish(Entry expected, OpenKarotzState fresh) {
+        OpenKarotzState published = stamp(expected.state, fresh);
+        if (ref.compareAndSet(expected, new Entry(published, System.currentTimeMillis(), false))) {
+            if (published != expected.state) {
+                fireStateChanged();
+            }
+            return published;
+        }
+
+        // Changed in the meantime, e.g. by a command: the loaded state may predate it
+        Log.d(LOG_TAG, "Karotz state changed while loading, result dropped");
+        dropCount.incrementAndGet();
+        return ref.get().state;
+    }
+
+    private void revalidate(final Entry expected, final Loader loader) {
+        revalidationCount.incrementAndGet();
+
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        publish(expected, loader.load());
+                    } catch (IOException e) {
+                        Log.w(LOG_TAG, "Cannot revalidate Karotz state: " + e.getMessage());
+                        revalidationFailureCount.incrementAndGet();
+                    } finally {
+                        revalidating.set(false);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // Rejected, next read will try again
+            Log.w(LOG_TAG, "Cannot schedule Karotz state revalidation: " + e.getMessage());
+            revalidating.set(false);
+            revalidationFailureCount.incrementAndGet();
+        }
+    }
+
+    private static OpenKarotzState stamp(OpenKarotzState current, OpenKarotzState next) {
+        if (current == null) {
+            return next.withRevision(1);
+        }
+        if (next.equals(current)) {
+            // No change, keep the revision
+            return current;
+        }
+        return next.withRevision(current.getRevision() + 1);
+    }
+
+
+    /**
+     * Loads a fresh state.
+     */
+    public interface Loader {
+
+        /**
+         * Load a fresh state.
+         * @return the state
+         * @throws IOException if an I/O error occurs
+         */
+        OpenKarotzState load() throws IOException;
+    }
+
+
+    /**
+     * Derives a new state from the current one.
+     */
+    public interface Updater {
+
+        /**
+         * Derive the new state.
+         * @param state the current state
+         * @return the new state, or the current one if nothing changes
+         */
+        OpenKarotzState apply(OpenKarotzState state);
+    }
+
+
+    /**
+     * Published state with its cache metadata.
+     */
+    private static class Entry {
+
+        public Entry(OpenKarotzState state, long loadedAt, boolean invalidated) {
+            this.state = state;
+            this.loadedAt = loadedAt;
+            this.invalidated = invalidated;
+        }
+
+
+        final OpenKarotzState state;
+        final long loadedAt;
+        final boolean invalidated;
+    }
+
+
+    /**
+     * Listener registration. At most one notification is pending: it diffs the state published when it runs with the
+     * state last notified, so that changes published in between are merged and never notified out of order.
+     */
+    private class Registration implements Runnable {
+
+        public Registration(StateListener listener, Executor listenerExecutor) {
+            this.listener = listener;
+            this.listenerExecutor = listenerExecutor;
+        }
+
+        @Override
+        public void run() {
+            scheduled.set(false);
+            if (removed) {
+                return;
+            }
+
+            Entry entry = ref.get();
+            if (entry.state == null || (last != null && entry.state.getRevision() <= last.getRevision())) {
+                return;
+            }
+
+            KarotzSnapshot current = new KarotzSnapshot(entry.state, entry.loadedAt);
+            StateChange change = new StateChange(last, current);
+            last = current;
+
+            try {
+                listener.onStateChanged(change);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Cannot notify state change: " + e.getMessage(), e);
+            }
+        }
+
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                listenerExecutor.execute(this);
+            } catch (RuntimeException e) {
+                Log.w(LOG_TAG, "Cannot schedule state change notification: " + e.getMessage());
+                scheduled.set(false);
+            }
+        }
+
+
+        final StateListener listener;
+        final Executor listenerExecutor;
+
+        final AtomicBoolean scheduled = new AtomicBoolean(false);
+        volatile boolean removed = false;
+        volatile KarotzSnapshot last = null;
+    }
+
+
+    private final Executor executor;
+
+    private volatile long ttlMillis;
+    private volatile long maxStaleMillis;
+
+    private final AtomicReference<Entry> ref = new AtomicReference<Entry>(new Entry(null, 0, false));
+    private final AtomicBoolean revalidating = new AtomicBoolean(false);
+
+    private final List<Registration> listeners = new CopyOnWriteArrayList<Registration>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+    private final AtomicLong revalidationFailureCount = new AtomicLong();
+    private final AtomicLong dropCount = new AtomicLong();
+
+    // Offline state served without loading for at most 2s
+    private static final long OFFLINE_TTL = 2000L;
+
+    private static final String LOG_TAG = StateCache.class.getSimpleName();
+}
@@ -0,0 +1,143 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+/**
+ * Change between two consecutive states of a Karotz, as notified to a {@link StateListener}.
+ * <p>
+ * The first change notified to a listener has no previous state: all fields are then reported as changed.
+ */
+public final class StateChange {
+
+    /**
+     * Initialize a new change.
+     * @param previous the previous state, or {@code null} if none
+     * @param current the current state
+     */
+    StateChange(KarotzSnapshot previous, KarotzSnapshot current) {
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * Get the current state.
+     * @return the current state
+     */
+    public KarotzSnapshot getCurrent() {
+        return current;
+    }
+
+    /**
+     * Get the previous state.
+     * @return the previous state, or {@code null} for the first change
+     */
+    public KarotzSnapshot getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Check if the ear mode was toggled.
+     * @return {@code true} if the ear mode changed
+     */
+    public boolean isEarModeChanged() {
+        return previous == null || previous.getEarMode() != current.getEarMode();
+    }
+
+    /**
+     * Check if the ears moved.
+     * @return {@code true} if the left or right ear position changed
+     */
+    public boolean isEarsMoved() {
+        return previous == null || previous.getLeftEarPosition() != current.getLeftEarPosition()
+                || previous.getRightEarPosition() != current.getRightEarPosition();
+    }
+
+    /**
+     * Check if this is the first change notified to the listener.
+     * @return {@code true} if there is no previous state
+     */
+    public boolean isInitial() {
+        return previous == null;
+    }
+
+    /**
+     * Check if the LED changed.
+     * @return {@code true} if the LED color or pulse changed
+     */
+    public boolean isLedChanged() {
+        return previous == null || previous.getLedColor() != current.getLedColor() || previous.isPulsing() != current.isPulsing();
+    }
+
+    /**
+     * Check if the Karotz status changed, e.g. went to sleep.
+     * @return {@code true} if the status changed
+     */
+    public boolean isStatusChanged() {
+        return previous == null || previous.getStatus() != current.getStatus();
+    }
+
+    /**
+     * Check if the Karotz version changed, e.g. after the first successful status request.
+     * @return {@code true} if the version changed
+     */
+    public boolean isVersionChanged() {
+        if (previous == null) {
+            return true;
+        }
+        String v = previous.getVersion();
+        return (v == null ? current.getVersion() != null : !v.equals(current.getVersion()));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StateChange { revision: ");
+        sb.append(previous == null ? "none" : String.valueOf(previous.getRevision()));
+        sb.append(" -> ").append(current.getRevision());
+        if (isStatusChanged()) {
+            sb.append(", status");
+        }
+        if (isVersionChanged()) {
+            sb.append(", version");
+        }
+        if (isLedChanged()) {
+            sb.append(", led");
+        }
+        if (isEarModeChanged()) {
+            sb.append(", ear mode");
+        }
+        if (isEarsMoved()) {
+            sb.append(", ears");
+        }
+        return sb.append(" }").toString();
+    }
+
+
+    private final KarotzSnapshot previous;
+    private final KarotzSnapshot current;
+}
@@ -0,0 +1,235 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+
+/**
+ * Local storage of the last known state of each Karotz, so that the UI can render meaningful controls at startup
+ * before the Karotz answers.
+ * <p>
+ * Each state is stored as a single compact string, e.g. {@code 200|AWAKE|0000FF|1|ENABLED|5|5}, rewritten after
+ * each change. A restored state is stale until the first fresh state confirms or replaces it.
+ */
+public class StateStore {
+
+    private StateStore(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Restore the last known state of the given Karotz into its state cache, then save each new state of the Karotz.
+     * Attaching the same Karotz again does nothing.
+     * @param karotz the Karotz
+     * @return {@code true} if a state was restored
+     */
+    public boolean attach(OpenKarotz karotz) {
+        String hostname = karotz.getHostname();
+        synchronized (savers) {
+            if (savers.containsKey(hostname)) {
+                return false;
+            }
+        }
+
+        boolean restored = false;
+        OpenKarotzState state = load(hostname);
+        if (state != null) {
+            restored = karotz.getStateCache().restore(state);
+            Log.d(LOG_TAG, "Restored state of " + hostname + ": " + state);
+        }
+
+        Saver saver = new Saver(hostname);
+        synchronized (savers) {
+            if (savers.containsKey(hostname)) {
+                return restored;
+            }
+            savers.put(hostname, saver);
+        }
+        karotz.addStateListener(saver, DIRECT_EXECUTOR);
+        return restored;
+    }
+
+    /**
+     * Forget the last known state of the given Karotz.
+     * @param hostname the Karotz hostname
+     */
+    public void clear(String hostname) {
+        prefs.edit().remove(KEY_PREFIX + hostname).apply();
+    }
+
+    /**
+     * Load the last known state of the given Karotz.
+     * @param hostname the Karotz hostname
+     * @return the restored state, or {@code null} if none or unreadable
+     */
+    public OpenKarotzState load(String hostname) {
+        String value = prefs.getString(KEY_PREFIX + hostname, null);
+        if (value == null) {
+            return null;
+        }
+        OpenKarotzState state = decode(value);
+        if (state == null) {
+            Log.w(LOG_TAG, "Cannot decode stored state of " + hostname + ": " + value);
+        }
+        return state;
+    }
+
+    /**
+     * Save the last known state of the given Karotz.
+     * @param hostname the Karotz hostname
+     * @param state the state
+     */
+    public void save(String hostname, KarotzSnapshot state) {
+        prefs.edit().putString(KEY_PREFIX + hostname, encode(state)).apply();
+    }
+
+    /**
+     * Decode a stored state.
+     * @param value the stored value
+     * @return the restored state, or {@code null} if the value is invalid
+     */
+    static OpenKarotzState decode(String value) {
+        String[] fields = value.split("\\|", -1);
+        if (fields.length != FIELD_COUNT) {
+            return null;
+        }
+
+        try {
+            String version = (fields[0].length() == 0 ? null : fields[0]);
+            KarotzStatus status = KarotzStatus.valueOf(fields[1]);
+            int color = Integer.parseInt(fields[2], 16);
+            boolean pulse = "1".equals(fields[3]);
+            EarMode earMode = EarMode.valueOf(fields[4]);
+            EarPosition left = EarPosition.fromIntValue(Integer.parseInt(fields[5]));
+            EarPosition right = EarPosition.fromIntValue(Integer.parseInt(fields[6]));
+
+            return new OpenKarotzState(version, status, color, pulse, earMode, left, right, true, 0);
+
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException
+            return null;
+        }
+    }
+
+    /**
+     * Encode a state for storage.
+     * @param state the state
+     * @return the value to store
+     */
+    static String encode(KarotzSnapshot state) {
+        StringBuilder sb = new StringBuilder(32);
+        sb.append(state.getVersion() == null ? "" : state.getVersion()).append('|');
+        sb.append(state.getStatus().name()).append('|');
+        sb.append(String.format("%06X", Integer.valueOf(state.getLedColor() & 0x00FFFFFF))).append('|');
+        sb.append(state.isPulsing() ? '1' : '0').append('|');
+        sb.append(state.getEarMode().name()).append('|');
+        sb.append(state.getLeftEarPosition().getPosition()).append('|');
+        sb.append(state.getRightEarPosition().getPosition());
+        return sb.toString();
+    }
+
+    /**
+     * Get the state store of the application.
+     * @param context a context
+     * @return the state store
+     */
+    public static synchronized StateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new StateStore(context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return instance;
+    }
+
+
+    /**
+     * Saves each new state of a Karotz. Listeners run on the publishing threads, so changes may come in concurrently
+     * and out of order: a state older than the last saved one is dropped.
+     */
+    private class Saver implements StateListener {
+
+        public Saver(String hostname) {
+            this.hostname = hostname;
+        }
+
+        @Override
+        public void onStateChanged(StateChange change) {
+            KarotzSnapshot current = change.getCurrent();
+            if (current.isStale() || current.getStatus() == KarotzStatus.UNKNOWN) {
+                // Nothing new to save
+                return;
+            }
+            synchronized (this) {
+                if (current.getRevision() <= savedRevision) {
+                    // Overtaken by a newer state
+                    return;
+                }
+                savedRevision = current.getRevision();
+                save(hostname, current);
+            }
+        }
+
+
+        private final String hostname;
+
+        private long savedRevision = 0;
+    }
+
+
+    private final SharedPreferences prefs;
+
+    private final Map<String, Saver> savers = new HashMap<String, Saver>();
+
+    private static StateStore instance = null;
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final int FIELD_COUNT = 7;
+
+    private static final String KEY_PREFIX = "state.";
+
+    private static final String PREFS_NAME = "karotz_state";
+
+    private static final String LOG_TAG = StateStore.class.getSimpleName();
+}
@@ -0,0 +1,265 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.util.KarotzThreadFactory;
+
+/**
+ * Background synchronization of the state of an {@link OpenKarotz}, so that changes made elsewhere (sleep, wake up,
+ * LED...) reach the state cache and its listeners.
+ * <p>
+ * The status is polled with an adaptive interval:
+ * <ul>
+ * <li>while the user interacts with the application, at the active interval;</li>
+ * <li>when idle, starting at the idle interval and doubling after each poll that brought no change;</li>
+ * <li>when the Karotz is unreachable, doubling after each failure.</li>
+ * </ul>
+ * The interval never exceeds the maximum interval. Polling only runs between {@link #start()} and {@link #stop()},
+ * i.e. while the application is in the foreground.
+ */
+public class StateSync {
+
+    /**
+     * Initialize a new synchronization with default intervals.
+     * @param karotz the Karotz to poll
+     */
+    public StateSync(OpenKarotz karotz) {
+        this(karotz, DEFAULT_ACTIVE_INTERVAL, DEFAULT_IDLE_INTERVAL, DEFAULT_MAX_INTERVAL);
+    }
+
+    /**
+     * Initialize a new synchronization.
+     * @param karotz the Karotz to poll
+     * @param activeInterval the interval while the user is active, in milliseconds
+     * @param idleInterval the first interval when the user is idle, in milliseconds
+     * @param maxInterval the maximum interval, in milliseconds
+     */
+    public StateSync(OpenKarotz karotz, long activeInterval, long idleInterval, long maxInterval) {
+        this.karotz = karotz;
+        this.activeInterval = activeInterval;
+        this.idleInterval = idleInterval;
+        this.maxInterval = maxInterval;
+        this.interval = activeInterval;
+    }
+
+    /**
+     * Get the number of bytes received by the polls.
+     * @return the byte count
+     */
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Get the number of polls that failed or found the Karotz offline.
+     * @return the failure count
+     */
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Get the current polling interval.
+     * @return the interval in milliseconds
+     */
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Get the number of polls.
+     * @return the poll count
+     */
+    public synchronized long getPollCount() {
+        return pollCount;
+    }
+
+    /**
+     * Check if polling is running.
+     * @return {@code true} if started
+     */
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Notify that the user interacts with the application. Polling switches to the active interval, and the next poll
+     * is brought forward if it was further away.
+     */
+    public synchronized void onUserActivity() {
+        lastActivity = System.currentTimeMillis();
+
+        if (running && interval > activeInterval) {
+            interval = activeInterval;
+            if (next == null || next.getDelay(TimeUnit.MILLISECONDS) > activeInterval) {
+                schedule(activeInterval);
+            }
+        }
+    }
+
+    /**
+     * Start polling, with an immediate first poll. Does nothing if already started.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        Log.d(LOG_TAG, "Starting Karotz state sync for " + karotz.getHostname());
+        running = true;
+        interval = activeInterval;
+        lastActivity = System.currentTimeMillis();
+        schedule(0);
+    }
+
+    /**
+     * Stop polling. A poll in progress completes, but no other is scheduled.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        Log.d(LOG_TAG, "Stopping Karotz state sync for " + karotz.getHostname() + ": " + this);
+        running = false;
+        generation++;
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "StateSync { polls: " + pollCount + ", failures: " + failureCount + ", bytes: " + bytesReceived + ", interval: " + interval
+                + "ms }";
+    }
+
+    private long nextInterval(boolean success, boolean changed) {
+        if (!success) {
+            // Unreachable: back off
+            return Math.min(Math.max(interval, activeInterval) * 2, maxInterval);
+        }
+        if (System.currentTimeMillis() - lastActivity < ACTIVE_WINDOW) {
+            return activeInterval;
+        }
+        if (changed || interval < idleInterval) {
+            return idleInterval;
+        }
+        // Idle and nothing changes: back off
+        return Math.min(interval * 2, maxInterval);
+    }
+
+    private void poll(int pollGeneration) {
+        synchronized (this) {
+            if (!running || pollGeneration != generation) {
+                return;
+            }
+        }
+
+        StateCache cache = karotz.getStateCache();
+        long revision = cache.getRevision();
+        long bytes = karotz.getStatusBytes();
+        boolean success = false;
+
+        try {
+            OpenKarotzState state = karotz.refresh();
+            success = state.getStatus().isOnline();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cannot poll Karotz state: " + e.getMessage());
+        }
+
+        boolean changed = (cache.getRevision() != revision);
+
+        synchronized (this) {
+            pollCount++;
+            bytesReceived += karotz.getStatusBytes() - bytes;
+            if (!success) {
+                failureCount++;
+            }
+
+            if (running && pollGeneration == generation) {
+                interval = nextInterval(success, changed);
+                schedule(interval);
+            }
+        }
+    }
+
+    private void schedule(long delay) {
+        generation++;
+        if (next != null) {
+            next.cancel(false);
+        }
+
+        final int pollGeneration = generation;
+        next = TIMER.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                poll(pollGeneration);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+
+    private final OpenKarotz karotz;
+
+    private final long activeInterval;
+    private final long idleInterval;
+    private final long maxInterval;
+
+    private boolean running = false;
+    private int generation = 0;
+    private ScheduledFuture<?> next = null;
+
+    private long interval;
+    private long lastActivity = 0;
+
+    private long pollCount = 0;
+    private long failureCount = 0;
+    private long bytesReceived = 0;
+
+    private static final ScheduledExecutorService TIMER = new ScheduledThreadPoolExecutor(1, new KarotzThreadFactory("KarotzStateSync"));
+
+    // Active: every 3s, idle: from 15s up to 5 minutes
+    private static final long DEFAULT_ACTIVE_INTERVAL = 3000L;
+    private static final long DEFAULT_IDLE_INTERVAL = 15000L;
+    private static final long DEFAULT_MAX_INTERVAL = 300000L;
+
+    // Time after the last user interaction during which the user is considered active
+    private static final long ACTIVE_WINDOW = 30000L;
+
+    private static final String LOG_TAG = StateSync.class.getSimpleName();
+}
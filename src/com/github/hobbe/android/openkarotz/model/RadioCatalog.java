@@ -0,0 +1,200 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Radio stations shipped with the application, read from the binary catalog compiled from {@code radios.json} by
+ * {@code tools/RadioCatalogCompiler.java}.
+ * <p>
+ * The catalog is read in a single pass, without any JSON parsing, and cached for the whole process.
+ */
+public class RadioCatalog {
+
+    /**
+     * Initialize a new catalog.
+     * @param groups the radio groups
+     */
+    RadioCatalog(RadioGroupModel[] groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Get the radio groups.
+     * @return a new array of the radio groups, in catalog order
+     */
+    public RadioGroupModel[] getGroups() {
+        return groups.clone();
+    }
+
+    /**
+     * Get the number of radio stations, all groups included.
+     * @return the radio count
+     */
+    public int getRadioCount() {
+        int count = 0;
+        for (RadioGroupModel group : groups) {
+            count += group.getRadios().size();
+        }
+        return count;
+    }
+
+    /**
+     * Get the search index of the radio stations, built on first call.
+     * @return the search index
+     */
+    public synchronized RadioSearchIndex getSearchIndex() {
+        if (searchIndex == null) {
+            searchIndex = new RadioSearchIndex(groups);
+        }
+        return searchIndex;
+    }
+
+    @Override
+    public String toString() {
+        return "RadioCatalog { groups: " + groups.length + ", radios: " + getRadioCount() + " }";
+    }
+
+    /**
+     * Get the radio catalog of the application, read from the assets on first call.
+     * @param context the context
+     * @return the catalog, or {@code null} if it cannot be read
+     */
+    public static synchronized RadioCatalog getInstance(Context context) {
+        if (instance == null) {
+            InputStream is = null;
+            try {
+                long start = System.currentTimeMillis();
+                is = context.getAssets().open(ASSET);
+                instance = read(is);
+                Log.d(LOG_TAG, "Read " + instance + " in " + (System.currentTimeMillis() - start) + "ms");
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Could not read radio catalog " + ASSET + ": " + e.getMessage(), e);
+            } finally {
+                if (is != null) {
+                    try {
+                        is.close();
+                    } catch (IOException e) {
+                        // Ignored
+                    }
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Read a catalog.
+     * @param in the input stream, positioned at the start of the catalog
+     * @return the catalog
+     * @throws IOException if the catalog cannot be read, or is invalid
+     */
+    public static RadioCatalog read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+
+        int magic = data.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a radio catalog: " + Integer.toHexString(magic));
+        }
+        int version = data.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported radio catalog version: " + version);
+        }
+
+        int stringCount = data.readUnsignedShort();
+        int groupCount = data.readUnsignedShort();
+        int radioCount = data.readUnsignedShort();
+
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            strings[i] = data.readUTF();
+        }
+
+        RadioGroupModel[] groups = new RadioGroupModel[groupCount];
+        int[] radioCounts = new int[groupCount];
+        int expected = 0;
+        for (int i = 0; i < groupCount; i++) {
+            String id = readString(data, strings);
+            String name = readString(data, strings);
+            int first = data.readUnsignedShort();
+            radioCounts[i] = data.readUnsignedShort();
+            if (first != expected) {
+                throw new IOException("Radios of group " + id + " out of order");
+            }
+            expected += radioCounts[i];
+            groups[i] = new RadioGroupModel(id, name);
+        }
+        if (expected != radioCount) {
+            throw new IOException("Radio count mismatch: " + expected + " in groups, " + radioCount + " in catalog");
+        }
+
+        for (int i = 0; i < groupCount; i++) {
+            for (int j = 0; j < radioCounts[i]; j++) {
+                String id = readString(data, strings);
+                String name = readString(data, strings);
+                String url = readString(data, strings);
+                groups[i].addRadio(new RadioModel(id, name, url));
+            }
+        }
+
+        return new RadioCatalog(groups);
+    }
+
+    private static String readString(DataInputStream data, String[] strings) throws IOException {
+        int index = data.readUnsignedShort();
+        if (index >= strings.length) {
+            throw new IOException("Invalid string index: " + index);
+        }
+        return strings[index];
+    }
+
+
+    private final RadioGroupModel[] groups;
+
+    private RadioSearchIndex searchIndex = null;
+
+    private static RadioCatalog instance = null;
+
+    private static final String ASSET = "radios.bin";
+
+    private static final int MAGIC = 0x52434154; // 'RCAT'
+
+    private static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String LOG_TAG = RadioCatalog.class.getSimpleName();
+}
@@ -0,0 +1,413 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.model;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Accent- and case-insensitive search of radio stations across all groups, e.g. {@code "cherie"} or {@code "isere"}.
+ * <p>
+ * Station names, ids and group names are folded (accents removed, lower case) and split into tokens, which are
+ * indexed in a prefix trie: each node holds the sorted list of stations having a token starting with that prefix. A query is folded and
+ * tokenized the same way; each query token is a single trie walk, and the stations matching all of them are ranked.
+ * The index is immutable and can be searched from any thread.
+ */
+public class RadioSearchIndex {
+
+    /**
+     * Build the index of the given radio groups.
+     * @param groups the radio groups
+     */
+    public RadioSearchIndex(RadioGroupModel[] groups) {
+        List<Station> list = new ArrayList<Station>();
+        for (RadioGroupModel group : groups) {
+            if (group == null) {
+                continue;
+            }
+            for (RadioModel radio : group.getRadios()) {
+                list.add(new Station(list.size(), group, radio));
+            }
+        }
+        stations = list.toArray(new Station[list.size()]);
+
+        for (Station station : stations) {
+            for (String token : station.tokens) {
+                root.add(token, 0, station.ordinal);
+            }
+        }
+        root.trim();
+    }
+
+    /**
+     * Search stations.
+     * @param query the query, each word matched as a prefix of a word of the station name, id or group name, whatever
+     *            the accents or case
+     * @param limit the maximum number of results
+     * @return the matching stations, best first: names starting with the query, then ids, then matches in any word of
+     *         the name, then matches needing the group name
+     */
+    public List<Hit> search(String query, int limit) {
+        String[] tokens = tokenize(fold(query));
+        if (tokens.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        int[] matches = null;
+        for (String token : tokens) {
+            Node node = root.find(token);
+            if (node == null) {
+                return Collections.emptyList();
+            }
+            matches = (matches == null ? node.stations : intersect(matches, node.stations));
+            if (matches.length == 0) {
+                return Collections.emptyList();
+            }
+        }
+
+        String phrase = join(tokens, " ");
+        String compact = join(tokens, "");
+
+        List<Hit> hits = new ArrayList<Hit>(matches.length);
+        for (int ordinal : matches) {
+            Station station = stations[ordinal];
+            int rank;
+            if (station.name.startsWith(phrase)) {
+                rank = RANK_NAME_PREFIX;
+            } else if (station.id.startsWith(compact)) {
+                rank = RANK_ID_PREFIX;
+            } else if (station.matchesOwnWords(tokens)) {
+                rank = RANK_WORD_PREFIX;
+            } else {
+                rank = RANK_GROUP_PREFIX;
+            }
+            hits.add(new Hit(station, rank));
+        }
+        Collections.sort(hits, HIT_ORDER);
+
+        return (hits.size() > limit ? hits.subList(0, limit) : hits);
+    }
+
+    /**
+     * Get the number of indexed stations.
+     * @return the station count
+     */
+    public int size() {
+        return stations.length;
+    }
+
+    @Override
+    public String toString() {
+        return "RadioSearchIndex { stations: " + stations.length + ", nodes: " + root.count() + " }";
+    }
+
+    /**
+     * Fold a text for matching: accents removed, ligatures expanded, lower case.
+     * @param text the text
+     * @return the folded text
+     */
+    static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            c = Character.toLowerCase(c);
+            switch (c) {
+            case 'œ':
+                sb.append("oe");
+                break;
+            case 'æ':
+                sb.append("ae");
+                break;
+            case 'ß':
+                sb.append("ss");
+                break;
+            default:
+                sb.append(c);
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Split a folded text into words of letters and digits.
+     * @param folded the folded text
+     * @return the words, possibly none
+     */
+    static String[] tokenize(String folded) {
+        List<String> tokens = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean word = (i < folded.length() && Character.isLetterOrDigit(folded.charAt(i)));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return (count == result.length ? result : Arrays.copyOf(result, count));
+    }
+
+    private static String join(String[] tokens, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : tokens) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Station matching a query.
+     */
+    public static class Hit {
+
+        Hit(Station station, int rank) {
+            this.station = station;
+            this.rank = rank;
+        }
+
+        /**
+         * Get the group of the station.
+         * @return the radio group
+         */
+        public RadioGroupModel getGroup() {
+            return station.group;
+        }
+
+        /**
+         * Get the station.
+         * @return the radio
+         */
+        public RadioModel getRadio() {
+            return station.radio;
+        }
+
+        /**
+         * Get the rank of the match, lower is better.
+         * @return the rank
+         */
+        public int getRank() {
+            return rank;
+        }
+
+        @Override
+        public String toString() {
+            return station.radio.getName() + " (" + station.group.getName() + ")";
+        }
+
+
+        final Station station;
+        final int rank;
+    }
+
+
+    /**
+     * Node of the prefix trie.
+     */
+    private static class Node {
+
+        public Node() {
+            // Nothing to do
+        }
+
+        void add(String token, int depth, int ordinal) {
+            // Stations are added in ordinal order: postings stay sorted, a repeated station is the last one
+            if (count == 0 || stations[count - 1] != ordinal) {
+                if (count == stations.length) {
+                    stations = Arrays.copyOf(stations, Math.max(4, count * 2));
+                }
+                stations[count++] = ordinal;
+            }
+            if (depth == token.length()) {
+                return;
+            }
+
+            Character c = Character.valueOf(token.charAt(depth));
+            Node child = children.get(c);
+            if (child == null) {
+                child = new Node();
+                children.put(c, child);
+            }
+            child.add(token, depth + 1, ordinal);
+        }
+
+        int count() {
+            int total = 1;
+            for (Node child : children.values()) {
+                total += child.count();
+            }
+            return total;
+        }
+
+        Node find(String prefix) {
+            Node node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                node = node.children.get(Character.valueOf(prefix.charAt(i)));
+            }
+            return node;
+        }
+
+        void trim() {
+            if (stations.length != count) {
+                stations = Arrays.copyOf(stations, count);
+            }
+            for (Node child : children.values()) {
+                child.trim();
+            }
+        }
+
+
+        final Map<Character, Node> children = new HashMap<Character, Node>(4);
+
+        int[] stations = new int[0];
+        int count = 0;
+    }
+
+
+    /**
+     * Indexed station, with its folded name and id.
+     */
+    private static class Station {
+
+        public Station(int ordinal, RadioGroupModel group, RadioModel radio) {
+            this.ordinal = ordinal;
+            this.group = group;
+            this.radio = radio;
+
+            String[] words = tokenize(fold(radio.getName()));
+            this.name = join(words, " ");
+            this.id = join(tokenize(fold(radio.getId())), "");
+
+            Set<String> own = new LinkedHashSet<String>(Arrays.asList(words));
+            if (id.length() > 0) {
+                own.add(id);
+            }
+            if (words.length > 1) {
+                // Words typed without spaces, e.g. "franceinter"
+                own.add(join(words, ""));
+            }
+            this.ownTokens = own.toArray(new String[own.size()]);
+
+            // Group words, e.g. "France Bleu Isere" for "Isere" in "France Bleu Regions"
+            Set<String> all = new LinkedHashSet<String>(own);
+            all.addAll(Arrays.asList(tokenize(fold(group.getName()))));
+            this.tokens = all.toArray(new String[all.size()]);
+        }
+
+        boolean matchesOwnWords(String[] prefixes) {
+            for (String prefix : prefixes) {
+                boolean found = false;
+                for (String token : ownTokens) {
+                    if (token.startsWith(prefix)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+
+        final int ordinal;
+        final RadioGroupModel group;
+        final RadioModel radio;
+
+        final String name;
+        final String id;
+        final String[] ownTokens;
+        final String[] tokens;
+    }
+
+
+    private final Station[] stations;
+
+    private final Node root = new Node();
+
+    private static final int RANK_NAME_PREFIX = 0;
+
+    private static final int RANK_ID_PREFIX = 1;
+
+    private static final int RANK_WORD_PREFIX = 2;
+
+    private static final int RANK_GROUP_PREFIX = 3;
+
+    private static final Comparator<Hit> HIT_ORDER = new Comparator<Hit>() {
+
+        @Override
+        public int compare(Hit h1, Hit h2) {
+            if (h1.rank != h2.rank) {
+                return h1.rank - h2.rank;
+            }
+            int length = h1.station.name.length() - h2.station.name.length();
+            if (length != 0) {
+                return length;
+            }
+            return h1.station.ordinal - h2.station.ordinal;
+        }
+    };
+}
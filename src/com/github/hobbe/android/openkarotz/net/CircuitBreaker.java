@@ -0,0 +1,219 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+import android.util.Log;
+
+/**
+ * Circuit breaker in front of an unreliable remote host.
+ * <p>
+ * The circuit is {@link State#CLOSED closed} while the host answers. After a number of consecutive failures it
+ * {@link State#OPEN opens}: requests are rejected at once instead of waiting for a timeout. Once the open period is
+ * over, a single request is let through as a {@link Permit#PROBE probe} and the circuit is {@link State#HALF_OPEN half
+ * open}: it closes if the probe succeeds, and opens again otherwise.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Initialize a new circuit breaker.
+     * @param name the name, e.g. the host
+     * @param failureThreshold the number of consecutive failures opening the circuit
+     * @param openPeriod the time requests are rejected before the next probe, in milliseconds
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openPeriod) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openPeriod = openPeriod;
+    }
+
+    /**
+     * Ask for the permission to send a request. {@link #onSuccess()} or {@link #onFailure()} must be called after a
+     * request is sent.
+     * @return the permission
+     */
+    public synchronized Permit acquire() {
+        switch (state) {
+        case CLOSED:
+            return Permit.CALL;
+
+        case OPEN:
+            if (System.currentTimeMillis() >= openUntil) {
+                transition(State.HALF_OPEN);
+                return Permit.PROBE;
+            }
+            rejectedCount++;
+            return Permit.REJECT;
+
+        default:
+            // A probe is already running
+            rejectedCount++;
+            return Permit.REJECT;
+        }
+    }
+
+    /**
+     * Get the number of consecutive failures.
+     * @return the failure count, reset by a success
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * Get the number of requests rejected because the circuit was not closed.
+     * @return the rejected count
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Get the time left before the next probe.
+     * @return the time in milliseconds, or {@code 0} if the circuit is not open
+     */
+    public synchronized long getRetryDelay() {
+        return (state == State.OPEN ? Math.max(0, openUntil - System.currentTimeMillis()) : 0);
+    }
+
+    /**
+     * Get the current state.
+     * @return the state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of transitions to the given state.
+     * @param to the target state
+     * @return the transition count
+     */
+    public synchronized long getTransitionCount(State to) {
+        return transitionCounts[to.ordinal()];
+    }
+
+    /**
+     * Get the time of the last state transition.
+     * @return the time in milliseconds, or {@code 0} if the circuit never changed state
+     */
+    public synchronized long getTransitionTime() {
+        return transitionTime;
+    }
+
+    /**
+     * Record a failed request.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            openUntil = System.currentTimeMillis() + openPeriod;
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * Record a successful request.
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    /**
+     * Close the circuit and forget the failures, e.g. when the network changed.
+     */
+    public synchronized void reset() {
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            transition(State.CLOSED);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker { " + name + ": " + state + ", failures: " + consecutiveFailures + ", rejected: " + rejectedCount + ", opened: "
+                + getTransitionCount(State.OPEN) + ", closed: " + getTransitionCount(State.CLOSED) + " }";
+    }
+
+    private void transition(State to) {
+        Log.d(LOG_TAG, name + ": " + state + " -> " + to);
+        state = to;
+        transitionTime = System.currentTimeMillis();
+        transitionCounts[to.ordinal()]++;
+    }
+
+
+    /**
+     * Circuit state.
+     */
+    public enum State {
+
+        /** Requests are sent. */
+        CLOSED,
+
+        /** Requests are rejected. */
+        OPEN,
+
+        /** A probe is running, other requests are rejected. */
+        HALF_OPEN;
+    }
+
+
+    /**
+     * Permission to send a request.
+     */
+    public enum Permit {
+
+        /** The request can be sent. */
+        CALL,
+
+        /** The request can be sent, as a probe deciding whether the circuit closes. */
+        PROBE,
+
+        /** The request must not be sent. */
+        REJECT;
+    }
+
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openPeriod;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntil = 0;
+    private long transitionTime = 0;
+
+    private long rejectedCount = 0;
+    private final long[] transitionCounts = new long[State.values().length];
+
+    private static final String LOG_TAG = CircuitBreaker.class.getSimpleName();
+}
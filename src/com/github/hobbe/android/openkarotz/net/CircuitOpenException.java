@@ -26,44 +26,35 @@
  *
  */
 
-package com.github.hobbe.android.openkarotz.task;
+package com.github.hobbe.android.openkarotz.net;
 
 import java.io.IOException;
 
-import android.app.Activity;
-import android.util.Log;
-
-import com.github.hobbe.android.openkarotz.karotz.Karotz;
-
 /**
- * Task to get Karotz version in the background.
+ * Signals that a request was not sent because the {@link CircuitBreaker circuit} to the host is open.
  */
-public class GetVersionAsyncTask extends KarotzAsyncTask {
+public class CircuitOpenException extends IOException {
 
     /**
-     * Initialize a new task.
-     * 
-     * @param activity the calling activity
+     * Initialize a new exception.
+     * @param host the host
+     * @param retryDelay the time left before the next probe, in milliseconds
      */
-    public GetVersionAsyncTask(Activity activity) {
-        super(activity);
+    public CircuitOpenException(String host, long retryDelay) {
+        super(host + " is unreachable, next try in " + retryDelay + "ms");
+        this.retryDelay = retryDelay;
     }
 
     /**
-     * This tasks returns the Karotz version as a {@link String} or {@code null} if the Karotz cannot be contacted.
+     * Get the time left before the next probe, when the exception was thrown.
+     * @return the time in milliseconds
      */
-    @Override
-    protected String doInBackground(Object... params) {
-
-        try {
-            return Karotz.getInstance().getVersion();
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Cannot get Karotz version: " + e.getMessage(), e);
-            return null;
-        }
+    public long getRetryDelay() {
+        return retryDelay;
     }
 
 
-    // Log tag
-    private static final String LOG_TAG = GetVersionAsyncTask.class.getSimpleName();
+    private final long retryDelay;
+
+    private static final long serialVersionUID = 1L;
 }
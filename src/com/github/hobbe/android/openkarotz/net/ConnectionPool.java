@@ -0,0 +1,231 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import android.util.Log;
+
+/**
+ * Per-host pool of keep-alive HTTP connections.
+ * <p>
+ * The Karotz is a slow embedded board: opening a TCP connection for every command adds noticeable latency. This pool
+ * keeps a few idle connections per host, validates them before reuse and evicts the ones idle for too long.
+ */
+public class ConnectionPool {
+
+    /**
+     * Initialize a new pool.
+     * @param maxIdlePerHost the maximum number of idle connections kept per host
+     * @param keepAliveMillis the time after which an idle connection is evicted, in milliseconds
+     */
+    public ConnectionPool(int maxIdlePerHost, long keepAliveMillis) {
+        this.maxIdlePerHost = maxIdlePerHost;
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * Get a connection to the given host: an idle pooled one if a valid one exists, else a new one.
+     * @param host the host name or IP
+     * @param port the port
+     * @param connectTimeout the connect timeout, in milliseconds, used if a new connection must be opened
+     * @return a connection, to be given back with {@link #release(PooledConnection)}
+     * @throws IOException if a new connection cannot be established
+     */
+    public PooledConnection acquire(String host, int port, int connectTimeout) throws IOException {
+        String key = key(host, port);
+
+        synchronized (this) {
+            evictIdle(System.currentTimeMillis());
+
+            LinkedList<PooledConnection> idle = pool.get(key);
+            while (idle != null && !idle.isEmpty()) {
+                // Most recently used first
+                PooledConnection conn = idle.removeFirst();
+                if (conn.isValid()) {
+                    hitCount++;
+                    return conn;
+                }
+                conn.close();
+                evictionCount++;
+            }
+
+            missCount++;
+        }
+
+        // Connect outside of the lock
+        return new PooledConnection(host, port, connectTimeout);
+    }
+
+    /**
+     * Close all idle connections.
+     */
+    public synchronized void clear() {
+        for (LinkedList<PooledConnection> idle : pool.values()) {
+            for (PooledConnection conn : idle) {
+                conn.close();
+            }
+        }
+        pool.clear();
+    }
+
+    /**
+     * Close idle connections that have not been used for longer than the keep-alive time.
+     */
+    public synchronized void evictIdle() {
+        evictIdle(System.currentTimeMillis());
+    }
+
+    /**
+     * Get the number of connections evicted because they were stale or idle for too long.
+     * @return the eviction count
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Get the number of requests served by a pooled connection.
+     * @return the hit count
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of idle connections currently pooled, all hosts included.
+     * @return the idle connection count
+     */
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (LinkedList<PooledConnection> idle : pool.values()) {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of requests that required a new connection.
+     * @return the miss count
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Give a connection back to the pool. If the server does not keep it alive, or if the pool is full for this host,
+     * the connection is closed.
+     * @param conn the connection
+     */
+    public void release(PooledConnection conn) {
+        if (!conn.isKeepAlive()) {
+            conn.close();
+            return;
+        }
+
+        String key = key(conn.getHost(), conn.getPort());
+
+        synchronized (this) {
+            LinkedList<PooledConnection> idle = pool.get(key);
+            if (idle == null) {
+                idle = new LinkedList<PooledConnection>();
+                pool.put(key, idle);
+            }
+
+            idle.addFirst(conn);
+
+            while (idle.size() > maxIdlePerHost) {
+                idle.removeLast().close();
+                evictionCount++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConnectionPool { hits: " + hitCount + ", misses: " + missCount + ", evictions: " + evictionCount + ", idle: "
+                + getIdleCount() + " }";
+    }
+
+    private void evictIdle(long now) {
+        Iterator<LinkedList<PooledConnection>> hosts = pool.values().iterator();
+        while (hosts.hasNext()) {
+            LinkedList<PooledConnection> idle = hosts.next();
+
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection conn = it.next();
+                if (now - conn.getLastUsed() > keepAliveMillis) {
+                    Log.v(LOG_TAG, "Evicting idle connection: " + conn);
+                    it.remove();
+                    conn.close();
+                    evictionCount++;
+                }
+            }
+
+            if (idle.isEmpty()) {
+                hosts.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the application connection pool.
+     * @return the connection pool
+     */
+    public static ConnectionPool getDefault() {
+        return DEFAULT;
+    }
+
+    private static String key(String host, int port) {
+        return host + ':' + port;
+    }
+
+
+    private final Map<String, LinkedList<PooledConnection>> pool = new HashMap<String, LinkedList<PooledConnection>>();
+
+    private final int maxIdlePerHost;
+    private final long keepAliveMillis;
+
+    private long hitCount = 0;
+    private long missCount = 0;
+    private long evictionCount = 0;
+
+    // The Karotz CGI server is small, keep only a couple of sockets open
+    private static final int DEFAULT_MAX_IDLE_PER_HOST = 2;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = 15000L;
+
+    private static final ConnectionPool DEFAULT = new ConnectionPool(DEFAULT_MAX_IDLE_PER_HOST, DEFAULT_KEEP_ALIVE_MILLIS);
+
+    private static final String LOG_TAG = ConnectionPool.class.getSimpleName();
+}
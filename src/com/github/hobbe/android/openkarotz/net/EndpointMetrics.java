@@ -0,0 +1,133 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and latency histogram of the requests to a network endpoint, i.e. a host and path.
+ */
+public class EndpointMetrics {
+
+    /**
+     * Initialize new, empty metrics.
+     * @param endpoint the endpoint, e.g. {@code 192.168.1.10:80/cgi-bin/status}
+     */
+    public EndpointMetrics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Get the number of bytes received, in response bodies.
+     * @return the byte count
+     */
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    /**
+     * Get the number of bytes sent, in requests.
+     * @return the byte count
+     */
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /**
+     * Get the endpoint.
+     * @return the endpoint
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Get the number of failed requests.
+     * @return the error count
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * Get the latency histogram of the requests, successful or not.
+     * @return the histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Get the number of requests, successful or not.
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Record a failed request.
+     * @param latency the time until the failure, in milliseconds
+     */
+    public void recordError(long latency) {
+        requestCount.incrementAndGet();
+        errorCount.incrementAndGet();
+        latencies.record(latency);
+    }
+
+    /**
+     * Record a successful request.
+     * @param latency the request latency, in milliseconds
+     * @param sent the number of bytes sent
+     * @param received the number of bytes received
+     */
+    public void recordSuccess(long latency, long sent, long received) {
+        requestCount.incrementAndGet();
+        bytesOut.addAndGet(sent);
+        bytesIn.addAndGet(received);
+        latencies.record(latency);
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + ": " + requestCount.get() + " requests, " + errorCount.get() + " errors, " + bytesOut.get() + "B out, "
+                + bytesIn.get() + "B in, p50 " + latencies.getPercentile(50) + "ms, p95 " + latencies.getPercentile(95) + "ms, p99 "
+                + latencies.getPercentile(99) + "ms, max " + latencies.getMax() + "ms";
+    }
+
+
+    private final String endpoint;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+}
@@ -0,0 +1,149 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, cheap enough to record every request.
+ * <p>
+ * Latencies are counted in fixed buckets following a 1-2-3-5-7 series, from 1ms to 30s. Percentiles are reported as
+ * the upper bound of the bucket they fall in, i.e. with a precision of about 40%, which is enough to tell a healthy
+ * endpoint from a struggling one.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Initialize a new, empty histogram.
+     */
+    public LatencyHistogram() {
+        // Nothing to do
+    }
+
+    /**
+     * Get the number of recorded latencies.
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get the largest recorded latency.
+     * @return the maximum latency in milliseconds, or {@code 0} if empty
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the recorded latencies.
+     * @return the mean latency in milliseconds, or {@code 0} if empty
+     */
+    public long getMean() {
+        long n = count.get();
+        return (n == 0 ? 0 : sum.get() / n);
+    }
+
+    /**
+     * Get a percentile of the recorded latencies.
+     * @param percentile the percentile, from 0 to 100, e.g. {@code 95}
+     * @return the upper bound of the bucket holding the percentile in milliseconds, capped by the maximum latency, or
+     *         {@code 0} if empty
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BOUNDS.length + 1];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Record a latency.
+     * @param millis the latency, in milliseconds
+     */
+    public void record(long millis) {
+        long value = Math.max(0, millis);
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long m;
+        while (value > (m = max.get())) {
+            if (max.compareAndSet(m, value)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram { count: " + getCount() + ", mean: " + getMean() + "ms, p50: " + getPercentile(50) + "ms, p95: "
+                + getPercentile(95) + "ms, p99: " + getPercentile(99) + "ms, max: " + getMax() + "ms }";
+    }
+
+    private static int indexOf(long value) {
+        // Few buckets: a linear scan is as fast as a binary search
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (value <= BOUNDS[i]) {
+                return i;
+            }
+        }
+        return BOUNDS.length;
+    }
+
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Bucket upper bounds, in milliseconds; the last bucket holds anything above
+    private static final long[] BOUNDS = new long[] {
+            1, 2, 3, 5, 7, 10, 20, 30, 50, 70, 100, 200, 300, 500, 700, 1000, 2000, 3000, 5000, 7000, 10000, 20000, 30000
+    };
+}
@@ -28,13 +28,17 @@
 
 package com.github.hobbe.android.openkarotz.net;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import android.app.Activity;
 import android.content.Context;
@@ -60,21 +64,250 @@ public class NetUtils {
     }
 
     /**
-     * Given a URL, establishes an HttpUrlConnection and retrieves the web page content as a InputStream, which it
-     * returns as a string.
+     * Given a URL, retrieves the web page content as a string.
+     * <p>
+     * Plain HTTP URLs go through the {@link ConnectionPool#getDefault() default connection pool}, so that consecutive
+     * requests to the same host reuse a keep-alive connection. Other protocols use an {@link HttpURLConnection}.
      * 
      * @param url the URL to download
      * @return the url content as string
      * @throws IOException if an I/O error occurs
      */
     public static String downloadUrl(URL url) throws IOException {
+        String contentAsString = downloadUrl(url, STRING_HANDLER);
+        Log.d(LOG_TAG, "Response string: " + contentAsString);
+        return contentAsString;
+    }
+
+    /**
+     * Given a URL, retrieves the web page content and hands the raw bytes to the given handler.
+     * <p>
+     * The body is read until its end into a per-thread reusable buffer, up to the {@link #getMaxBodySize() maximum body
+     * size}. The timeouts are derived from the round-trip times measured on the host and path, see
+     * {@link #getRttEstimators()}, and each request is recorded in the {@link #getEndpointMetrics() endpoint metrics}.
+     * 
+     * @param url the URL to download
+     * @param handler the handler converting the body
+     * @return the result of the handler
+     * @throws IOException if an I/O error occurs
+     */
+    public static <T> T downloadUrl(URL url, ResponseHandler<T> handler) throws IOException {
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        EndpointMetrics metrics = getMetrics(url.getHost(), port, url.getPath());
+        long start = System.currentTimeMillis();
+
+        ResponseBuffer body = ResponseBuffer.obtain(maxBodySize);
+        // Outcome always recorded, so that a handler failure counts as an error too
+        boolean success = false;
+        try {
+            int sent;
+            if ("http".equals(url.getProtocol())) {
+                sent = downloadPooled(url, body);
+            } else {
+                sent = downloadWithUrlConnection(url, body);
+            }
+            T result = handler.handle(body.array(), body.length());
+            metrics.recordSuccess(System.currentTimeMillis() - start, sent, body.length());
+            success = true;
+            return result;
+        } finally {
+            if (!success) {
+                metrics.recordError(System.currentTimeMillis() - start);
+            }
+            body.release();
+        }
+    }
+
+    /**
+     * Dump the metrics of all endpoints, one line per endpoint, e.g. to a log or a bug report.
+     * @return the metrics dump
+     */
+    public static String dumpMetrics() {
+        StringBuilder sb = new StringBuilder();
+        for (EndpointMetrics metrics : getEndpointMetrics().values()) {
+            sb.append(metrics).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Get the round-trip time estimator of connections to the given host.
+     * @param host the host
+     * @param port the port
+     * @return the estimator, driving the connect timeout
+     */
+    public static RttEstimator getConnectEstimator(String host, int port) {
+        return getEstimator(host + ":" + port, CONNECT_TIMEOUT, MIN_CONNECT_TIMEOUT, CONNECT_TIMEOUT);
+    }
+
+    /**
+     * Get the request metrics of all endpoints, e.g. for a diagnostics view. Endpoints are keyed by
+     * {@code host:port/path}, the query is ignored.
+     * @return the metrics, sorted by endpoint
+     */
+    public static Map<String, EndpointMetrics> getEndpointMetrics() {
+        return new TreeMap<String, EndpointMetrics>(METRICS);
+    }
+
+    /**
+     * Get the maximum size of a response body.
+     * @return the maximum size, in bytes
+     */
+    public static int getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * Get the round-trip time estimator of requests to the given endpoint. Each path has its own estimator, since some
+     * requests take longer than others, e.g. moving the ears.
+     * @param host the host
+     * @param port the port
+     * @param path the path, the query is ignored
+     * @return the estimator, driving the read timeout
+     */
+    public static RttEstimator getReadEstimator(String host, int port, String path) {
+        return getEstimator(toEndpoint(host, port, path), READ_TIMEOUT, MIN_READ_TIMEOUT, READ_TIMEOUT);
+    }
+
+    /**
+     * Get the round-trip time estimators of all endpoints, e.g. to export their statistics. Connect estimators are keyed
+     * by {@code host:port}, read estimators by {@code host:port/path}.
+     * @return the estimators, sorted by key
+     */
+    public static Map<String, RttEstimator> getRttEstimators() {
+        return new TreeMap<String, RttEstimator>(ESTIMATORS);
+    }
+
+    /**
+     * Checks for availability of network connection.
+     * 
+     * @param activity the calling activity
+     * @return {@code true} if network connection is available, {@code false} otherwise
+     */
+    public static final boolean isNetworkConnectionAvailable(Activity activity) {
+
+        ConnectivityManager connMgr = (ConnectivityManager) activity.getSystemService(Context.CONNECTIVITY_SERVICE);
+
+        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
+
+        if (networkInfo != null && networkInfo.isConnected()) {
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Given a plain HTTP URL, retrieves the web page content on a dedicated connection with the given timeouts, and
+     * hands the raw bytes to the given handler. The connection is closed afterwards: this is meant for one-off requests
+     * to hosts that may not exist, e.g. when probing the local network.
+     * 
+     * @param url the URL to download
+     * @param connectTimeout the connect timeout, in milliseconds
+     * @param readTimeout the read timeout, in milliseconds
+     * @param handler the handler converting the body
+     * @return the result of the handler
+     * @throws IOException if an I/O error occurs
+     */
+    public static <T> T probeUrl(URL url, int connectTimeout, int readTimeout, ResponseHandler<T> handler) throws IOException {
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        String path = url.getFile().length() > 0 ? url.getFile() : "/";
+
+        ResponseBuffer body = ResponseBuffer.obtain(maxBodySize);
+        PooledConnection conn = null;
+        try {
+            conn = new PooledConnection(url.getHost(), port, connectTimeout);
+            conn.get(path, readTimeout, body);
+
+            int response = conn.getResponseCode();
+            if (response >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new IOException("HTTP error " + response + " for " + url);
+            }
+            return handler.handle(body.array(), body.length());
+        } finally {
+            if (conn != null) {
+                conn.close();
+            }
+            body.release();
+        }
+    }
+
+    /**
+     * Set the maximum size of a response body. Larger responses fail with an {@link IOException}.
+     * @param size the maximum size, in bytes
+     */
+    public static void setMaxBodySize(int size) {
+        maxBodySize = size;
+    }
+
+    private static int downloadPooled(URL url, ResponseBuffer body) throws IOException {
+        String host = url.getHost();
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        String path = url.getFile().length() > 0 ? url.getFile() : "/";
+
+        ConnectionPool pool = ConnectionPool.getDefault();
+        RttEstimator connectRtt = getConnectEstimator(host, port);
+        RttEstimator readRtt = getReadEstimator(host, port, path);
+
+        for (int attempt = 0;; attempt++) {
+            long start = System.currentTimeMillis();
+            PooledConnection conn;
+            try {
+                conn = pool.acquire(host, port, connectRtt.getTimeout());
+            } catch (SocketTimeoutException e) {
+                connectRtt.onTimeout();
+                throw e;
+            }
+            boolean reused = conn.getRequestCount() > 0;
+            if (!reused) {
+                connectRtt.addSample(System.currentTimeMillis() - start);
+            }
+
+            try {
+                start = System.currentTimeMillis();
+                conn.get(path, readRtt.getTimeout(), body);
+                readRtt.addSample(System.currentTimeMillis() - start);
+            } catch (IOException e) {
+                conn.close();
+                if (e instanceof SocketTimeoutException) {
+                    // The request may have been processed: never retried
+                    readRtt.onTimeout();
+                    throw e;
+                }
+                if (reused && attempt == 0 && isStaleConnection(conn, e)) {
+                    // Pooled connection closed by the server in the meantime, retry once on a new one
+                    Log.d(LOG_TAG, "Retrying on a new connection: " + e.getMessage());
+                    continue;
+                }
+                throw e;
+            }
+
+            int response = conn.getResponseCode();
+            int sent = conn.getRequestSize();
+            Log.d(LOG_TAG, "Response code: " + response);
+
+            pool.release(conn);
+
+            if (response >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new IOException("HTTP error " + response + " for " + url);
+            }
+            return sent;
+        }
+    }
+
+    private static int downloadWithUrlConnection(URL url, ResponseBuffer body) throws IOException {
+
+        int port = url.getPort() < 0 ? url.getDefaultPort() : url.getPort();
+        RttEstimator connectRtt = getConnectEstimator(url.getHost(), port);
+        RttEstimator readRtt = getReadEstimator(url.getHost(), port, url.getPath());
+        long start = System.currentTimeMillis();
 
         InputStream is = null;
 
         try {
             HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setReadTimeout(10000);
-            conn.setConnectTimeout(6000);
+            conn.setReadTimeout(readRtt.getTimeout());
+            conn.setConnectTimeout(connectRtt.getTimeout());
             conn.setRequestMethod("GET");
             conn.setDoInput(true);
 
@@ -84,16 +317,19 @@ public class NetUtils {
             Log.d(LOG_TAG, "Response code: " + response);
 
             is = conn.getInputStream();
-            int len = conn.getContentLength();
-            if (len < 0) {
-                len = 512;
-            }
 
-            // Convert the InputStream into a string
-            String contentAsString = readIt(is, len);
-            Log.d(LOG_TAG, "Response string: " + contentAsString);
+            // Read until the end: Content-Length may be missing or the body chunked
+            body.readToEnd(is);
+
+            // Connect and request cannot be told apart here: the whole round trip is a read sample
+            readRtt.addSample(System.currentTimeMillis() - start);
 
-            return contentAsString;
+            // Request size not known: estimated from the request line
+            return url.getFile().length() + REQUEST_OVERHEAD;
+
+        } catch (SocketTimeoutException e) {
+            readRtt.onTimeout();
+            throw e;
 
         } finally {
             // Makes sure that the InputStream is closed after the app is
@@ -104,34 +340,73 @@ public class NetUtils {
         }
     }
 
+    private static RttEstimator getEstimator(String key, int initial, int floor, int ceiling) {
+        RttEstimator estimator = ESTIMATORS.get(key);
+        if (estimator == null) {
+            RttEstimator created = new RttEstimator(initial, floor, ceiling);
+            estimator = ESTIMATORS.putIfAbsent(key, created);
+            if (estimator == null) {
+                estimator = created;
+            }
+        }
+        return estimator;
+    }
+
+    private static EndpointMetrics getMetrics(String host, int port, String path) {
+        String endpoint = toEndpoint(host, port, path);
+        EndpointMetrics metrics = METRICS.get(endpoint);
+        if (metrics == null) {
+            EndpointMetrics created = new EndpointMetrics(endpoint);
+            metrics = METRICS.putIfAbsent(endpoint, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
     /**
-     * Checks for availability of network connection.
-     * 
-     * @param activity the calling activity
-     * @return {@code true} if network connection is available, {@code false} otherwise
+     * Check if a request failed because the pooled connection was closed by the server while idle: the server ended
+     * or reset the connection before sending any status line, so the request was not processed and can be sent again.
      */
-    public static final boolean isNetworkConnectionAvailable(Activity activity) {
+    private static boolean isStaleConnection(PooledConnection conn, IOException e) {
+        if (conn.getResponseCode() >= 0) {
+            // Response started
+            return false;
+        }
+        return (e instanceof EOFException || e instanceof SocketException);
+    }
 
-        ConnectivityManager connMgr = (ConnectivityManager) activity.getSystemService(Context.CONNECTIVITY_SERVICE);
+    private static String toEndpoint(String host, int port, String path) {
+        int query = path.indexOf('?');
+        return host + ":" + port + (query < 0 ? path : path.substring(0, query));
+    }
 
-        NetworkInfo networkInfo = connMgr.getActiveNetworkInfo();
 
-        if (networkInfo != null && networkInfo.isConnected()) {
-            return true;
-        }
+    private static final int CONNECT_TIMEOUT = 6000;
 
-        return false;
-    }
+    private static final int READ_TIMEOUT = 10000;
 
-    // Reads an InputStream and converts it to a String.
-    private static String readIt(InputStream stream, int len) throws IOException, UnsupportedEncodingException {
-        Reader reader = null;
-        reader = new InputStreamReader(stream, "UTF-8");
-        char[] buffer = new char[len];
-        int count = reader.read(buffer);
-        return new String(buffer, 0, count);
-    }
+    private static final int MIN_CONNECT_TIMEOUT = 500;
+
+    private static final int MIN_READ_TIMEOUT = 1500;
+
+    private static final ConcurrentMap<String, RttEstimator> ESTIMATORS = new ConcurrentHashMap<String, RttEstimator>();
+
+    private static final ConcurrentMap<String, EndpointMetrics> METRICS = new ConcurrentHashMap<String, EndpointMetrics>();
 
+    // Request line terminator and minimal headers
+    private static final int REQUEST_OVERHEAD = 64;
+
+    private static volatile int maxBodySize = 64 * 1024;
+
+    private static final ResponseHandler<String> STRING_HANDLER = new ResponseHandler<String>() {
+
+        @Override
+        public String handle(byte[] body, int length) throws IOException {
+            return new String(body, 0, length, "UTF-8");
+        }
+    };
 
     private static final String LOG_TAG = NetUtils.class.getSimpleName();
 }
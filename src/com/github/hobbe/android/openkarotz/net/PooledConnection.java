@@ -0,0 +1,391 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A keep-alive HTTP/1.1 connection to a host, managed by a {@link ConnectionPool}.
+ * <p>
+ * Only the small subset of HTTP needed to talk to the OpenKarotz CGI is supported: {@code GET} and {@code HEAD}
+ * requests, with responses delimited by {@code Content-Length}, chunked encoding or end of stream. Interim
+ * {@code 1xx} responses are skipped.
+ */
+public class PooledConnection {
+
+    /**
+     * Open a new connection.
+     * @param host the host name or IP
+     * @param port the port
+     * @param connectTimeout the connect timeout, in milliseconds
+     * @throws IOException if the connection cannot be established
+     */
+    PooledConnection(String host, int port, int connectTimeout) throws IOException {
+        this.host = host;
+        this.port = port;
+
+        socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        try {
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+
+            in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            out = socket.getOutputStream();
+        } catch (IOException e) {
+            // Do not leak the descriptor, e.g. when probing many unreachable hosts
+            socket.close();
+            throw e;
+        }
+
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Close the underlying socket.
+     */
+    public void close() {
+        keepAlive = false;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignored
+        }
+    }
+
+    /**
+     * Send a {@code GET} request and read the complete response body.
+     * <p>
+     * The body is always fully drained so that the connection can be reused for the next request.
+     * @param path the path and query of the request
+     * @param readTimeout the read timeout, in milliseconds
+     * @param body the buffer receiving the response body
+     * @throws IOException if an I/O error occurs, or if the body exceeds the buffer maximum size
+     */
+    public void get(String path, int readTimeout, ResponseBuffer body) throws IOException {
+        send("GET", path, readTimeout, body);
+    }
+
+    /**
+     * Get the host this connection is established to.
+     * @return the host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Get the time this connection was last used.
+     * @return the time in milliseconds
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Get the port this connection is established to.
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Get the number of requests sent on this connection.
+     * @return the number of requests
+     */
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Get the size of the last request.
+     * @return the size in bytes, headers included
+     */
+    public int getRequestSize() {
+        return requestSize;
+    }
+
+    /**
+     * Get the HTTP response code of the last request.
+     * @return the response code, or {@code -1} if unknown
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Send a {@code HEAD} request and read the response headers.
+     * @param path the path and query of the request
+     * @param readTimeout the read timeout, in milliseconds
+     * @throws IOException if an I/O error occurs
+     */
+    public void head(String path, int readTimeout) throws IOException {
+        send("HEAD", path, readTimeout, null);
+    }
+
+    /**
+     * Check if the server agreed to keep the connection open after the last response.
+     * @return {@code true} if the connection can be reused
+     */
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Check if this connection is still usable: socket open and not closed by the peer.
+     * <p>
+     * A non-blocking read is attempted; an end of stream means the server closed its side while the connection was
+     * idle in the pool.
+     * @return {@code true} if the connection looks healthy
+     */
+    public boolean isValid() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+
+        try {
+            int timeout = socket.getSoTimeout();
+            try {
+                socket.setSoTimeout(1);
+                in.mark(1);
+                if (in.read() == -1) {
+                    return false;
+                }
+                // Unexpected data on an idle connection
+                in.reset();
+                return false;
+            } finally {
+                socket.setSoTimeout(timeout);
+            }
+        } catch (SocketTimeoutException e) {
+            // Nothing to read: healthy
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledConnection { " + host + ":" + port + ", requests: " + requestCount + " }";
+    }
+
+    private void readChunked(ResponseBuffer body) throws IOException {
+        while (true) {
+            String sizeLine = readLine();
+            if (sizeLine == null) {
+                throw new EOFException("Unexpected end of chunked stream");
+            }
+            int semicolon = sizeLine.indexOf(';');
+            if (semicolon >= 0) {
+                sizeLine = sizeLine.substring(0, semicolon);
+            }
+            int size;
+            try {
+                size = Integer.parseInt(sizeLine.trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + sizeLine);
+            }
+            if (size == 0) {
+                // Skip trailers
+                String trailer;
+                while ((trailer = readLine()) != null && trailer.length() > 0) {
+                    // Ignored
+                }
+                return;
+            }
+            body.readFully(in, size);
+            readLine();
+        }
+    }
+
+    private String readHeaderLine() throws IOException {
+        String line = readLine();
+        if (line == null) {
+            throw new EOFException("Unexpected end of headers from " + host);
+        }
+        return line;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r') {
+                    sb.setLength(len - 1);
+                }
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_LINE_LENGTH) {
+                // Not the CGI talking, do not buffer it all
+                throw new IOException("HTTP line too long from " + host);
+            }
+            sb.append((char) c);
+        }
+        return (sb.length() > 0 ? sb.toString() : null);
+    }
+
+    private String readStatusLine() throws IOException {
+        String statusLine = readLine();
+        if (statusLine == null) {
+            throw new EOFException("Connection closed by " + host + " before response");
+        }
+        responseCode = parseResponseCode(statusLine);
+        return statusLine;
+    }
+
+    private void send(String method, String path, int readTimeout, ResponseBuffer body) throws IOException {
+        socket.setSoTimeout(readTimeout);
+        keepAlive = false;
+        responseCode = -1;
+
+        StringBuilder request = new StringBuilder(128);
+        request.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(host);
+        if (port != DEFAULT_PORT) {
+            request.append(':').append(port);
+        }
+        request.append("\r\n");
+        request.append("Connection: keep-alive\r\n");
+        request.append("Accept-Encoding: identity\r\n");
+        request.append("\r\n");
+
+        byte[] bytes = request.toString().getBytes("ISO-8859-1");
+        requestSize = bytes.length;
+        out.write(bytes);
+        out.flush();
+
+        String statusLine = readStatusLine();
+        while (responseCode >= 100 && responseCode < 200) {
+            // Interim response, e.g. 100 Continue: headers skipped, the final response follows
+            while (readHeaderLine().length() > 0) {
+                // Ignored
+            }
+            statusLine = readStatusLine();
+        }
+        boolean http11 = statusLine.startsWith("HTTP/1.1");
+
+        long contentLength = -1;
+        boolean chunked = false;
+        keepAlive = http11;
+
+        String line;
+        while ((line = readHeaderLine()).length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+
+            if ("Content-Length".equalsIgnoreCase(name)) {
+                try {
+                    contentLength = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid Content-Length: " + value);
+                }
+            } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                chunked = "chunked".equalsIgnoreCase(value);
+            } else if ("Connection".equalsIgnoreCase(name)) {
+                if ("close".equalsIgnoreCase(value)) {
+                    keepAlive = false;
+                } else if ("keep-alive".equalsIgnoreCase(value)) {
+                    keepAlive = true;
+                }
+            }
+        }
+
+        if ("HEAD".equals(method) || responseCode == HTTP_NO_CONTENT || responseCode == HTTP_NOT_MODIFIED) {
+            // No body, whatever the headers say
+        } else if (chunked) {
+            readChunked(body);
+        } else if (contentLength >= 0) {
+            if (contentLength > Integer.MAX_VALUE) {
+                throw new IOException("Response body too large: " + contentLength);
+            }
+            body.readFully(in, (int) contentLength);
+        } else {
+            // Delimited by end of stream, connection cannot be reused
+            keepAlive = false;
+            body.readToEnd(in);
+        }
+
+        lastUsed = System.currentTimeMillis();
+        requestCount++;
+    }
+
+
+    private static int parseResponseCode(String statusLine) throws IOException {
+        // Status line: HTTP/1.1 200 OK
+        int start = statusLine.indexOf(' ');
+        if (start < 0 || statusLine.length() < start + 4) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(start + 1, start + 4));
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+    }
+
+
+    private final String host;
+    private final int port;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    private long lastUsed;
+    private int requestCount = 0;
+
+    private int requestSize = 0;
+    private int responseCode = -1;
+    private boolean keepAlive = false;
+
+    private static final int DEFAULT_PORT = 80;
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    private static final int HTTP_NO_CONTENT = 204;
+
+    private static final int HTTP_NOT_MODIFIED = 304;
+}
@@ -0,0 +1,177 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Growable byte buffer receiving HTTP response bodies.
+ * <p>
+ * One buffer is pooled per thread and reused from one response to the next, so that reading a response does not
+ * allocate once the buffer has grown to the usual response size. The body size is bounded by a configurable maximum.
+ */
+public final class ResponseBuffer {
+
+    private ResponseBuffer(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    /**
+     * Get the internal array. Only the first {@link #length()} bytes are meaningful, and only until the buffer is
+     * {@link #release() released}.
+     * @return the internal array
+     */
+    public byte[] array() {
+        return data;
+    }
+
+    /**
+     * Decode the content as a UTF-8 string.
+     * @return the decoded content
+     */
+    public String decode() {
+        try {
+            return new String(data, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the content length.
+     * @return the number of bytes in this buffer
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Read exactly the given number of bytes from the stream, appending them to the content.
+     * @param in the input stream
+     * @param count the number of bytes to read
+     * @throws IOException if an I/O error occurs, the stream ends early or the maximum size is exceeded
+     */
+    public void readFully(InputStream in, int count) throws IOException {
+        ensureCapacity(length + count);
+        int end = length + count;
+        while (length < end) {
+            int n = in.read(data, length, end - length);
+            if (n < 0) {
+                throw new EOFException("Expected " + count + " bytes, stream ended " + (end - length) + " bytes early");
+            }
+            length += n;
+        }
+    }
+
+    /**
+     * Read the stream until its end, appending the bytes to the content.
+     * @param in the input stream
+     * @throws IOException if an I/O error occurs or the maximum size is exceeded
+     */
+    public void readToEnd(InputStream in) throws IOException {
+        while (true) {
+            if (length == data.length) {
+                ensureCapacity(length + 1);
+            }
+            int n = in.read(data, length, data.length - length);
+            if (n < 0) {
+                return;
+            }
+            length += n;
+        }
+    }
+
+    /**
+     * Give this buffer back to its thread. Oversized buffers are dropped so that a single large response does not
+     * retain memory forever.
+     */
+    public void release() {
+        if (!pooled) {
+            return;
+        }
+        if (data.length > RETAINED_CAPACITY) {
+            data = new byte[INITIAL_CAPACITY];
+        }
+        length = 0;
+        inUse = false;
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (capacity > maxSize) {
+            throw new IOException("Response body exceeds " + maxSize + " bytes");
+        }
+        if (capacity > data.length) {
+            int newCapacity = Math.max(capacity, Math.min(data.length * 2, maxSize));
+            byte[] newData = new byte[newCapacity];
+            System.arraycopy(data, 0, newData, 0, length);
+            data = newData;
+        }
+    }
+
+    /**
+     * Get an empty buffer for the current thread. The buffer must be {@link #release() released} after use. If the
+     * thread buffer is already in use (nested request), a temporary buffer is returned instead.
+     * @param maxSize the maximum content size, in bytes
+     * @return an empty buffer
+     */
+    public static ResponseBuffer obtain(int maxSize) {
+        ResponseBuffer buffer = THREAD_BUFFER.get();
+        if (buffer.inUse) {
+            buffer = new ResponseBuffer(false);
+        }
+        buffer.inUse = true;
+        buffer.length = 0;
+        buffer.maxSize = maxSize;
+        return buffer;
+    }
+
+
+    private final boolean pooled;
+
+    private byte[] data = new byte[INITIAL_CAPACITY];
+    private int length = 0;
+    private int maxSize = Integer.MAX_VALUE;
+    private boolean inUse = false;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int RETAINED_CAPACITY = 32 * 1024;
+
+    private static final ThreadLocal<ResponseBuffer> THREAD_BUFFER = new ThreadLocal<ResponseBuffer>() {
+
+        @Override
+        protected ResponseBuffer initialValue() {
+            return new ResponseBuffer(true);
+        }
+    };
+}
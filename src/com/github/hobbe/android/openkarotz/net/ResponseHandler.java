@@ -26,44 +26,22 @@
  *
  */
 
-package com.github.hobbe.android.openkarotz.task;
+package com.github.hobbe.android.openkarotz.net;
 
 import java.io.IOException;
 
-import android.app.Activity;
-import android.util.Log;
-
-import com.github.hobbe.android.openkarotz.karotz.Karotz;
-
 /**
- * Task to get Karotz LED color in the background.
+ * Handler converting a raw response body into a result.
+ * @param <T> the result type
  */
-public class GetColorAsyncTask extends KarotzAsyncTask {
-
-    /**
-     * Initialize a new task.
-     * 
-     * @param activity the calling activity
-     */
-    public GetColorAsyncTask(Activity activity) {
-        super(activity);
-    }
+public interface ResponseHandler<T> {
 
     /**
-     * This tasks returns the color code as an {@code Integer} or {@code null} if the Karotz cannot be contacted.
+     * Handle the response body. The bytes are only valid during this call: the buffer is reused afterwards.
+     * @param body the response body, {@code length} first bytes are meaningful
+     * @param length the body length
+     * @return the result
+     * @throws IOException if the body cannot be handled
      */
-    @Override
-    protected Integer doInBackground(Object... params) {
-
-        try {
-            return Integer.valueOf(Karotz.getInstance().getColor());
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Cannot get Karotz LED color: " + e.getMessage(), e);
-            return null;
-        }
-    }
-
-
-    // Log tag
-    private static final String LOG_TAG = GetColorAsyncTask.class.getSimpleName();
+    T handle(byte[] body, int length) throws IOException;
 }
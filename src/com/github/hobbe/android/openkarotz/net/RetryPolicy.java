@@ -0,0 +1,94 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+import java.util.Random;
+
+/**
+ * Bounded retry policy with exponential back-off and full jitter.
+ * <p>
+ * The delay before retry {@code n} is drawn at random between zero and {@code min(maxDelay, baseDelay * 2^(n-1))}, so
+ * that clients failing together do not retry together. Only idempotent requests should be retried.
+ */
+public class RetryPolicy {
+
+    /**
+     * Initialize a new retry policy.
+     * @param maxAttempts the maximum number of attempts, including the first one
+     * @param baseDelay the upper bound of the first delay, in milliseconds
+     * @param maxDelay the upper bound of any delay, in milliseconds
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Get the delay before the next attempt.
+     * @param attempt the number of the attempt that failed, starting at 1
+     * @return the delay, in milliseconds
+     */
+    public long getDelay(int attempt) {
+        long bound = baseDelay << Math.min(attempt - 1, MAX_SHIFT);
+        bound = Math.min(maxDelay, bound);
+        return (long) (random.nextDouble() * bound);
+    }
+
+    /**
+     * Get the maximum number of attempts.
+     * @return the maximum number of attempts, including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Check if another attempt is allowed.
+     * @param attempt the number of the attempt that failed, starting at 1
+     * @return {@code true} if the request can be retried
+     */
+    public boolean isRetryAllowed(int attempt) {
+        return attempt < maxAttempts;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy { attempts: " + maxAttempts + ", delay: " + baseDelay + "ms to " + maxDelay + "ms }";
+    }
+
+
+    private final int maxAttempts;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    private final Random random = new Random();
+
+    private static final int MAX_SHIFT = 20;
+}
@@ -0,0 +1,168 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.net;
+
+/**
+ * Round-trip time estimator of a network endpoint, deriving a timeout from the measured round trips.
+ * <p>
+ * The estimation follows the TCP retransmission timeout (RFC 6298): a smoothed round-trip time and its mean deviation
+ * are updated with each sample, and the timeout is {@code srtt + 4 * rttvar}, bounded by a floor and a ceiling. Each
+ * consecutive timeout doubles it, until the next sample. Until the first sample, the initial timeout is used.
+ */
+public class RttEstimator {
+
+    /**
+     * Initialize a new estimator.
+     * @param initial the timeout used until the first sample, in milliseconds
+     * @param floor the minimum timeout, in milliseconds
+     * @param ceiling the maximum timeout, in milliseconds
+     */
+    public RttEstimator(int initial, int floor, int ceiling) {
+        this.initial = initial;
+        this.floor = floor;
+        this.ceiling = ceiling;
+    }
+
+    /**
+     * Record a round trip that completed.
+     * @param rtt the round-trip time, in milliseconds
+     */
+    public synchronized void addSample(long rtt) {
+        double r = Math.max(0, rtt);
+        if (sampleCount == 0) {
+            srtt = r;
+            rttvar = r / 2;
+            minRtt = rtt;
+            maxRtt = rtt;
+        } else {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - r);
+            srtt = (1 - ALPHA) * srtt + ALPHA * r;
+            minRtt = Math.min(minRtt, rtt);
+            maxRtt = Math.max(maxRtt, rtt);
+        }
+        sampleCount++;
+        backoff = 0;
+    }
+
+    /**
+     * Get the largest round-trip time measured.
+     * @return the maximum round-trip time in milliseconds, or {@code -1} if there is no sample
+     */
+    public synchronized long getMaxRtt() {
+        return (sampleCount == 0 ? -1 : maxRtt);
+    }
+
+    /**
+     * Get the smallest round-trip time measured.
+     * @return the minimum round-trip time in milliseconds, or {@code -1} if there is no sample
+     */
+    public synchronized long getMinRtt() {
+        return (sampleCount == 0 ? -1 : minRtt);
+    }
+
+    /**
+     * Get the mean deviation of the round-trip time.
+     * @return the deviation in milliseconds
+     */
+    public synchronized long getRttVariation() {
+        return Math.round(rttvar);
+    }
+
+    /**
+     * Get the number of round trips measured.
+     * @return the sample count
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Get the smoothed round-trip time.
+     * @return the smoothed round-trip time in milliseconds, or {@code -1} if there is no sample
+     */
+    public synchronized long getSmoothedRtt() {
+        return (sampleCount == 0 ? -1 : Math.round(srtt));
+    }
+
+    /**
+     * Get the timeout to use for the next round trip.
+     * @return the timeout, in milliseconds
+     */
+    public synchronized int getTimeout() {
+        double timeout = (sampleCount == 0 ? initial : Math.max(floor, srtt + K * rttvar));
+        timeout *= (1 << backoff);
+        return (int) Math.min(ceiling, Math.round(timeout));
+    }
+
+    /**
+     * Get the number of round trips that timed out.
+     * @return the timeout count
+     */
+    public synchronized long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    /**
+     * Record a round trip that timed out. The timeout is doubled until the next sample.
+     */
+    public synchronized void onTimeout() {
+        timeoutCount++;
+        if (backoff < MAX_BACKOFF) {
+            backoff++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RttEstimator { srtt: " + getSmoothedRtt() + "ms, rttvar: " + getRttVariation() + "ms, min: " + getMinRtt() + "ms, max: "
+                + getMaxRtt() + "ms, samples: " + sampleCount + ", timeouts: " + timeoutCount + ", timeout: " + getTimeout() + "ms }";
+    }
+
+
+    private final int initial;
+    private final int floor;
+    private final int ceiling;
+
+    private double srtt = 0;
+    private double rttvar = 0;
+    private long minRtt = 0;
+    private long maxRtt = 0;
+    private int backoff = 0;
+
+    private long sampleCount = 0;
+    private long timeoutCount = 0;
+
+    private static final double ALPHA = 1.0 / 8;
+
+    private static final double BETA = 1.0 / 4;
+
+    private static final double K = 4;
+
+    private static final int MAX_BACKOFF = 6;
+}
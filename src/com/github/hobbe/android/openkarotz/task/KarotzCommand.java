@@ -0,0 +1,84 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.task;
+
+import com.github.hobbe.android.openkarotz.karotz.AsyncKarotz;
+import com.github.hobbe.android.openkarotz.karotz.KarotzFuture;
+
+/**
+ * Command sent to a Karotz by the {@link KarotzCommandExecutor}.
+ * <p>
+ * A command starts one or more {@link AsyncKarotz} calls, and knows which result stands for a failure when the Karotz
+ * cannot be contacted.
+ * @param <T> the result type
+ */
+public abstract class KarotzCommand<T> {
+
+    /**
+     * Initialize a new command.
+     * @param description the command description, used in logs, e.g. {@code "get Karotz status"}
+     * @param fallback the result when the Karotz cannot be contacted
+     */
+    protected KarotzCommand(String description, T fallback) {
+        this.description = description;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Get the command description.
+     * @return the description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Get the result when the Karotz cannot be contacted.
+     * @return the fallback result
+     */
+    public T getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Start the command.
+     * @param karotz the Karotz
+     * @return the future result, failed with an {@link java.io.IOException} if the Karotz cannot be contacted
+     */
+    public abstract KarotzFuture<T> start(AsyncKarotz karotz);
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+
+    private final String description;
+    private final T fallback;
+}
@@ -28,43 +28,24 @@
 
 package com.github.hobbe.android.openkarotz.task;
 
-import java.io.IOException;
-
-import android.app.Activity;
 import android.util.Log;
 
-import com.github.hobbe.android.openkarotz.karotz.Karotz;
+import com.github.hobbe.android.openkarotz.karotz.KarotzCallback;
 
 /**
- * Task to reset Karotz ears in the background.
+ * Callback of a {@link KarotzCommand}, run on the UI thread.
+ * <p>
+ * Commands report a Karotz that cannot be contacted through their fallback result, so failures are unexpected here:
+ * they are only logged by default.
+ * @param <T> the result type
  */
-public class EarsResetAsyncTask extends KarotzAsyncTask {
-
-    /**
-     * Initialize a new task.
-     * 
-     * @param activity the calling activity
-     */
-    public EarsResetAsyncTask(Activity activity) {
-        super(activity);
-    }
+public abstract class KarotzCommandCallback<T> implements KarotzCallback<T> {
 
-    /**
-     * This tasks does not return anything ({@code null}).
-     */
     @Override
-    protected Void doInBackground(Object... params) {
-
-        try {
-            Karotz.getInstance().earsReset();
-            return null;
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Cannot reset Karotz ear position: " + e.getMessage(), e);
-            return null;
-        }
+    public void onFailure(Throwable error) {
+        Log.e(LOG_TAG, "Karotz command failed: " + error.getMessage(), error);
     }
 
 
-    // Log tag
-    private static final String LOG_TAG = EarsResetAsyncTask.class.getSimpleName();
+    private static final String LOG_TAG = KarotzCommandCallback.class.getSimpleName();
 }
@@ -0,0 +1,211 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.task;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.R;
+import com.github.hobbe.android.openkarotz.karotz.AsyncKarotz;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz;
+import com.github.hobbe.android.openkarotz.karotz.Karotz;
+import com.github.hobbe.android.openkarotz.karotz.KarotzCallback;
+import com.github.hobbe.android.openkarotz.karotz.KarotzDispatcher;
+import com.github.hobbe.android.openkarotz.karotz.KarotzFuture;
+import com.github.hobbe.android.openkarotz.util.MainThreadExecutor;
+
+/**
+ * Runs {@link KarotzCommand Karotz commands} through a {@link KarotzDispatcher}, and delivers their results on the UI
+ * thread.
+ * <p>
+ * The dispatcher runs reads concurrently, and writes to the same host one after the other. A Karotz that cannot be
+ * contacted is reported through the fallback result of the command.
+ */
+public class KarotzCommandExecutor {
+
+    /**
+     * Initialize a new command executor.
+     * @param dispatcher the dispatcher running the Karotz calls
+     * @param resultExecutor the executor delivering results, e.g. the UI thread
+     */
+    public KarotzCommandExecutor(KarotzDispatcher dispatcher, Executor resultExecutor) {
+        this.dispatcher = dispatcher;
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Run a command on the application Karotz, showing a progress dialog until the result is delivered. Must be called
+     * on the UI thread. Cancelling the dialog cancels the command: the callback is not called.
+     * @param activity the calling activity
+     * @param command the command
+     * @param callback the callback receiving the result on the UI thread, may be {@code null}
+     * @return the future result
+     */
+    public <T> KarotzFuture<T> execute(Activity activity, KarotzCommand<T> command, final KarotzCallback<? super T> callback) {
+        final KarotzFuture<T> future = submit(command);
+        final ProgressDialog pd = showProgress(activity, future);
+
+        future.addCallback(new KarotzCallback<T>() {
+
+            @Override
+            public void onFailure(Throwable error) {
+                pd.dismiss();
+                if (error instanceof CancellationException) {
+                    Log.d(LOG_TAG, "Command cancelled by user");
+                } else if (callback != null) {
+                    callback.onFailure(error);
+                }
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                pd.dismiss();
+                if (callback != null) {
+                    callback.onSuccess(result);
+                }
+            }
+        }, resultExecutor);
+
+        return future;
+    }
+
+    /**
+     * Get the dispatcher running the Karotz calls, e.g. for its metrics.
+     * @return the dispatcher
+     */
+    public KarotzDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Run a command on the application Karotz.
+     * @param command the command
+     * @return the future result, delivered on the result executor
+     */
+    public <T> KarotzFuture<T> submit(KarotzCommand<T> command) {
+        return submit(Karotz.getInstance(), command);
+    }
+
+    /**
+     * Run a command on the given Karotz.
+     * @param karotz the Karotz
+     * @param command the command
+     * @return the future result, delivered on the result executor
+     */
+    public <T> KarotzFuture<T> submit(IKarotz karotz, final KarotzCommand<T> command) {
+        final KarotzFuture<T> future = new KarotzFuture<T>(resultExecutor);
+        final KarotzFuture<T> call = command.start(new AsyncKarotz(karotz, dispatcher));
+
+        call.addCallback(new KarotzCallback<T>() {
+
+            @Override
+            public void onFailure(Throwable error) {
+                if (error instanceof IOException) {
+                    Log.e(LOG_TAG, "Cannot " + command.getDescription() + ": " + error.getMessage(), error);
+                    future.complete(command.getFallback());
+                } else {
+                    future.fail(error);
+                }
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+        });
+
+        // Cancelled: do not run the call if still waiting
+        future.addCallback(new KarotzCallback<T>() {
+
+            @Override
+            public void onFailure(Throwable error) {
+                if (error instanceof CancellationException) {
+                    call.cancel(true);
+                }
+            }
+
+            @Override
+            public void onSuccess(T result) {
+                // Nothing to do
+            }
+        });
+
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return "KarotzCommandExecutor { " + dispatcher + " }";
+    }
+
+    private ProgressDialog showProgress(Activity activity, final KarotzFuture<?> future) {
+        ProgressDialog pd = new ProgressDialog(activity);
+        pd.setTitle(activity.getString(R.string.progress_karotz_title));
+        pd.setMessage(activity.getString(R.string.progress_karotz_description));
+        pd.setCancelable(true);
+
+        pd.setOnCancelListener(new DialogInterface.OnCancelListener() {
+
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                Log.v(LOG_TAG, "Progress dialog dismissed by user");
+                future.cancel(true);
+            }
+        });
+
+        pd.show();
+        return pd;
+    }
+
+    /**
+     * Get the application command executor, on the application dispatcher, with results on the UI thread.
+     * @return the command executor
+     */
+    public static synchronized KarotzCommandExecutor getInstance() {
+        if (instance == null) {
+            instance = new KarotzCommandExecutor(KarotzDispatcher.getDefault(), MainThreadExecutor.getInstance());
+        }
+        return instance;
+    }
+
+
+    private final KarotzDispatcher dispatcher;
+
+    private final Executor resultExecutor;
+
+    private static KarotzCommandExecutor instance = null;
+
+    private static final String LOG_TAG = KarotzCommandExecutor.class.getSimpleName();
+}
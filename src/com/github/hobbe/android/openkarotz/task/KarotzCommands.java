@@ -0,0 +1,314 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.task;
+
+import com.github.hobbe.android.openkarotz.karotz.AsyncKarotz;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.SoundControlCommand;
+import com.github.hobbe.android.openkarotz.karotz.KarotzFunction;
+import com.github.hobbe.android.openkarotz.karotz.KarotzFuture;
+import com.github.hobbe.android.openkarotz.karotz.KarotzSnapshot;
+
+/**
+ * Factory of the {@link KarotzCommand Karotz commands}, built on the {@link AsyncKarotz} calls.
+ */
+public final class KarotzCommands {
+
+    private KarotzCommands() {
+        // No instance
+    }
+
+    /**
+     * Change the ear mode.
+     * @param mode the ear mode to set
+     * @return the command returning the new ear mode, or {@code null} on failure
+     */
+    public static KarotzCommand<EarMode> earMode(final EarMode mode) {
+        return new KarotzCommand<EarMode>("change Karotz ear mode", null) {
+
+            @Override
+            public KarotzFuture<EarMode> start(AsyncKarotz karotz) {
+                return karotz.earsMode(mode);
+            }
+        };
+    }
+
+    /**
+     * Move the ears.
+     * @param left the left ear position to set
+     * @param right the right ear position to set
+     * @return the command returning the ear positions, or {@code null} on failure
+     */
+    public static KarotzCommand<EarPosition[]> ears(final EarPosition left, final EarPosition right) {
+        return new KarotzCommand<EarPosition[]>("change Karotz ear position", null) {
+
+            @Override
+            public KarotzFuture<EarPosition[]> start(AsyncKarotz karotz) {
+                return karotz.ears(left, right);
+            }
+        };
+    }
+
+    /**
+     * Move the ears to a random position.
+     * @return the command returning the ear positions, or {@code null} on failure
+     */
+    public static KarotzCommand<EarPosition[]> earsRandom() {
+        return new KarotzCommand<EarPosition[]>("change Karotz ear to random position", null) {
+
+            @Override
+            public KarotzFuture<EarPosition[]> start(AsyncKarotz karotz) {
+                return karotz.earsRandom();
+            }
+        };
+    }
+
+    /**
+     * Reset the ears.
+     * @return the command
+     */
+    public static KarotzCommand<Void> earsReset() {
+        return new KarotzCommand<Void>("reset Karotz ear position", null) {
+
+            @Override
+            public KarotzFuture<Void> start(AsyncKarotz karotz) {
+                return karotz.earsReset();
+            }
+        };
+    }
+
+    /**
+     * Get the LED color.
+     * @return the command returning the color, or {@code null} on failure
+     */
+    public static KarotzCommand<Integer> getColor() {
+        return new KarotzCommand<Integer>("get Karotz LED color", null) {
+
+            @Override
+            public KarotzFuture<Integer> start(AsyncKarotz karotz) {
+                return karotz.getColor();
+            }
+        };
+    }
+
+    /**
+     * Get the ear mode.
+     * @return the command returning the ear mode, {@link EarMode#ENABLED} on failure
+     */
+    public static KarotzCommand<EarMode> getEarMode() {
+        return new KarotzCommand<EarMode>("get Karotz ear mode", EarMode.ENABLED) {
+
+            @Override
+            public KarotzFuture<EarMode> start(AsyncKarotz karotz) {
+                return karotz.getEarMode();
+            }
+        };
+    }
+
+    /**
+     * Get the ear positions.
+     * @return the command returning the left and right ear positions, both {@link EarPosition#POSITION_1} on failure
+     */
+    public static KarotzCommand<EarPosition[]> getEarPositions() {
+        return new KarotzCommand<EarPosition[]>("get Karotz ear positions", new EarPosition[] {
+                EarPosition.POSITION_1, EarPosition.POSITION_1
+        }) {
+
+            @Override
+            public KarotzFuture<EarPosition[]> start(AsyncKarotz karotz) {
+                return karotz.getEarPositions();
+            }
+        };
+    }
+
+    /**
+     * Get the LED pulse status.
+     * @return the command returning {@code true} if the LED is pulsing, {@code false} on failure
+     */
+    public static KarotzCommand<Boolean> getPulse() {
+        return new KarotzCommand<Boolean>("get Karotz LED pulse status", Boolean.FALSE) {
+
+            @Override
+            public KarotzFuture<Boolean> start(AsyncKarotz karotz) {
+                return karotz.isPulsing();
+            }
+        };
+    }
+
+    /**
+     * Get a complete view of the Karotz state, from a single status request.
+     * @return the command returning the snapshot, {@link KarotzSnapshot#UNKNOWN} on failure
+     */
+    public static KarotzCommand<KarotzSnapshot> getSnapshot() {
+        return new KarotzCommand<KarotzSnapshot>("get Karotz state", KarotzSnapshot.UNKNOWN) {
+
+            @Override
+            public KarotzFuture<KarotzSnapshot> start(AsyncKarotz karotz) {
+                return karotz.getSnapshot();
+            }
+        };
+    }
+
+    /**
+     * Get the Karotz status.
+     * @return the command returning the status, {@link KarotzStatus#UNKNOWN} on failure
+     */
+    public static KarotzCommand<KarotzStatus> getStatus() {
+        return new KarotzCommand<KarotzStatus>("get Karotz status", KarotzStatus.UNKNOWN) {
+
+            @Override
+            public KarotzFuture<KarotzStatus> start(AsyncKarotz karotz) {
+                return karotz.getStatus();
+            }
+        };
+    }
+
+    /**
+     * Get the Karotz version.
+     * @return the command returning the version, or {@code null} on failure
+     */
+    public static KarotzCommand<String> getVersion() {
+        return new KarotzCommand<String>("get Karotz version", null) {
+
+            @Override
+            public KarotzFuture<String> start(AsyncKarotz karotz) {
+                return karotz.getVersion();
+            }
+        };
+    }
+
+    /**
+     * Change the LED.
+     * @param color the color to change to
+     * @param pulse if {@code true}, LED will pulse
+     * @return the command returning the new color, {@code 0} on failure
+     */
+    public static KarotzCommand<Integer> led(final int color, final boolean pulse) {
+        return new KarotzCommand<Integer>("change Karotz LED color", Integer.valueOf(0)) {
+
+            @Override
+            public KarotzFuture<Integer> start(final AsyncKarotz karotz) {
+                return karotz.led(color, pulse).thenCompose(new KarotzFunction<Void, KarotzFuture<Integer>>() {
+
+                    @Override
+                    public KarotzFuture<Integer> apply(Void input) {
+                        return karotz.getColor();
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Change the LED pulse, keeping the current color.
+     * @param pulse if {@code true}, LED will pulse
+     * @return the command returning the color, {@code 0} on failure
+     */
+    public static KarotzCommand<Integer> pulse(final boolean pulse) {
+        return new KarotzCommand<Integer>("change Karotz LED pulse", Integer.valueOf(0)) {
+
+            @Override
+            public KarotzFuture<Integer> start(final AsyncKarotz karotz) {
+                return karotz.getColor().thenCompose(new KarotzFunction<Integer, KarotzFuture<Integer>>() {
+
+                    @Override
+                    public KarotzFuture<Integer> apply(final Integer color) {
+                        return karotz.led(color.intValue(), pulse).then(new KarotzFunction<Void, Integer>() {
+
+                            @Override
+                            public Integer apply(Void input) {
+                                return color;
+                            }
+                        });
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Put the Karotz to sleep.
+     * @return the command returning {@code true} if successful
+     */
+    public static KarotzCommand<Boolean> sleep() {
+        return new KarotzCommand<Boolean>("put Karotz to sleep", Boolean.FALSE) {
+
+            @Override
+            public KarotzFuture<Boolean> start(AsyncKarotz karotz) {
+                return karotz.sleep();
+            }
+        };
+    }
+
+    /**
+     * Play a sound.
+     * @param url the sound URL to play
+     * @return the command returning {@code true} if successful
+     */
+    public static KarotzCommand<Boolean> sound(final String url) {
+        return new KarotzCommand<Boolean>("make Karotz play a sound", Boolean.FALSE) {
+
+            @Override
+            public KarotzFuture<Boolean> start(AsyncKarotz karotz) {
+                return karotz.sound(url);
+            }
+        };
+    }
+
+    /**
+     * Control the sound being played.
+     * @param command the sound control command
+     * @return the command returning {@code true} if successful
+     */
+    public static KarotzCommand<Boolean> soundControl(final SoundControlCommand command) {
+        return new KarotzCommand<Boolean>("call sound control on Karotz", Boolean.FALSE) {
+
+            @Override
+            public KarotzFuture<Boolean> start(AsyncKarotz karotz) {
+                return karotz.soundControl(command);
+            }
+        };
+    }
+
+    /**
+     * Wake the Karotz up, silently.
+     * @return the command returning {@code true} if successful
+     */
+    public static KarotzCommand<Boolean> wakeup() {
+        return new KarotzCommand<Boolean>("wake Karotz up", Boolean.FALSE) {
+
+            @Override
+            public KarotzFuture<Boolean> start(AsyncKarotz karotz) {
+                return karotz.wakeup(true);
+            }
+        };
+    }
+}
@@ -31,9 +31,6 @@ package com.github.hobbe.android.openkarotz.util;
 import java.io.IOException;
 import java.io.InputStream;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -44,6 +41,25 @@ import android.util.Log;
  */
 public class AssetUtils {
 
+    /**
+     * Compute the largest power-of-two sample size keeping an image at least as large as the requested size.
+     * @param width the image width
+     * @param height the image height
+     * @param reqWidth the requested width, or {@code 0} for no constraint
+     * @param reqHeight the requested height, or {@code 0} for no constraint
+     * @return the sample size, {@code 1} if the image must not be downsampled
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 && reqHeight <= 0) {
+            return sampleSize;
+        }
+        while ((reqWidth <= 0 || width / (sampleSize * 2) >= reqWidth) && (reqHeight <= 0 || height / (sampleSize * 2) >= reqHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
     /**
      * Load a bitmap image from the asset filename.
      * @param context the context
@@ -76,30 +92,34 @@ public class AssetUtils {
     }
 
     /**
-     * Load a JSON resource from the asset filename.
+     * Load a bitmap image from the asset filename, downsampled to the requested size. The image bounds are read
+     * first, so that the full-size image is never decoded when it is larger than needed.
      * @param context the context
-     * @param filename the name of the JSON object
-     * @return the JSON object
+     * @param filename the name of the image
+     * @param reqWidth the requested width in pixels, or {@code 0} for no constraint
+     * @param reqHeight the requested height in pixels, or {@code 0} for no constraint
+     * @return the bitmap or {@code null}
      */
-    public static JSONObject loadJsonFromAsset(Context context, String filename) {
-        JSONObject json = null;
+    public static Bitmap loadBitmapFromAsset(Context context, String filename, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
         InputStream is = null;
 
         try {
+            // Read the bounds only
+            options.inJustDecodeBounds = true;
             is = context.getAssets().open(filename);
+            BitmapFactory.decodeStream(is, null, options);
+            is.close();
+            is = null;
 
-            int size = is.available();
-            byte[] buffer = new byte[size];
-            is.read(buffer);
-
-            String content = new String(buffer, "UTF-8");
-            json = new JSONObject(content);
+            // Decode, downsampled
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+            is = context.getAssets().open(filename);
+            return BitmapFactory.decodeStream(is, null, options);
 
         } catch (IOException e) {
-            Log.e(LOG_TAG, "Could not load JSON asset " + filename, e);
-            return null;
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, "Could not parse JSON from asset " + filename, e);
+            Log.e(LOG_TAG, "Could not load bitmap asset " + filename, e);
             return null;
         } finally {
             if (is != null) {
@@ -110,8 +130,6 @@ public class AssetUtils {
                 }
             }
         }
-
-        return json;
     }
 
 
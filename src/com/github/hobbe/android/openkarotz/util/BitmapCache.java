@@ -0,0 +1,285 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.util;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+/**
+ * Memory cache of bitmaps decoded from assets, e.g. radio logos.
+ * <p>
+ * Bitmaps are kept in a LRU cache bounded by their size in bytes, and keyed by asset path and target size. A missing
+ * bitmap is decoded on a background pool, downsampled to the target size: the view shows a placeholder meanwhile,
+ * and gets the bitmap once decoded, unless it was bound to another image in the meantime. Concurrent requests for the
+ * same bitmap share a single decoding.
+ * <p>
+ * {@link #load(Context, String, int, int, ImageView, int, int)} must be called on the main thread.
+ */
+public class BitmapCache {
+
+    /**
+     * Initialize a new bitmap cache.
+     * @param maxBytes the maximum size of the cached bitmaps, in bytes
+     */
+    public BitmapCache(int maxBytes) {
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Remove all bitmaps from the cache, e.g. when the system is low on memory.
+     */
+    public void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * Get a cached bitmap.
+     * @param path the asset path
+     * @param width the target width in pixels
+     * @param height the target height in pixels
+     * @return the bitmap, or {@code null} if not cached
+     */
+    public Bitmap get(String path, int width, int height) {
+        return cache.get(toKey(path, width, height));
+    }
+
+    /**
+     * Get the number of bitmaps decoded.
+     * @return the decode count
+     */
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    /**
+     * Get the number of bitmaps evicted from the cache.
+     * @return the eviction count
+     */
+    public int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    /**
+     * Get the number of lookups that found a cached bitmap.
+     * @return the hit count
+     */
+    public int getHitCount() {
+        return cache.hitCount();
+    }
+
+    /**
+     * Get the maximum size of the cached bitmaps.
+     * @return the size in bytes
+     */
+    public int getMaxSize() {
+        return cache.maxSize();
+    }
+
+    /**
+     * Get the number of lookups that found no cached bitmap.
+     * @return the miss count
+     */
+    public int getMissCount() {
+        return cache.missCount();
+    }
+
+    /**
+     * Get the size of the cached bitmaps.
+     * @return the size in bytes
+     */
+    public int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Bind an asset bitmap to a view: set at once if cached, else decoded in background.
+     * @param context the context
+     * @param path the asset path
+     * @param width the target width in pixels
+     * @param height the target height in pixels
+     * @param view the view
+     * @param placeholder the image resource shown while decoding
+     * @param error the image resource shown if the bitmap cannot be decoded
+     */
+    public void load(Context context, String path, int width, int height, ImageView view, int placeholder, int error) {
+        String key = toKey(path, width, height);
+        view.setTag(key);
+
+        Bitmap bitmap = cache.get(key);
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            return;
+        }
+
+        view.setImageResource(placeholder);
+
+        List<WeakReference<ImageView>> targets = pending.get(key);
+        if (targets != null) {
+            // Already decoding
+            targets.add(new WeakReference<ImageView>(view));
+            return;
+        }
+        targets = new ArrayList<WeakReference<ImageView>>();
+        targets.add(new WeakReference<ImageView>(view));
+        pending.put(key, targets);
+
+        DECODER.execute(new DecodeTask(context.getApplicationContext(), path, width, height, key, error));
+    }
+
+    @Override
+    public String toString() {
+        return "BitmapCache { size: " + getSize() + "/" + getMaxSize() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", evictions: "
+                + getEvictionCount() + ", decoded: " + getDecodeCount() + " }";
+    }
+
+    private void deliver(String key, Bitmap bitmap, int error) {
+        List<WeakReference<ImageView>> targets = pending.remove(key);
+        if (targets == null) {
+            return;
+        }
+        for (WeakReference<ImageView> ref : targets) {
+            ImageView view = ref.get();
+            if (view == null || !key.equals(view.getTag())) {
+                // Gone, or bound to another image since
+                continue;
+            }
+            if (bitmap != null) {
+                view.setImageBitmap(bitmap);
+            } else {
+                view.setImageResource(error);
+            }
+        }
+    }
+
+    /**
+     * Get the bitmap cache of the application, bounded to a sixteenth of the maximum heap size.
+     * @return the bitmap cache
+     */
+    public static synchronized BitmapCache getInstance() {
+        if (instance == null) {
+            instance = new BitmapCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16));
+        }
+        return instance;
+    }
+
+    /**
+     * Get the background pool decoding bitmaps, shared with other image loaders such as {@link TextureAtlas}.
+     * @return the decoder executor
+     */
+    static Executor getDecoder() {
+        return DECODER;
+    }
+
+    private static ThreadPoolExecutor createDecoder() {
+        // Do not compete with the UI thread
+        KarotzThreadFactory factory = new KarotzThreadFactory("BitmapDecoder", Process.THREAD_PRIORITY_BACKGROUND);
+        ThreadPoolExecutor decoder = new ThreadPoolExecutor(2, 2, 5L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+        decoder.allowCoreThreadTimeOut(true);
+        return decoder;
+    }
+
+    private static String toKey(String path, int width, int height) {
+        return path + '@' + width + 'x' + height;
+    }
+
+
+    private class DecodeTask implements Runnable {
+
+        public DecodeTask(Context context, String path, int width, int height, String key, int error) {
+            this.context = context;
+            this.path = path;
+            this.width = width;
+            this.height = height;
+            this.key = key;
+            this.error = error;
+        }
+
+        @Override
+        public void run() {
+            final Bitmap bitmap = AssetUtils.loadBitmapFromAsset(context, path, width, height);
+            decodeCount.incrementAndGet();
+            if (bitmap != null) {
+                cache.put(key, bitmap);
+            } else {
+                Log.w(LOG_TAG, "Cannot decode " + path);
+            }
+
+            MainThreadExecutor.getInstance().execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    deliver(key, bitmap, error);
+                }
+            });
+        }
+
+
+        private final Context context;
+        private final String path;
+        private final int width;
+        private final int height;
+        private final String key;
+        private final int error;
+    }
+
+
+    private final LruCache<String, Bitmap> cache;
+
+    // Views waiting for a bitmap being decoded, by key; main thread only
+    private final Map<String, List<WeakReference<ImageView>>> pending = new HashMap<String, List<WeakReference<ImageView>>>();
+
+    private final AtomicLong decodeCount = new AtomicLong();
+
+    private static BitmapCache instance = null;
+
+    private static final ThreadPoolExecutor DECODER = createDecoder();
+
+    private static final String LOG_TAG = BitmapCache.class.getSimpleName();
+}
@@ -0,0 +1,251 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.Log;
+
+import com.github.hobbe.android.openkarotz.model.RadioGroupModel;
+import com.github.hobbe.android.openkarotz.model.RadioModel;
+
+/**
+ * Streaming loader of the JSON catalogs shipped as assets: radio stations and color codes.
+ * <p>
+ * The JSON is walked token by token and models are emitted as soon as read, without reading the whole asset in
+ * memory nor building a JSON tree. Unknown keys are skipped, so that catalogs can be extended.
+ */
+public class CatalogLoader {
+
+    /**
+     * Load color codes from an asset.
+     * <p>
+     * Format: <code>{ "colors": [ { "code": "RRGGBB" }, ... ] }</code>
+     * @param context the context
+     * @param filename the name of the asset
+     * @return the color codes, or {@code null} if the asset cannot be read or parsed
+     */
+    public static String[] loadColors(Context context, String filename) {
+        InputStream is = null;
+        try {
+            is = context.getAssets().open(filename);
+            List<String> colors = readColors(is);
+            return colors.toArray(new String[colors.size()]);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not load colors from asset " + filename + ": " + e.getMessage(), e);
+            return null;
+        } finally {
+            close(is);
+        }
+    }
+
+    /**
+     * Load radio groups from an asset.
+     * <p>
+     * Format: <code>{ "radios": [ { "id": ..., "name": ..., "radios": [ { "id": ..., "name": ..., "url": ... }, ... ] }, ... ] }</code>
+     * @param context the context
+     * @param filename the name of the asset
+     * @return the radio groups, or {@code null} if the asset cannot be read or parsed
+     */
+    public static RadioGroupModel[] loadRadios(Context context, String filename) {
+        InputStream is = null;
+        try {
+            is = context.getAssets().open(filename);
+            final List<RadioGroupModel> groups = new ArrayList<RadioGroupModel>();
+            readRadios(is, new GroupListener() {
+
+                @Override
+                public void onGroup(RadioGroupModel group) {
+                    groups.add(group);
+                }
+            });
+            return groups.toArray(new RadioGroupModel[groups.size()]);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Could not load radios from asset " + filename + ": " + e.getMessage(), e);
+            return null;
+        } finally {
+            close(is);
+        }
+    }
+
+    /**
+     * Read color codes.
+     * @param in the UTF-8 JSON stream, not closed
+     * @return the color codes, in catalog order
+     * @throws IOException if the stream cannot be read, or is not a color catalog
+     */
+    public static List<String> readColors(InputStream in) throws IOException {
+        List<String> colors = new ArrayList<String>();
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"colors".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String code = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("code".equals(reader.nextName())) {
+                        code = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                colors.add(require(code, "code"));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+
+        return colors;
+    }
+
+    /**
+     * Read radio groups, emitting each one as soon as read: only the current group is held in memory.
+     * @param in the UTF-8 JSON stream, not closed
+     * @param listener the listener receiving the groups, in catalog order
+     * @throws IOException if the stream cannot be read, or is not a radio catalog
+     */
+    public static void readRadios(InputStream in, GroupListener listener) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"radios".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                listener.onGroup(readGroup(reader));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private static void close(InputStream is) {
+        if (is != null) {
+            try {
+                is.close();
+            } catch (IOException e) {
+                // Ignored
+            }
+        }
+    }
+
+    private static RadioGroupModel readGroup(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        List<RadioModel> radios = new ArrayList<RadioModel>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if ("id".equals(key)) {
+                id = reader.nextString();
+            } else if ("name".equals(key)) {
+                name = reader.nextString();
+            } else if ("radios".equals(key)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    radios.add(readRadio(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Keys may come in any order
+        RadioGroupModel group = new RadioGroupModel(require(id, "id"), require(name, "name"));
+        for (RadioModel radio : radios) {
+            group.addRadio(radio);
+        }
+        return group;
+    }
+
+    private static RadioModel readRadio(JsonReader reader) throws IOException {
+        String id = null;
+        String name = null;
+        String url = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if ("id".equals(key)) {
+                id = reader.nextString();
+            } else if ("name".equals(key)) {
+                name = reader.nextString();
+            } else if ("url".equals(key)) {
+                url = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new RadioModel(require(id, "id"), require(name, "name"), require(url, "url"));
+    }
+
+    private static String require(String value, String key) throws IOException {
+        if (value == null) {
+            throw new IOException("Missing key: " + key);
+        }
+        return value;
+    }
+
+
+    /**
+     * Receives the radio groups of a catalog, as soon as read.
+     */
+    public interface GroupListener {
+
+        /**
+         * Called when a radio group has been read, with all its radios.
+         * @param group the radio group
+         */
+        void onGroup(RadioGroupModel group);
+    }
+
+
+    private static final String LOG_TAG = CatalogLoader.class.getSimpleName();
+}
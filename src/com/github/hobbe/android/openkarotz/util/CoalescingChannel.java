@@ -0,0 +1,194 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.util;
+
+import java.util.concurrent.Executor;
+
+import android.util.Log;
+
+/**
+ * Latest-wins channel delivering values to a slow sink, e.g. commands to a Karotz.
+ * <p>
+ * At most one delivery is in flight. Values offered meanwhile replace each other, so that only the newest is delivered
+ * next and intermediate ones are dropped. A value equal to the last delivered one is not delivered again.
+ * @param <T> the value type, compared with {@link Object#equals(Object)}
+ */
+public class CoalescingChannel<T> {
+
+    /**
+     * Initialize a new channel.
+     * @param executor the executor running deliveries
+     * @param sink the sink receiving the values
+     */
+    public CoalescingChannel(Executor executor, Sink<T> sink) {
+        this.executor = executor;
+        this.sink = sink;
+    }
+
+    /**
+     * Forget the last delivered value, e.g. because the target changed by other means. The next value is delivered
+     * even if equal to the last one.
+     */
+    public synchronized void forget() {
+        delivered = null;
+    }
+
+    /**
+     * Get the number of values delivered to the sink.
+     * @return the delivered count
+     */
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * Get the number of values replaced by a newer one before their delivery.
+     * @return the dropped count
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Get the number of values not delivered because equal to the last delivered one.
+     * @return the suppressed count
+     */
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    /**
+     * Check if a value is being delivered, or waiting to be.
+     * @return {@code true} if a delivery is in flight or pending
+     */
+    public synchronized boolean isBusy() {
+        return running || pending != null;
+    }
+
+    /**
+     * Offer a value. It is delivered as soon as the delivery in flight, if any, is over, unless a newer value is offered
+     * in the meantime.
+     * @param value the value, not {@code null}
+     */
+    public void offer(T value) {
+        synchronized (this) {
+            if (pending != null) {
+                droppedCount++;
+            }
+            pending = value;
+
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+
+        try {
+            executor.execute(drain);
+        } catch (RuntimeException e) {
+            // Rejected: give up on this value, the next offer will try again
+            Log.w(LOG_TAG, "Cannot schedule delivery: " + e.getMessage());
+            synchronized (this) {
+                running = false;
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CoalescingChannel { delivered: " + deliveredCount + ", dropped: " + droppedCount + ", suppressed: " + suppressedCount + " }";
+    }
+
+    private void drainPending() {
+        while (true) {
+            T value;
+            synchronized (this) {
+                value = pending;
+                pending = null;
+                if (value == null) {
+                    running = false;
+                    return;
+                }
+                if (value.equals(delivered)) {
+                    suppressedCount++;
+                    continue;
+                }
+                deliveredCount++;
+            }
+
+            try {
+                sink.deliver(value);
+                synchronized (this) {
+                    delivered = value;
+                }
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Cannot deliver " + value + ": " + e.getMessage(), e);
+                forget();
+            }
+        }
+    }
+
+
+    /**
+     * Receives the values of a channel.
+     * @param <T> the value type
+     */
+    public interface Sink<T> {
+
+        /**
+         * Deliver a value. Called on the channel executor, never concurrently.
+         * @param value the value
+         * @throws Exception if the delivery failed
+         */
+        void deliver(T value) throws Exception;
+    }
+
+
+    private final Executor executor;
+
+    private final Sink<T> sink;
+
+    private final Runnable drain = new Runnable() {
+
+        @Override
+        public void run() {
+            drainPending();
+        }
+    };
+
+    private T pending = null;
+    private T delivered = null;
+    private boolean running = false;
+
+    private long deliveredCount = 0;
+    private long droppedCount = 0;
+    private long suppressedCount = 0;
+
+    private static final String LOG_TAG = CoalescingChannel.class.getSimpleName();
+}
@@ -0,0 +1,84 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+/**
+ * Creates named daemon threads, so that pending background work never keeps the process alive.
+ */
+public class KarotzThreadFactory implements ThreadFactory {
+
+    /**
+     * Initialize a factory creating threads named after the given prefix.
+     * @param name the thread name prefix
+     */
+    public KarotzThreadFactory(String name) {
+        this(name, Process.THREAD_PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Initialize a factory creating threads named after the given prefix and running at the given priority.
+     * @param name the thread name prefix
+     * @param priority the Linux thread priority, e.g. {@link Process#THREAD_PRIORITY_BACKGROUND}
+     */
+    public KarotzThreadFactory(String name, int priority) {
+        this.name = name;
+        this.priority = priority;
+    }
+
+    @Override
+    public Thread newThread(final Runnable r) {
+        Runnable task = r;
+        if (priority != Process.THREAD_PRIORITY_DEFAULT) {
+            task = new Runnable() {
+
+                @Override
+                public void run() {
+                    // Must be set from the thread itself
+                    Process.setThreadPriority(priority);
+                    r.run();
+                }
+            };
+        }
+        Thread t = new Thread(task, name + "-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+
+
+    private final String name;
+
+    private final int priority;
+
+    private final AtomicInteger count = new AtomicInteger();
+}
@@ -26,44 +26,41 @@
  *
  */
 
-package com.github.hobbe.android.openkarotz.task;
+package com.github.hobbe.android.openkarotz.util;
 
-import java.io.IOException;
+import java.util.concurrent.Executor;
 
-import android.app.Activity;
-import android.util.Log;
-
-import com.github.hobbe.android.openkarotz.karotz.Karotz;
+import android.os.Handler;
+import android.os.Looper;
 
 /**
- * Task to wake Karotz up in the background.
+ * Executor running tasks on the UI thread.
  */
-public class WakeupAsyncTask extends KarotzAsyncTask {
+public class MainThreadExecutor implements Executor {
 
-    /**
-     * Initialize a new task.
-     * 
-     * @param activity the calling activity
-     */
-    public WakeupAsyncTask(Activity activity) {
-        super(activity);
+    private MainThreadExecutor() {
+        // Use getInstance()
     }
 
-    /**
-     * This tasks returns {@code Boolean#TRUE true} if action was successful, else {@code Boolean#FALSE false}.
-     */
     @Override
-    protected Boolean doInBackground(Object... params) {
-
-        try {
-            return Boolean.valueOf(Karotz.getInstance().wakeup(true));
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Cannot wake Karotz up: " + e.getMessage(), e);
-            return Boolean.FALSE;
+    public void execute(Runnable command) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            command.run();
+        } else {
+            handler.post(command);
         }
     }
 
+    /**
+     * Get the UI thread executor.
+     * @return the executor
+     */
+    public static MainThreadExecutor getInstance() {
+        return INSTANCE;
+    }
+
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
 
-    // Log tag
-    private static final String LOG_TAG = WakeupAsyncTask.class.getSimpleName();
+    private static final MainThreadExecutor INSTANCE = new MainThreadExecutor();
 }
@@ -0,0 +1,159 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Collapses concurrent calls for the same key into a single execution.
+ * <p>
+ * The first caller for a key runs the call; callers arriving while it is in flight wait for it and share its result
+ * (or its failure) instead of running the call again.
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * Initialize a new single-flight group.
+     */
+    public SingleFlight() {
+        // Nothing to do
+    }
+
+    /**
+     * Run the call for the given key, or wait for the identical call already in flight.
+     * @param key the key identifying the call
+     * @param call the call
+     * @return the result of the call
+     * @throws IOException if the call failed; other checked exceptions are wrapped
+     */
+    public V execute(K key, Callable<V> call) throws IOException {
+        Flight<V> flight;
+        boolean leader = false;
+
+        synchronized (inFlight) {
+            flight = inFlight.get(key);
+            if (flight == null) {
+                flight = new Flight<V>();
+                inFlight.put(key, flight);
+                leader = true;
+                executedCount++;
+            } else {
+                collapsedCount++;
+            }
+        }
+
+        if (leader) {
+            try {
+                flight.value = call.call();
+            } catch (Exception e) {
+                flight.error = e;
+            } finally {
+                synchronized (inFlight) {
+                    inFlight.remove(key);
+                }
+                flight.latch.countDown();
+            }
+        } else {
+            try {
+                flight.latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for in-flight call");
+            }
+        }
+
+        if (flight.error == null) {
+            return flight.value;
+        }
+        if (flight.error instanceof IOException) {
+            throw (IOException) flight.error;
+        }
+        if (flight.error instanceof RuntimeException) {
+            throw (RuntimeException) flight.error;
+        }
+        throw new IOException(flight.error.getMessage(), flight.error);
+    }
+
+    /**
+     * Get the number of calls that joined a call already in flight instead of running their own.
+     * @return the collapsed call count
+     */
+    public long getCollapsedCount() {
+        synchronized (inFlight) {
+            return collapsedCount;
+        }
+    }
+
+    /**
+     * Get the number of calls actually run.
+     * @return the executed call count
+     */
+    public long getExecutedCount() {
+        synchronized (inFlight) {
+            return executedCount;
+        }
+    }
+
+    /**
+     * Get the number of calls currently in flight.
+     * @return the in-flight call count
+     */
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+
+
+    private static class Flight<V> {
+
+        public Flight() {
+            // Nothing to do
+        }
+
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        volatile V value = null;
+        volatile Exception error = null;
+    }
+
+
+    private final Map<K, Flight<V>> inFlight = new HashMap<K, Flight<V>>();
+
+    private long executedCount = 0;
+    private long collapsedCount = 0;
+}
@@ -0,0 +1,345 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+package com.github.hobbe.android.openkarotz.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+
+/**
+ * Images packed into a single bitmap, e.g. radio logos.
+ * <p>
+ * An atlas is made of two assets built by {@code tools/AtlasPacker.java}: {@code <name>.png}, the packed images, and
+ * {@code <name>.idx}, the binary index of their regions by id. The whole atlas is read and decoded once, in
+ * background, then each image is handed out as a drawable of its region, sharing the atlas bitmap.
+ * <p>
+ * {@link #load(Context, String, Callback)} must be called on the main thread.
+ */
+public class TextureAtlas {
+
+    /**
+     * Initialize a new atlas.
+     * @param bitmap the atlas bitmap
+     * @param regions the image regions by id
+     */
+    TextureAtlas(Bitmap bitmap, Map<String, Rect> regions) {
+        this.bitmap = bitmap;
+        this.regions = regions;
+    }
+
+    /**
+     * Check if the atlas contains an image.
+     * @param id the image id
+     * @return {@code true} if the image is in the atlas
+     */
+    public boolean contains(String id) {
+        return regions.containsKey(id);
+    }
+
+    /**
+     * Get the atlas bitmap.
+     * @return the bitmap
+     */
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Get a drawable of an image. Drawables share the atlas bitmap and are cheap to create.
+     * @param id the image id
+     * @return the drawable, or {@code null} if the image is not in the atlas
+     */
+    public Drawable getDrawable(String id) {
+        Rect region = regions.get(id);
+        return (region == null ? null : new RegionDrawable(bitmap, region));
+    }
+
+    /**
+     * Get the region of an image in the atlas bitmap.
+     * @param id the image id
+     * @return a copy of the region, or {@code null} if the image is not in the atlas
+     */
+    public Rect getRegion(String id) {
+        Rect region = regions.get(id);
+        return (region == null ? null : new Rect(region));
+    }
+
+    /**
+     * Get the number of images in the atlas.
+     * @return the image count
+     */
+    public int size() {
+        return regions.size();
+    }
+
+    @Override
+    public String toString() {
+        return "TextureAtlas { images: " + size() + ", bitmap: " + bitmap.getWidth() + "x" + bitmap.getHeight() + " }";
+    }
+
+    /**
+     * Drop all loaded atlases, e.g. when the system is low on memory. Drawables already handed out remain valid.
+     */
+    public static synchronized void clear() {
+        LOADED.clear();
+    }
+
+    /**
+     * Read and decode an atlas from the assets. Blocks, must not be called on the main thread.
+     * @param context the context
+     * @param name the asset path of the atlas, without extension
+     * @return the atlas
+     * @throws IOException if the index cannot be read, or the bitmap cannot be decoded
+     */
+    public static TextureAtlas decode(Context context, String name) throws IOException {
+        Map<String, Rect> regions;
+        InputStream is = context.getAssets().open(name + INDEX_EXTENSION);
+        try {
+            regions = readIndex(is);
+        } finally {
+            is.close();
+        }
+
+        Bitmap bitmap = AssetUtils.loadBitmapFromAsset(context, name + IMAGE_EXTENSION);
+        if (bitmap == null) {
+            throw new IOException("Cannot decode atlas bitmap " + name + IMAGE_EXTENSION);
+        }
+        return new TextureAtlas(bitmap, regions);
+    }
+
+    /**
+     * Get an atlas, decoding it in background if not loaded yet. Concurrent requests for the same atlas share a
+     * single decoding.
+     * @param context the context
+     * @param name the asset path of the atlas, without extension
+     * @param callback the callback notified on the main thread once the atlas is loaded, unless it was already
+     * @return the atlas if already loaded, else {@code null}
+     */
+    public static TextureAtlas load(Context context, final String name, Callback callback) {
+        TextureAtlas atlas = peek(name);
+        if (atlas != null) {
+            return atlas;
+        }
+
+        List<Callback> callbacks = PENDING.get(name);
+        if (callbacks != null) {
+            // Already decoding
+            callbacks.add(callback);
+            return null;
+        }
+        callbacks = new ArrayList<Callback>();
+        callbacks.add(callback);
+        PENDING.put(name, callbacks);
+
+        final Context appContext = context.getApplicationContext();
+        BitmapCache.getDecoder().execute(new Runnable() {
+
+            @Override
+            public void run() {
+                TextureAtlas decoded = null;
+                long start = System.currentTimeMillis();
+                try {
+                    decoded = decode(appContext, name);
+                    Log.d(LOG_TAG, "Decoded " + name + " in " + (System.currentTimeMillis() - start) + "ms: " + decoded);
+                    synchronized (TextureAtlas.class) {
+                        LOADED.put(name, decoded);
+                    }
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Cannot load atlas " + name + ": " + e.getMessage(), e);
+                }
+
+                final TextureAtlas result = decoded;
+                MainThreadExecutor.getInstance().execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        deliver(name, result);
+                    }
+                });
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Get an atlas if already loaded.
+     * @param name the asset path of the atlas, without extension
+     * @return the atlas, or {@code null} if not loaded
+     */
+    public static synchronized TextureAtlas peek(String name) {
+        return LOADED.get(name);
+    }
+
+    /**
+     * Read an atlas index.
+     * @param in the input stream, positioned at the start of the index
+     * @return the image regions by id
+     * @throws IOException if the index cannot be read, or is invalid
+     */
+    static Map<String, Rect> readIndex(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        int magic = data.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not an atlas index: " + Integer.toHexString(magic));
+        }
+        int version = data.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported atlas index version: " + version);
+        }
+
+        int width = data.readUnsignedShort();
+        int height = data.readUnsignedShort();
+        int count = data.readUnsignedShort();
+
+        Map<String, Rect> regions = new HashMap<String, Rect>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            String id = data.readUTF();
+            int x = data.readUnsignedShort();
+            int y = data.readUnsignedShort();
+            int w = data.readUnsignedShort();
+            int h = data.readUnsignedShort();
+            if (x + w > width || y + h > height) {
+                throw new IOException("Region of " + id + " out of atlas bounds");
+            }
+            regions.put(id, new Rect(x, y, x + w, y + h));
+        }
+        return Collections.unmodifiableMap(regions);
+    }
+
+    private static void deliver(String name, TextureAtlas atlas) {
+        List<Callback> callbacks = PENDING.remove(name);
+        if (callbacks == null) {
+            return;
+        }
+        for (Callback callback : callbacks) {
+            callback.onAtlasLoaded(name, atlas);
+        }
+    }
+
+
+    /**
+     * Notified when an atlas is loaded.
+     */
+    public interface Callback {
+
+        /**
+         * Called on the main thread when the atlas is loaded, or could not be.
+         * @param name the asset path of the atlas, without extension
+         * @param atlas the atlas, or {@code null} if it cannot be loaded
+         */
+        void onAtlasLoaded(String name, TextureAtlas atlas);
+    }
+
+
+    /**
+     * Drawable of a region of the atlas bitmap, scaled to its bounds.
+     */
+    private static class RegionDrawable extends Drawable {
+
+        public RegionDrawable(Bitmap bitmap, Rect region) {
+            this.bitmap = bitmap;
+            this.region = region;
+        }
+
+        @Override
+        public void draw(Canvas canvas) {
+            canvas.drawBitmap(bitmap, region, getBounds(), paint);
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return region.height();
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return region.width();
+        }
+
+        @Override
+        public int getOpacity() {
+            return PixelFormat.TRANSLUCENT;
+        }
+
+        @Override
+        public void setAlpha(int alpha) {
+            paint.setAlpha(alpha);
+            invalidateSelf();
+        }
+
+        @Override
+        public void setColorFilter(ColorFilter cf) {
+            paint.setColorFilter(cf);
+            invalidateSelf();
+        }
+
+
+        private final Bitmap bitmap;
+        private final Rect region;
+
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+
+    private final Bitmap bitmap;
+
+    private final Map<String, Rect> regions;
+
+    private static final Map<String, TextureAtlas> LOADED = new HashMap<String, TextureAtlas>();
+
+    // Callbacks waiting for an atlas being decoded, by name; main thread only
+    private static final Map<String, List<Callback>> PENDING = new HashMap<String, List<Callback>>();
+
+    private static final int MAGIC = 0x5241544C; // 'RATL'
+
+    private static final int VERSION = 1;
+
+    private static final String IMAGE_EXTENSION = ".png";
+
+    private static final String INDEX_EXTENSION = ".idx";
+
+    private static final String LOG_TAG = TextureAtlas.class.getSimpleName();
+}
@@ -83,6 +83,14 @@ public class RotaryKnob extends ImageView {
         return angle;
     }
 
+    /**
+     * Check if the knob is being touched, e.g. dragged by the user.
+     * @return {@code true} between the touch down and up
+     */
+    public boolean isTouched() {
+        return touched;
+    }
+
     /**
      * Set the knob angle.
      * @param angle the knob angle
@@ -135,6 +143,9 @@ public class RotaryKnob extends ImageView {
                 float theta = getTheta(x, y);
 
                 switch (event.getAction() & MotionEvent.ACTION_MASK) {
+                case MotionEvent.ACTION_DOWN:
+                    touched = true;
+                    break;
                 case MotionEvent.ACTION_POINTER_DOWN:
                     theta_old = theta;
                     break;
@@ -152,8 +163,12 @@ public class RotaryKnob extends ImageView {
                     theta_old = theta;
                     direction = (delta_theta > 0) ? 1 : -1;
                     angle += 3 * direction;
+                    touched = false;
                     notifyReleaseListener(direction, angle);
                     break;
+                case MotionEvent.ACTION_CANCEL:
+                    touched = false;
+                    break;
                 default:
                     break;
                 }
@@ -202,5 +217,7 @@ public class RotaryKnob extends ImageView {
 
     private float theta_old = 0f;
 
+    private boolean touched = false;
+
     private RotaryKnobListener listener;
 }
\ No newline at end of file
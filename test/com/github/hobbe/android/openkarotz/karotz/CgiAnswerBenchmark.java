@@ -0,0 +1,101 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.UnsupportedEncodingException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Parse cost of the CGI answers: {@link CgiAnswer} versus {@link JSONObject}, on the status and ears answers.
+ * <p>
+ * Not a unit test: run {@link #main(String[])} on a JVM with the Android {@code org.json} classes on the classpath.
+ */
+public final class CgiAnswerBenchmark {
+
+    private CgiAnswerBenchmark() {
+        // No instance
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args the number of iterations, optional
+     * @throws Exception if an answer cannot be parsed
+     */
+    public static void main(String[] args) throws Exception {
+        int iterations = (args.length > 0 ? Integer.parseInt(args[0]) : ITERATIONS);
+        byte[] status = STATUS.getBytes("UTF-8");
+        byte[] ears = EARS.getBytes("UTF-8");
+
+        // Warm up
+        long checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            checksum += parseStatus(status) + parseStatusJson(status) + parseEars(ears) + parseEarsJson(ears);
+        }
+
+        long statusNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += parseStatus(status);
+        }
+        statusNanos = System.nanoTime() - statusNanos;
+
+        long statusJsonNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += parseStatusJson(status);
+        }
+        statusJsonNanos = System.nanoTime() - statusJsonNanos;
+
+        long earsNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += parseEars(ears);
+        }
+        earsNanos = System.nanoTime() - earsNanos;
+
+        long earsJsonNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += parseEarsJson(ears);
+        }
+        earsJsonNanos = System.nanoTime() - earsJsonNanos;
+
+        if (checksum != 4L * iterations * (EXPECTED_STATUS + EXPECTED_EARS)) {
+            throw new IllegalStateException("Parsers disagree");
+        }
+
+        System.out.println("Iterations: " + iterations);
+        System.out.println("Status: CgiAnswer " + (statusNanos / iterations) + " ns, JSONObject " + (statusJsonNanos / iterations) + " ns");
+        System.out.println("Ears:   CgiAnswer " + (earsNanos / iterations) + " ns, JSONObject " + (earsJsonNanos / iterations) + " ns");
+    }
+
+    private static int parseEars(byte[] body) {
+        CgiAnswer answer = CgiAnswer.parse(body, 0, body.length);
+        return answer.getInt("left", 0) + answer.getInt("right", 0);
+    }
+
+    private static int parseEarsJson(byte[] body) throws JSONException, UnsupportedEncodingException {
+        JSONObject answer = new JSONObject(new String(body, 0, body.length, "UTF-8"));
+        return Integer.parseInt(answer.getString("left")) + Integer.parseInt(answer.getString("right"));
+    }
+
+    private static int parseStatus(byte[] body) {
+        CgiAnswer answer = CgiAnswer.parse(body, 0, body.length);
+        return answer.getHex("led_color", 0) + answer.getInt("nb_moods", 0);
+    }
+
+    private static int parseStatusJson(byte[] body) throws JSONException, UnsupportedEncodingException {
+        JSONObject answer = new JSONObject(new String(body, 0, body.length, "UTF-8"));
+        return Integer.parseInt(answer.getString("led_color"), 16) + Integer.parseInt(answer.getString("nb_moods"));
+    }
+
+
+    private static final String STATUS = "{\"version\":\"200\",\"ears_disabled\":\"0\",\"sleep\":\"0\",\"sleep_time\":\"0\",\"led_color\":\"0000FF\","
+            + "\"led_pulse\":\"1\",\"tts_cache_size\":\"4\",\"usb_free_space\":\"-1\",\"karotz_free_space\":\"148.4M\","
+            + "\"eth_mac\":\"00:00:00:00:00:00\",\"wlan_mac\":\"01:23:45:67:89:AB\",\"nb_tags\":\"4\",\"nb_moods\":\"305\",\"nb_sounds\":\"14\","
+            + "\"nb_stories\":\"0\",\"karotz_percent_used_space\":\"37\",\"usb_percent_used_space\":\"\"}";
+
+    private static final String EARS = "{\"return\":\"0\",\"left\":\"3\",\"right\":\"16\"}";
+
+    private static final int EXPECTED_STATUS = 0x0000FF + 305;
+
+    private static final int EXPECTED_EARS = 3 + 16;
+
+    private static final int ITERATIONS = 20000;
+}
@@ -0,0 +1,68 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import junit.framework.TestCase;
+
+public class CgiAnswerTest extends TestCase {
+
+    public void testEars() {
+        CgiAnswer answer = CgiAnswer.parse("{\"return\":\"0\",\"left\":\"3\",\"right\":\"16\"}");
+        assertTrue(answer.isValid());
+        assertTrue(answer.isOk());
+        assertEquals(3, answer.getInt("left", -1));
+        assertEquals(16, answer.getInt("right", -1));
+        assertEquals(3, answer.size());
+    }
+
+    public void testFailure() {
+        CgiAnswer answer = CgiAnswer.parse("{\"return\":\"1\",\"msg\":\"Unable to perform action, rabbit is sleeping.\"}");
+        assertTrue(answer.isValid());
+        assertFalse(answer.isOk());
+        assertEquals("Unable to perform action, rabbit is sleeping.", answer.getMessage());
+    }
+
+    public void testStatus() {
+        CgiAnswer answer = CgiAnswer.parse(STATUS);
+        assertEquals("200", answer.getString("version"));
+        assertEquals(0x0000FF, answer.getHex("led_color", -1));
+        assertTrue(answer.getFlag("led_pulse"));
+        assertFalse(answer.getFlag("sleep"));
+        assertEquals(-1, answer.getInt("usb_free_space", 0));
+        assertEquals("", answer.getString("usb_percent_used_space"));
+        assertEquals(7, answer.getInt("usb_percent_used_space", 7));
+        assertEquals(7, answer.getInt("karotz_free_space", 7));
+        assertNull(answer.getString("missing"));
+
+        OpenKarotzState state = new OpenKarotzState(answer);
+        assertEquals("200", state.getVersion());
+        assertEquals(IKarotz.KarotzStatus.AWAKE, state.getStatus());
+        assertEquals(0x0000FF, state.getLedColor());
+        assertTrue(state.isPulsing());
+        assertEquals(IKarotz.EarMode.ENABLED, state.getEarMode());
+    }
+
+    public void testWhitespace() {
+        CgiAnswer answer = CgiAnswer.parse(" {\n \"return\" : \"0\" ,\r\n\t\"color\":\"ff8000\" }\n");
+        assertTrue(answer.isOk());
+        assertEquals(0xFF8000, answer.getHex("color", -1));
+    }
+
+    public void testFallback() {
+        // Escaped characters and non-string values are handled by JSONObject
+        CgiAnswer answer = CgiAnswer.parse("{\"return\":0,\"msg\":\"say \\\"hi\\\"\"}");
+        assertTrue(answer.isOk());
+        assertEquals("say \"hi\"", answer.getMessage());
+    }
+
+    public void testInvalid() {
+        assertFalse(CgiAnswer.parse("<html>Not found</html>").isValid());
+        assertFalse(CgiAnswer.parse("").isValid());
+        assertFalse(CgiAnswer.parse((String) null).isValid());
+        assertEquals(IKarotz.KarotzStatus.UNKNOWN, new OpenKarotzState("{}").getStatus());
+    }
+
+
+    private static final String STATUS = "{\"version\":\"200\",\"ears_disabled\":\"0\",\"sleep\":\"0\",\"sleep_time\":\"0\",\"led_color\":\"0000FF\","
+            + "\"led_pulse\":\"1\",\"tts_cache_size\":\"4\",\"usb_free_space\":\"-1\",\"karotz_free_space\":\"148.4M\","
+            + "\"eth_mac\":\"00:00:00:00:00:00\",\"wlan_mac\":\"01:23:45:67:89:AB\",\"nb_tags\":\"4\",\"nb_moods\":\"305\",\"nb_sounds\":\"14\","
+            + "\"nb_stories\":\"0\",\"karotz_percent_used_space\":\"37\",\"usb_percent_used_space\":\"\"}";
+}
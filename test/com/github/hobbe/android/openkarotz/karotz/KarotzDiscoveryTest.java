@@ -0,0 +1,138 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.karotz.KarotzDiscovery.Device;
+
+public class KarotzDiscoveryTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (ServerSocket server : servers) {
+            server.close();
+        }
+        servers.clear();
+    }
+
+    public void testScan() throws Exception {
+        InetSocketAddress karotz = serve(STATUS);
+        InetSocketAddress other = serve("{\"hello\":\"world\"}");
+        InetSocketAddress silent = serve(null);
+        InetSocketAddress closed = closedPort();
+
+        List<InetSocketAddress> targets = new ArrayList<InetSocketAddress>();
+        targets.add(other);
+        targets.add(silent);
+        targets.add(closed);
+        targets.add(karotz);
+
+        final List<Device> found = new ArrayList<Device>();
+        final List<Device> finished = new ArrayList<Device>();
+
+        KarotzDiscovery discovery = new KarotzDiscovery(4, 200, 300);
+        List<Device> devices = discovery.scan(targets, new KarotzDiscovery.Listener() {
+
+            @Override
+            public void onDeviceFound(Device device) {
+                synchronized (found) {
+                    found.add(device);
+                }
+            }
+
+            @Override
+            public void onScanFinished(List<Device> all) {
+                synchronized (finished) {
+                    finished.addAll(all);
+                }
+            }
+        }, DIRECT).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, devices.size());
+        assertEquals(karotz, devices.get(0).getAddress());
+        assertEquals("200", devices.get(0).getState().getVersion());
+        assertEquals(1, found.size());
+        assertEquals(1, finished.size());
+    }
+
+    public void testSubnetTargets() throws Exception {
+        InetAddress self = InetAddress.getByName("192.168.1.42");
+        List<InetSocketAddress> targets = KarotzDiscovery.getSubnetTargets((Inet4Address) self, 80);
+        assertEquals(253, targets.size());
+        assertEquals("192.168.1.1", targets.get(0).getAddress().getHostAddress());
+        assertEquals("192.168.1.254", targets.get(252).getAddress().getHostAddress());
+        for (InetSocketAddress target : targets) {
+            assertFalse(self.equals(target.getAddress()));
+        }
+    }
+
+    private InetSocketAddress closedPort() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        int port = server.getLocalPort();
+        server.close();
+        return new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port);
+    }
+
+    /**
+     * Start a stand-in HTTP server answering every request with the given body, or never answering if {@code null}.
+     */
+    private InetSocketAddress serve(final String body) throws IOException {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        servers.add(server);
+
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Socket s = server.accept();
+                        InputStream in = s.getInputStream();
+                        in.read(new byte[1024]);
+                        if (body == null) {
+                            // Keep the connection open without answering
+                            continue;
+                        }
+                        byte[] b = body.getBytes("UTF-8");
+                        OutputStream out = s.getOutputStream();
+                        out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + b.length + "\r\nConnection: close\r\n\r\n").getBytes("UTF-8"));
+                        out.write(b);
+                        out.flush();
+                        s.close();
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+
+        return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+    }
+
+
+    private final List<ServerSocket> servers = new ArrayList<ServerSocket>();
+
+    private static final String STATUS = "{\"version\":\"200\",\"ears_disabled\":\"0\",\"sleep\":\"0\",\"sleep_time\":\"0\",\"led_color\":\"0000FF\",\"led_pulse\":\"1\"}";
+
+    private static final Executor DIRECT = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+}
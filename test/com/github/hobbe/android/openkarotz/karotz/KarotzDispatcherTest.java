@@ -0,0 +1,154 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class KarotzDispatcherTest extends TestCase {
+
+    public void testCancelled() throws Exception {
+        KarotzDispatcher dispatcher = new KarotzDispatcher(1, 8);
+        CountDownLatch release = new CountDownLatch(1);
+        KarotzFuture<Boolean> blocking = dispatcher.submit(await(release));
+
+        final AtomicInteger runs = new AtomicInteger();
+        KarotzFuture<Integer> waiting = dispatcher.submit(new Callable<Integer>() {
+
+            @Override
+            public Integer call() {
+                return Integer.valueOf(runs.incrementAndGet());
+            }
+        });
+        waiting.cancel(true);
+        release.countDown();
+
+        assertEquals(Boolean.TRUE, blocking.get(5, TimeUnit.SECONDS));
+        assertTrue(waiting.isCancelled());
+        assertEquals(Boolean.TRUE, dispatcher.submit(await(release)).get(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    public void testReadNotDelayedByWrite() throws Exception {
+        KarotzDispatcher dispatcher = new KarotzDispatcher(2, 8);
+        CountDownLatch release = new CountDownLatch(1);
+        KarotzFuture<Boolean> write = dispatcher.submitWrite("karotz", await(release));
+
+        // Runs while the write is blocked
+        assertEquals("read", dispatcher.submit(new Callable<String>() {
+
+            @Override
+            public String call() {
+                return "read";
+            }
+        }).get(5, TimeUnit.SECONDS));
+        assertFalse(write.isDone());
+
+        release.countDown();
+        assertEquals(Boolean.TRUE, write.get(5, TimeUnit.SECONDS));
+    }
+
+    public void testRejected() throws Exception {
+        KarotzDispatcher dispatcher = new KarotzDispatcher(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        KarotzFuture<Boolean> running = dispatcher.submit(await(release));
+        waitActive(dispatcher, 1);
+        KarotzFuture<Boolean> queued = dispatcher.submit(await(release));
+
+        KarotzFuture<Boolean> rejected = dispatcher.submitWrite("karotz", await(release));
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            fail("Rejected expected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(1, dispatcher.getRejectedCount());
+
+        // Lane reset: later writes run
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        assertEquals(Boolean.TRUE, dispatcher.submitWrite("karotz", await(release)).get(5, TimeUnit.SECONDS));
+    }
+
+    public void testWritesSerialized() throws Exception {
+        KarotzDispatcher dispatcher = new KarotzDispatcher(4, 64);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+
+        List<KarotzFuture<Integer>> futures = new ArrayList<KarotzFuture<Integer>>();
+        for (int i = 0; i < 20; i++) {
+            final Integer index = Integer.valueOf(i);
+            futures.add(dispatcher.submitWrite("karotz", new Callable<Integer>() {
+
+                @Override
+                public Integer call() throws Exception {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    Thread.sleep(2);
+                    order.add(index);
+                    running.decrementAndGet();
+                    return index;
+                }
+            }));
+        }
+        for (KarotzFuture<Integer> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(0, overlaps.get());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, order.get(i).intValue());
+        }
+        assertEquals(20, dispatcher.getCompletedCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    public void testWriteLane() throws Exception {
+        KarotzDispatcher dispatcher = new KarotzDispatcher(4, 64);
+        CountDownLatch release = new CountDownLatch(1);
+        KarotzFuture<Boolean> write = dispatcher.submitWrite("karotz", await(release));
+
+        // Queued behind the write
+        final CountDownLatch ran = new CountDownLatch(1);
+        dispatcher.getWriteLane("karotz").execute(new Runnable() {
+
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertFalse(ran.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, dispatcher.getQueueDepth());
+
+        release.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertTrue(write.isDone());
+    }
+
+    private static Callable<Boolean> await(final CountDownLatch latch) {
+        return new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() throws Exception {
+                return Boolean.valueOf(latch.await(5, TimeUnit.SECONDS));
+            }
+        };
+    }
+
+    private static void waitActive(KarotzDispatcher dispatcher, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.getActiveCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+public class KarotzFleetTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        hang.countDown();
+    }
+
+    public void testAggregated() throws Exception {
+        KarotzFleet fleet = new KarotzFleet(4, TIMEOUT);
+        fleet.add(stub("ok1", Boolean.TRUE));
+        fleet.add(stub("ok2", Boolean.FALSE));
+        fleet.add(stub("failing", new IOException("Karotz unreachable")));
+        fleet.add(stub("hanging", null));
+
+        long start = System.currentTimeMillis();
+        FleetResult<Boolean> result = fleet.sleep(null).get(5, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(Arrays.asList("ok1", "ok2", "failing", "hanging"), result.getHosts());
+        assertFalse(result.isSuccessful());
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(Boolean.TRUE, result.getSuccesses().get("ok1"));
+        assertEquals(Boolean.FALSE, result.getSuccesses().get("ok2"));
+        assertEquals(2, result.getFailureCount());
+        assertTrue(result.getFailures().get("failing") instanceof IOException);
+        assertTrue(result.getFailures().get("hanging") instanceof TimeoutException);
+        assertTrue(elapsed < TIMEOUT + MARGIN);
+    }
+
+    public void testEmpty() throws Exception {
+        KarotzFleet fleet = new KarotzFleet(4, TIMEOUT);
+        FleetResult<Boolean> result = fleet.sleep(null).get(1, TimeUnit.SECONDS);
+        assertTrue(result.getHosts().isEmpty());
+        assertTrue(result.isSuccessful());
+    }
+
+    public void testNotRegistered() throws Exception {
+        KarotzFleet fleet = new KarotzFleet(4, TIMEOUT);
+        fleet.add(stub("ok", Boolean.TRUE));
+
+        FleetResult<Boolean> result = fleet.sleep(Arrays.asList("ok", "missing")).get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getSuccessCount());
+        assertTrue(result.getFailures().get("missing") instanceof IllegalArgumentException);
+    }
+
+    public void testTimeoutFromSubmission() throws Exception {
+        // A single thread, held by the first hanging Karotz: the others time out while queued
+        KarotzFleet fleet = new KarotzFleet(1, TIMEOUT);
+        fleet.add(stub("hanging1", null));
+        fleet.add(stub("hanging2", null));
+        fleet.add(stub("ok", Boolean.TRUE));
+
+        long start = System.currentTimeMillis();
+        FleetResult<Boolean> result = fleet.sleep(null).get(5, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(3, result.getFailureCount());
+        for (Throwable failure : result.getFailures().values()) {
+            assertTrue(failure instanceof TimeoutException);
+        }
+        assertTrue(elapsed < TIMEOUT + MARGIN);
+        assertEquals(Collections.emptyMap(), result.getSuccesses());
+    }
+
+    /**
+     * Create a Karotz whose {@code sleep} returns the given value, throws the given exception, or hangs if
+     * {@code null}.
+     */
+    private IKarotz stub(final String hostname, final Object outcome) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getHostname".equals(method.getName())) {
+                    return hostname;
+                }
+                if (!"sleep".equals(method.getName())) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                if (outcome == null) {
+                    hang.await();
+                    return Boolean.FALSE;
+                }
+                if (outcome instanceof Throwable) {
+                    throw (Throwable) outcome;
+                }
+                return outcome;
+            }
+        };
+        return (IKarotz) Proxy.newProxyInstance(IKarotz.class.getClassLoader(), new Class<?>[] { IKarotz.class }, handler);
+    }
+
+
+    private final CountDownLatch hang = new CountDownLatch(1);
+
+    private static final long TIMEOUT = 300;
+
+    private static final long MARGIN = 1500;
+}
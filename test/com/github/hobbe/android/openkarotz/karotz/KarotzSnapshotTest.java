@@ -0,0 +1,39 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+
+public class KarotzSnapshotTest extends TestCase {
+
+    public void testSnapshot() {
+        OpenKarotzState state = new OpenKarotzState(STATUS).withEarPositions(EarPosition.POSITION_5, EarPosition.POSITION_9);
+
+        KarotzSnapshot snapshot = new KarotzSnapshot(state, 1234L);
+        assertEquals(KarotzStatus.AWAKE, snapshot.getStatus());
+        assertEquals("200", snapshot.getVersion());
+        assertEquals(0x0000FF, snapshot.getLedColor());
+        assertTrue(snapshot.isPulsing());
+        assertEquals(EarMode.DISABLED, snapshot.getEarMode());
+        assertEquals(EarPosition.POSITION_5, snapshot.getEarPositions()[0]);
+        assertEquals(EarPosition.POSITION_9, snapshot.getEarPositions()[1]);
+        assertEquals(1234L, snapshot.getTime());
+    }
+
+    public void testImmutable() {
+        KarotzSnapshot snapshot = new KarotzSnapshot(new OpenKarotzState(STATUS), 0);
+
+        snapshot.getEarPositions()[0] = EarPosition.POSITION_16;
+        assertEquals(EarPosition.POSITION_1, snapshot.getLeftEarPosition());
+    }
+
+    public void testUnknown() {
+        assertEquals(KarotzStatus.UNKNOWN, KarotzSnapshot.UNKNOWN.getStatus());
+        assertNull(KarotzSnapshot.UNKNOWN.getVersion());
+    }
+
+
+    private static final String STATUS = "{\"version\":\"200\",\"ears_disabled\":\"1\",\"sleep\":\"0\",\"sleep_time\":\"0\",\"led_color\":\"0000FF\",\"led_pulse\":\"1\"}";
+}
@@ -0,0 +1,63 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+
+public class OpenKarotzStateTest extends TestCase {
+
+    public void testDetails() {
+        OpenKarotzState state = new OpenKarotzState(STATUS);
+        assertEquals(KarotzStatus.AWAKE, state.getStatus());
+        assertEquals(0, state.getSleepTime());
+        assertEquals("4", state.getTtsCacheSize());
+        assertEquals("148.4M", state.getKarotzFreeSpace());
+        assertEquals(37, state.getKarotzUsedSpacePercent());
+        assertNull(state.getUsbFreeSpace());
+        assertEquals(-1, state.getUsbUsedSpacePercent());
+        assertEquals("00:00:00:00:00:00", state.getEthernetMac());
+        assertEquals("01:23:45:67:89:AB", state.getWlanMac());
+        assertEquals(4, state.getTagCount());
+        assertEquals(305, state.getMoodCount());
+        assertEquals(14, state.getSoundCount());
+        assertEquals(0, state.getStoryCount());
+
+        // Kept by derived states
+        assertEquals(305, state.withStatus(KarotzStatus.SLEEPING).getMoodCount());
+    }
+
+    public void testEquals() {
+        OpenKarotzState state = new OpenKarotzState(STATUS);
+        assertEquals(state, new OpenKarotzState(STATUS));
+        assertEquals(state, state.withRevision(5));
+
+        // Same core fields, other figures
+        assertFalse(state.equals(new OpenKarotzState(STATUS.replace("\"nb_moods\":\"305\"", "\"nb_moods\":\"306\""))));
+    }
+
+    public void testRestoredCleared() {
+        OpenKarotzState restored = StateStore.decode("200|AWAKE|00FF00|0|ENABLED|4|8");
+        assertTrue(restored.isRestored());
+        assertTrue(restored.withRevision(2).isRestored());
+
+        assertFalse(restored.withEarMode(EarMode.DISABLED).isRestored());
+        assertFalse(restored.withEarPositions(EarPosition.POSITION_1, EarPosition.POSITION_2).isRestored());
+        assertFalse(restored.withLed(0xFF0000, true).isRestored());
+        assertFalse(restored.withStatus(KarotzStatus.SLEEPING).isRestored());
+    }
+
+    public void testUnknown() {
+        OpenKarotzState state = new OpenKarotzState();
+        assertEquals(-1, state.getMoodCount());
+        assertNull(state.getKarotzFreeSpace());
+        assertEquals(-1, state.getSleepTime());
+    }
+
+
+    private static final String STATUS = "{\"version\":\"200\",\"ears_disabled\":\"0\",\"sleep\":\"0\",\"sleep_time\":\"0\",\"led_color\":\"0000FF\","
+            + "\"led_pulse\":\"1\",\"tts_cache_size\":\"4\",\"usb_free_space\":\"-1\",\"karotz_free_space\":\"148.4M\","
+            + "\"eth_mac\":\"00:00:00:00:00:00\",\"wlan_mac\":\"01:23:45:67:89:AB\",\"nb_tags\":\"4\",\"nb_moods\":\"305\",\"nb_sounds\":\"14\","
+            + "\"nb_stories\":\"0\",\"karotz_percent_used_space\":\"37\",\"usb_percent_used_space\":\"\"}";
+}
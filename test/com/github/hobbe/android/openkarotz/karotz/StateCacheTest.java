@@ -0,0 +1,373 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+
+public class StateCacheTest extends TestCase {
+
+    public void testConcurrentUpdates() throws InterruptedException {
+        final StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        cache.put(new OpenKarotzState(STATUS).withLed(0, false));
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        cache.update(new StateCache.Updater() {
+
+                            @Override
+                            public OpenKarotzState apply(OpenKarotzState state) {
+                                return state.withLed(state.getLedColor() + 1, false);
+                            }
+                        });
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // No lost update
+        assertEquals(4000, cache.peek().getLedColor());
+        assertEquals(4001, cache.getRevision());
+    }
+
+    public void testGet() throws IOException {
+        StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        final OpenKarotzState[] loaded = new OpenKarotzState[1];
+
+        OpenKarotzState state = cache.get(new StateCache.Loader() {
+
+            @Override
+            public OpenKarotzState load() {
+                loaded[0] = new OpenKarotzState(STATUS);
+                return loaded[0];
+            }
+        });
+        assertEquals(1, state.getRevision());
+        assertEquals(1, cache.getMissCount());
+
+        assertSame(state, cache.get(null));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testGetOffline() throws IOException {
+        StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        final int[] loads = new int[1];
+        StateCache.Loader loader = new StateCache.Loader() {
+
+            @Override
+            public OpenKarotzState load() {
+                loads[0]++;
+                return new OpenKarotzState(STATUS).withStatus(KarotzStatus.OFFLINE);
+            }
+        };
+
+        OpenKarotzState offline = cache.get(loader);
+        assertTrue(offline.getStatus().isOffline());
+
+        // Served without loading again
+        assertSame(offline, cache.get(loader));
+        assertSame(offline, cache.get(loader));
+        assertEquals(1, loads[0]);
+
+        // Loaded again once invalidated
+        cache.invalidate();
+        cache.get(loader);
+        assertEquals(2, loads[0]);
+    }
+
+    public void testGetMissDropped() throws IOException {
+        final StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        cache.restore(StateStore.decode("200|AWAKE|00FF00|0|ENABLED|4|8"));
+
+        // Restored state not served: loaded, while a command changes the LED
+        OpenKarotzState state = cache.get(new StateCache.Loader() {
+
+            @Override
+            public OpenKarotzState load() {
+                cache.update(new StateCache.Updater() {
+
+                    @Override
+                    public OpenKarotzState apply(OpenKarotzState current) {
+                        return current.withLed(0xFF0000, false);
+                    }
+                });
+                return new OpenKarotzState(STATUS);
+            }
+        });
+
+        assertEquals(0xFF0000, state.getLedColor());
+        assertSame(state, cache.peek());
+        assertEquals(1, cache.getDropCount());
+    }
+
+    public void testListener() {
+        StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        final List<StateChange> changes = new ArrayList<StateChange>();
+        StateListener listener = new StateListener() {
+
+            @Override
+            public void onStateChanged(StateChange change) {
+                changes.add(change);
+            }
+        };
+
+        cache.put(new OpenKarotzState(STATUS));
+        cache.addListener(listener, DIRECT);
+        assertEquals(1, changes.size());
+        assertTrue(changes.get(0).isInitial());
+        assertTrue(changes.get(0).isStatusChanged());
+
+        // Same content: no change
+        cache.put(new OpenKarotzState(STATUS));
+        assertEquals(1, changes.size());
+
+        cache.put(new OpenKarotzState(STATUS).withStatus(KarotzStatus.SLEEPING));
+        assertEquals(2, changes.size());
+        StateChange change = changes.get(1);
+        assertTrue(change.isStatusChanged());
+        assertFalse(change.isLedChanged());
+        assertFalse(change.isEarsMoved());
+        assertFalse(change.isEarModeChanged());
+        assertFalse(change.isVersionChanged());
+        assertEquals(KarotzStatus.SLEEPING, change.getCurrent().getStatus());
+
+        cache.removeListener(listener);
+        cache.put(new OpenKarotzState(STATUS));
+        assertEquals(2, changes.size());
+    }
+
+    public void testListenerMerge() {
+        StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        final List<Runnable> posted = new ArrayList<Runnable>();
+        final List<StateChange> changes = new ArrayList<StateChange>();
+
+        cache.put(new OpenKarotzState(STATUS));
+        cache.addListener(new StateListener() {
+
+            @Override
+            public void onStateChanged(StateChange change) {
+                changes.add(change);
+            }
+        }, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                posted.add(command);
+            }
+        });
+        posted.remove(0).run();
+
+        // Two changes while the UI thread is busy: one notification
+        cache.put(new OpenKarotzState(STATUS).withLed(0xFF0000, false));
+        cache.put(new OpenKarotzState(STATUS).withLed(0xFF0000, false).withEarPositions(EarPosition.POSITION_3, EarPosition.POSITION_3));
+        assertEquals(1, posted.size());
+        posted.remove(0).run();
+
+        assertEquals(2, changes.size());
+        StateChange change = changes.get(1);
+        assertTrue(change.isLedChanged());
+        assertTrue(change.isEarsMoved());
+        assertFalse(change.isStatusChanged());
+        assertEquals(1, change.getPrevious().getRevision());
+        assertEquals(3, change.getCurrent().getRevision());
+    }
+
+    public void testPut() {
+        StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        assertNull(cache.peek());
+        assertEquals(0, cache.getRevision());
+
+        OpenKarotzState first = cache.put(new OpenKarotzState(STATUS));
+        assertEquals(1, first.getRevision());
+
+        // Same content: same revision
+        assertSame(first, cache.put(new OpenKarotzState(STATUS)));
+        assertEquals(1, cache.getRevision());
+
+        OpenKarotzState second = cache.put(new OpenKarotzState(STATUS).withStatus(KarotzStatus.SLEEPING));
+        assertEquals(2, second.getRevision());
+        assertSame(second, cache.peek());
+    }
+
+    public void testRefreshDropped() throws Exception {
+        final StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        cache.put(new OpenKarotzState(STATUS));
+
+        // Poll started, its answer not received yet
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch answered = new CountDownLatch(1);
+        final OpenKarotzState[] polled = new OpenKarotzState[1];
+        Thread poll = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    polled[0] = cache.refresh(new StateCache.Loader() {
+
+                        @Override
+                        public OpenKarotzState load() throws IOException {
+                            loading.countDown();
+                            try {
+                                answered.await();
+                            } catch (InterruptedException e) {
+                                throw new IOException(e.getMessage());
+                            }
+                            return new OpenKarotzState(STATUS);
+                        }
+                    });
+                } catch (IOException e) {
+                    fail(e.getMessage());
+                }
+            }
+        });
+        poll.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // Meanwhile, the user puts the Karotz to sleep
+        OpenKarotzState slept = cache.update(new StateCache.Updater() {
+
+            @Override
+            public OpenKarotzState apply(OpenKarotzState state) {
+                return state.withStatus(KarotzStatus.SLEEPING);
+            }
+        });
+        answered.countDown();
+        poll.join(5000);
+
+        // Older poll answer dropped: still sleeping
+        assertSame(slept, polled[0]);
+        assertSame(slept, cache.peek());
+        assertEquals(2, cache.getRevision());
+        assertEquals(1, cache.getDropCount());
+
+        // Next poll published
+        assertEquals(KarotzStatus.AWAKE, cache.refresh(new StateCache.Loader() {
+
+            @Override
+            public OpenKarotzState load() {
+                return new OpenKarotzState(STATUS);
+            }
+        }).getStatus());
+        assertEquals(3, cache.getRevision());
+        assertEquals(1, cache.getDropCount());
+    }
+
+    public void testRestore() throws IOException {
+        StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        OpenKarotzState restored = StateStore.decode("200|AWAKE|00FF00|0|ENABLED|4|8");
+        assertTrue(cache.restore(restored));
+        assertTrue(cache.peek().isRestored());
+        assertEquals(1, cache.getRevision());
+
+        // Already cached
+        assertFalse(cache.restore(restored));
+
+        // Stale: loaded again, and fresh state published
+        final OpenKarotzState fresh = new OpenKarotzState(STATUS);
+        assertSame(fresh.getStatus(), cache.get(new StateCache.Loader() {
+
+            @Override
+            public OpenKarotzState load() {
+                return fresh;
+            }
+        }).getStatus());
+        assertFalse(cache.peek().isRestored());
+        assertEquals(2, cache.getRevision());
+
+        // Nothing to restore into a used cache
+        assertFalse(cache.restore(restored));
+    }
+
+    public void testRevalidateDropped() throws IOException {
+        final StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        final OpenKarotzState before = cache.put(new OpenKarotzState(STATUS));
+        cache.invalidate();
+
+        // Stale: revalidated, while a command changes the ears
+        assertSame(before, cache.get(new StateCache.Loader() {
+
+            @Override
+            public OpenKarotzState load() {
+                cache.update(new StateCache.Updater() {
+
+                    @Override
+                    public OpenKarotzState apply(OpenKarotzState state) {
+                        return state.withEarPositions(EarPosition.POSITION_4, EarPosition.POSITION_4);
+                    }
+                });
+                return new OpenKarotzState(STATUS);
+            }
+        }));
+
+        // Status read before the command not published
+        assertEquals(EarPosition.POSITION_4, cache.peek().getLeftEarPosition());
+        assertEquals(2, cache.getRevision());
+        assertEquals(1, cache.getDropCount());
+
+        // Revalidated again on next read
+        cache.invalidate();
+        final OpenKarotzState loaded = new OpenKarotzState(STATUS).withStatus(KarotzStatus.SLEEPING);
+        cache.get(new StateCache.Loader() {
+
+            @Override
+            public OpenKarotzState load() {
+                return loaded;
+            }
+        });
+        assertEquals(KarotzStatus.SLEEPING, cache.peek().getStatus());
+        assertEquals(1, cache.getDropCount());
+    }
+
+    public void testUpdate() {
+        StateCache cache = new StateCache(5000L, 60000L, DIRECT);
+        StateCache.Updater ears = new StateCache.Updater() {
+
+            @Override
+            public OpenKarotzState apply(OpenKarotzState state) {
+                return state.withEarPositions(EarPosition.POSITION_4, EarPosition.POSITION_8);
+            }
+        };
+
+        // Nothing cached
+        assertNull(cache.update(ears));
+
+        OpenKarotzState first = cache.put(new OpenKarotzState(STATUS));
+        OpenKarotzState updated = cache.update(ears);
+        assertEquals(2, updated.getRevision());
+        assertEquals(EarPosition.POSITION_4, cache.peek().getLeftEarPosition());
+        assertEquals(EarPosition.POSITION_8, cache.peek().getRightEarPosition());
+
+        // Previous state untouched
+        assertEquals(EarPosition.POSITION_1, first.getLeftEarPosition());
+
+        // No change: same revision
+        assertSame(updated, cache.update(ears));
+    }
+
+
+    private static final Executor DIRECT = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final String STATUS = "{\"version\":\"200\",\"ears_disabled\":\"0\",\"sleep\":\"0\",\"led_color\":\"0000FF\",\"led_pulse\":\"1\"}";
+}
@@ -0,0 +1,47 @@
+package com.github.hobbe.android.openkarotz.karotz;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarMode;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.EarPosition;
+import com.github.hobbe.android.openkarotz.karotz.IKarotz.KarotzStatus;
+
+public class StateStoreTest extends TestCase {
+
+    public void testDecode() {
+        OpenKarotzState state = StateStore.decode("200|SLEEPING|0000FF|1|DISABLED|3|16");
+        assertNotNull(state);
+        assertTrue(state.isRestored());
+        assertEquals("200", state.getVersion());
+        assertEquals(KarotzStatus.SLEEPING, state.getStatus());
+        assertEquals(0x0000FF, state.getLedColor());
+        assertTrue(state.isPulsing());
+        assertEquals(EarMode.DISABLED, state.getEarMode());
+        assertEquals(EarPosition.POSITION_3, state.getLeftEarPosition());
+        assertEquals(EarPosition.POSITION_16, state.getRightEarPosition());
+
+        assertNull(StateStore.decode("|AWAKE|00FF00|0|ENABLED|1|1").getVersion());
+    }
+
+    public void testEncode() {
+        OpenKarotzState state = new OpenKarotzState("200", KarotzStatus.AWAKE, 0xFF00FF00, false, EarMode.ENABLED, EarPosition.POSITION_4,
+                EarPosition.POSITION_8, false, 3);
+        String value = StateStore.encode(new KarotzSnapshot(state, 0L));
+        assertEquals("200|AWAKE|00FF00|0|ENABLED|4|8", value);
+
+        OpenKarotzState decoded = StateStore.decode(value);
+        assertTrue(decoded.isRestored());
+        assertEquals(0x00FF00, decoded.getLedColor());
+        assertEquals(state.getStatus(), decoded.getStatus());
+        assertEquals(state.getLeftEarPosition(), decoded.getLeftEarPosition());
+        assertEquals(state.getRightEarPosition(), decoded.getRightEarPosition());
+        assertEquals(value, StateStore.encode(new KarotzSnapshot(decoded, 0L)));
+    }
+
+    public void testInvalid() {
+        assertNull(StateStore.decode(""));
+        assertNull(StateStore.decode("200|AWAKE|00FF00|0|ENABLED|4"));
+        assertNull(StateStore.decode("200|AWAKE|GREEN|0|ENABLED|4|8"));
+        assertNull(StateStore.decode("200|AWAKE|00FF00|0|UNKNOWN|4|8"));
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.hobbe.android.openkarotz.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class RadioCatalogTest extends TestCase {
+
+    public void testBadMagic() throws IOException {
+        byte[] catalog = catalog(0x7B0A0922, 2);
+        try {
+            RadioCatalog.read(new ByteArrayInputStream(catalog));
+            fail("Not a catalog");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testCountMismatch() throws IOException {
+        byte[] catalog = catalog(MAGIC, 1);
+        try {
+            RadioCatalog.read(new ByteArrayInputStream(catalog));
+            fail("Radio count mismatch");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testRead() throws IOException {
+        RadioCatalog catalog = RadioCatalog.read(new ByteArrayInputStream(catalog(MAGIC, 2)));
+
+        RadioGroupModel[] groups = catalog.getGroups();
+        assertEquals(2, groups.length);
+        assertEquals(2, catalog.getRadioCount());
+
+        assertEquals("france", groups[0].getId());
+        assertEquals("France", groups[0].getName());
+        List<RadioModel> radios = groups[0].getRadios();
+        assertEquals(1, radios.size());
+        assertEquals("cheriefm", radios.get(0).getId());
+        assertEquals("Chérie FM", radios.get(0).getName());
+        assertEquals("http://cherie", radios.get(0).getUrl());
+
+        // Shared strings
+        assertEquals("France", groups[1].getRadios().get(0).getName());
+
+        // Defensive copy
+        groups[0] = null;
+        assertNotNull(catalog.getGroups()[0]);
+    }
+
+    public void testTruncated() throws IOException {
+        byte[] catalog = catalog(MAGIC, 2);
+        byte[] truncated = new byte[catalog.length - 1];
+        System.arraycopy(catalog, 0, truncated, 0, truncated.length);
+        try {
+            RadioCatalog.read(new ByteArrayInputStream(truncated));
+            fail("Truncated catalog");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] catalog(int magic, int radioCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeShort(1);
+
+        String[] strings = new String[] {
+                "france", "France", "cheriefm", "Chérie FM", "http://cherie", "world", "World", "rfi", "http://rfi"
+        };
+        out.writeShort(strings.length);
+        out.writeShort(2);
+        out.writeShort(radioCount);
+        for (String s : strings) {
+            out.writeUTF(s);
+        }
+
+        // Groups: id, name, first radio, radio count
+        writeShorts(out, 0, 1, 0, 1);
+        writeShorts(out, 5, 6, 1, 1);
+
+        // Radios: id, name, url
+        writeShorts(out, 2, 3, 4);
+        writeShorts(out, 7, 1, 8);
+
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void writeShorts(DataOutputStream out, int... values) throws IOException {
+        for (int value : values) {
+            out.writeShort(value);
+        }
+    }
+
+
+    private static final int MAGIC = 0x52434154;
+}
@@ -0,0 +1,84 @@
+package com.github.hobbe.android.openkarotz.model;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.model.RadioSearchIndex.Hit;
+
+public class RadioSearchIndexTest extends TestCase {
+
+    @Override
+    protected void setUp() {
+        RadioGroupModel france = new RadioGroupModel("france", "France");
+        france.addRadio(new RadioModel("cheriefm", "Chérie FM", "http://cherie"));
+        france.addRadio(new RadioModel("franceinter", "France Inter", "http://inter"));
+        france.addRadio(new RadioModel("franceculture", "France Culture", "http://culture"));
+        france.addRadio(new RadioModel("rtl", "RTL", "http://rtl"));
+
+        RadioGroupModel bleu = new RadioGroupModel("francebleu", "France Bleu Régions");
+        bleu.addRadio(new RadioModel("fbisere", "Isère", "http://isere"));
+        bleu.addRadio(new RadioModel("fbidf", "Île-de-France", "http://idf"));
+
+        index = new RadioSearchIndex(new RadioGroupModel[] {
+                france, bleu
+        });
+    }
+
+    public void testAccentsAndCase() {
+        assertIds(index.search("cherie", 10), "cheriefm");
+        assertIds(index.search("CHÉRIE fm", 10), "cheriefm");
+        assertIds(index.search("isere", 10), "fbisere");
+        assertIds(index.search("ile de", 10), "fbidf");
+    }
+
+    public void testFold() {
+        assertEquals("cherie fm", RadioSearchIndex.fold("Chérie FM"));
+        assertEquals("coeur", RadioSearchIndex.fold("Cœur"));
+        assertEquals(2, RadioSearchIndex.tokenize("ile-de").length);
+        assertEquals(0, RadioSearchIndex.tokenize(" - ").length);
+    }
+
+    public void testGroupWords() {
+        assertIds(index.search("France Bleu Isère", 10), "fbisere");
+    }
+
+    public void testLimit() {
+        assertEquals(1, index.search("france", 1).size());
+        assertTrue(index.search("france", 0).isEmpty());
+    }
+
+    public void testNoMatch() {
+        assertTrue(index.search("nostalgie", 10).isEmpty());
+        assertTrue(index.search("cherie inter", 10).isEmpty());
+        assertTrue(index.search("", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    public void testRanking() {
+        // Name prefix first, then other name words, then group words only, shortest names first
+        List<Hit> hits = index.search("fr", 10);
+        assertIds(hits, "franceinter", "franceculture", "fbidf", "rtl", "fbisere", "cheriefm");
+        assertEquals(0, hits.get(0).getRank());
+        assertEquals(2, hits.get(2).getRank());
+        assertEquals(3, hits.get(3).getRank());
+
+        // Id prefix
+        assertIds(index.search("fbi", 10), "fbisere", "fbidf");
+        assertIds(index.search("franceinter", 10), "franceinter");
+    }
+
+    public void testSize() {
+        assertEquals(6, index.size());
+    }
+
+    private static void assertIds(List<Hit> hits, String... ids) {
+        assertEquals(hits.toString(), ids.length, hits.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(hits.toString(), ids[i], hits.get(i).getRadio().getId());
+        }
+    }
+
+
+    private RadioSearchIndex index;
+}
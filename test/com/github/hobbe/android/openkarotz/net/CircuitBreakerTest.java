@@ -0,0 +1,54 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.net.CircuitBreaker.Permit;
+import com.github.hobbe.android.openkarotz.net.CircuitBreaker.State;
+
+public class CircuitBreakerTest extends TestCase {
+
+    public void testOpen() {
+        CircuitBreaker breaker = new CircuitBreaker("karotz", 3, 60000L);
+        assertEquals(Permit.CALL, breaker.acquire());
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(State.CLOSED, breaker.getState());
+
+        // A success resets the count
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(State.CLOSED, breaker.getState());
+
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(Permit.REJECT, breaker.acquire());
+        assertEquals(1, breaker.getRejectedCount());
+        assertTrue(breaker.getRetryDelay() > 0);
+        assertEquals(1, breaker.getTransitionCount(State.OPEN));
+    }
+
+    public void testProbe() {
+        CircuitBreaker breaker = new CircuitBreaker("karotz", 1, 0L);
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+
+        // Single probe at a time
+        assertEquals(Permit.PROBE, breaker.acquire());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertEquals(Permit.REJECT, breaker.acquire());
+
+        // Failed probe: open again
+        breaker.onFailure();
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTransitionCount(State.OPEN));
+
+        // Successful probe: closed
+        assertEquals(Permit.PROBE, breaker.acquire());
+        breaker.onSuccess();
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(Permit.CALL, breaker.acquire());
+        assertEquals(1, breaker.getTransitionCount(State.CLOSED));
+        assertEquals(2, breaker.getTransitionCount(State.HALF_OPEN));
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import junit.framework.TestCase;
+
+public class ConnectionPoolTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new StubHttpServer();
+        body = ResponseBuffer.obtain(64 * 1024);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        body.release();
+        server.close();
+    }
+
+    public void testIdleEvicted() throws Exception {
+        server.enqueue(OK);
+        ConnectionPool pool = new ConnectionPool(2, 10);
+
+        PooledConnection conn = pool.acquire(HOST, server.getPort(), TIMEOUT);
+        conn.get("/", TIMEOUT, body);
+        pool.release(conn);
+        assertEquals(1, pool.getIdleCount());
+
+        Thread.sleep(50);
+        pool.evictIdle();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.getEvictionCount());
+    }
+
+    public void testMaxIdle() throws Exception {
+        server.enqueue(OK);
+        server.enqueue(OK);
+        ConnectionPool pool = new ConnectionPool(1, 60000);
+
+        PooledConnection first = pool.acquire(HOST, server.getPort(), TIMEOUT);
+        PooledConnection second = pool.acquire(HOST, server.getPort(), TIMEOUT);
+        first.get("/", TIMEOUT, body);
+        second.get("/", TIMEOUT, body);
+
+        pool.release(first);
+        pool.release(second);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getEvictionCount());
+
+        // Most recently used kept
+        assertSame(second, pool.acquire(HOST, server.getPort(), TIMEOUT));
+        pool.clear();
+    }
+
+    public void testNotKeptAlive() throws Exception {
+        server.enqueue("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 2\r\n\r\nok", StubHttpServer.CLOSE);
+        ConnectionPool pool = new ConnectionPool(2, 60000);
+
+        PooledConnection conn = pool.acquire(HOST, server.getPort(), TIMEOUT);
+        conn.get("/", TIMEOUT, body);
+        pool.release(conn);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testReused() throws Exception {
+        server.enqueue(OK, OK);
+        ConnectionPool pool = new ConnectionPool(2, 60000);
+
+        PooledConnection conn = pool.acquire(HOST, server.getPort(), TIMEOUT);
+        conn.get("/", TIMEOUT, body);
+        pool.release(conn);
+
+        assertSame(conn, pool.acquire(HOST, server.getPort(), TIMEOUT));
+        conn.get("/", TIMEOUT, body);
+        pool.release(conn);
+
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+        assertEquals(1, server.getConnectionCount());
+        pool.clear();
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    public void testStaleEvicted() throws Exception {
+        server.enqueue(OK, StubHttpServer.CLOSE);
+        server.enqueue(OK);
+        ConnectionPool pool = new ConnectionPool(2, 60000);
+
+        PooledConnection conn = pool.acquire(HOST, server.getPort(), TIMEOUT);
+        conn.get("/", TIMEOUT, body);
+        pool.release(conn);
+
+        // Wait for the server side close to reach the client
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (conn.isValid() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        PooledConnection fresh = pool.acquire(HOST, server.getPort(), TIMEOUT);
+        assertFalse(conn == fresh);
+        assertEquals(1, pool.getEvictionCount());
+        assertEquals(0, pool.getHitCount());
+        assertEquals(2, pool.getMissCount());
+        fresh.close();
+    }
+
+
+    private StubHttpServer server;
+
+    private ResponseBuffer body;
+
+    private static final String HOST = "127.0.0.1";
+
+    private static final String OK = "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok";
+
+    private static final int TIMEOUT = 2000;
+}
@@ -0,0 +1,43 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import junit.framework.TestCase;
+
+public class LatencyHistogramTest extends TestCase {
+
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(40);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(400);
+        }
+        histogram.record(4000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(4000, histogram.getMax());
+        assertEquals((90 * 40 + 9 * 400 + 4000) / 100, histogram.getMean());
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(500, histogram.getPercentile(95));
+        assertEquals(500, histogram.getPercentile(99));
+        assertEquals(4000, histogram.getPercentile(100));
+    }
+
+    public void testOverflow() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(45000);
+        assertEquals(45000, histogram.getPercentile(50));
+
+        // Capped by the maximum
+        histogram = new LatencyHistogram();
+        histogram.record(12);
+        assertEquals(12, histogram.getPercentile(50));
+    }
+}
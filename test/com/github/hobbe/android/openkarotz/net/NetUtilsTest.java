@@ -0,0 +1,64 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import java.io.IOException;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+public class NetUtilsTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new StubHttpServer();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.close();
+    }
+
+    public void testHandlerFailureRecorded() throws Exception {
+        server.enqueue("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok", "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + "/cgi-bin/status");
+
+        try {
+            NetUtils.downloadUrl(url, new ResponseHandler<String>() {
+
+                @Override
+                public String handle(byte[] body, int length) throws IOException {
+                    throw new IllegalStateException("Cannot handle");
+                }
+            });
+            fail("Handler failure swallowed");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        EndpointMetrics metrics = NetUtils.getEndpointMetrics().get("127.0.0.1:" + server.getPort() + "/cgi-bin/status");
+        assertEquals(1, metrics.getRequestCount());
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(1, metrics.getLatencies().getCount());
+
+        assertEquals("ok", NetUtils.downloadUrl(url));
+        assertEquals(2, metrics.getRequestCount());
+        assertEquals(1, metrics.getErrorCount());
+    }
+
+    public void testHttpError() throws Exception {
+        server.enqueue("HTTP/1.1 500 Internal Server Error\r\nContent-Length: 0\r\n\r\n");
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + "/cgi-bin/fail");
+
+        try {
+            NetUtils.downloadUrl(url);
+            fail("HTTP error accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        EndpointMetrics metrics = NetUtils.getEndpointMetrics().get("127.0.0.1:" + server.getPort() + "/cgi-bin/fail");
+        assertEquals(1, metrics.getErrorCount());
+    }
+
+
+    private StubHttpServer server;
+}
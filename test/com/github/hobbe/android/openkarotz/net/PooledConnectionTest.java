@@ -0,0 +1,148 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import java.io.IOException;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+public class PooledConnectionTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        server = new StubHttpServer();
+        body = ResponseBuffer.obtain(64 * 1024);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        body.release();
+        server.close();
+    }
+
+    public void testChunked() throws Exception {
+        server.enqueue("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nX-Trailer: 1\r\n\r\n",
+                "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        PooledConnection conn = connect();
+
+        conn.get("/", TIMEOUT, body);
+        assertEquals("hello world", body.decode());
+        assertTrue(conn.isKeepAlive());
+
+        body.release();
+        conn.get("/", TIMEOUT, body);
+        assertEquals("ok", body.decode());
+        conn.close();
+    }
+
+    public void testContentLength() throws Exception {
+        server.enqueue("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello", "HTTP/1.1 404 Not Found\r\nContent-Length: 4\r\n\r\nnope");
+        PooledConnection conn = connect();
+
+        conn.get("/cgi-bin/status", TIMEOUT, body);
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("hello", body.decode());
+        assertTrue(conn.isKeepAlive());
+        assertEquals(1, conn.getRequestCount());
+
+        body.release();
+        conn.get("/cgi-bin/missing", TIMEOUT, body);
+        assertEquals(404, conn.getResponseCode());
+        assertEquals("nope", body.decode());
+        assertEquals(2, conn.getRequestCount());
+        assertEquals(1, server.getConnectionCount());
+        conn.close();
+    }
+
+    public void testEndOfStream() throws Exception {
+        server.enqueue("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n\r\nuntil the end", StubHttpServer.CLOSE);
+        PooledConnection conn = connect();
+
+        conn.get("/", TIMEOUT, body);
+        assertEquals("until the end", body.decode());
+        assertFalse(conn.isKeepAlive());
+        conn.close();
+    }
+
+    public void testHead() throws Exception {
+        server.enqueue("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\n", "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello");
+        PooledConnection conn = connect();
+
+        conn.head("/", TIMEOUT);
+        assertEquals(200, conn.getResponseCode());
+        assertTrue(conn.isKeepAlive());
+
+        conn.get("/", TIMEOUT, body);
+        assertEquals("hello", body.decode());
+        conn.close();
+    }
+
+    public void testInterimSkipped() throws Exception {
+        server.enqueue("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 102 Processing\r\nX-Step: 1\r\n\r\nHTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        PooledConnection conn = connect();
+
+        conn.get("/", TIMEOUT, body);
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("ok", body.decode());
+        assertTrue(conn.isKeepAlive());
+        conn.close();
+    }
+
+    public void testLineTooLong() throws Exception {
+        StringBuilder header = new StringBuilder("X-Junk: ");
+        for (int i = 0; i < 10000; i++) {
+            header.append('x');
+        }
+        server.enqueue("HTTP/1.1 200 OK\r\n" + header + "\r\nContent-Length: 2\r\n\r\nok");
+        PooledConnection conn = connect();
+
+        try {
+            conn.get("/", TIMEOUT, body);
+            fail("Line too long accepted");
+        } catch (IOException e) {
+            // Expected
+        }
+        conn.close();
+    }
+
+    public void testNoContent() throws Exception {
+        // No Content-Length and the connection kept open: reading to the end would time out
+        server.enqueue("HTTP/1.1 204 No Content\r\n\r\n", "HTTP/1.1 304 Not Modified\r\nETag: \"1\"\r\n\r\n",
+                "HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        PooledConnection conn = connect();
+
+        conn.get("/", TIMEOUT, body);
+        assertEquals(204, conn.getResponseCode());
+        assertEquals(0, body.length());
+        assertTrue(conn.isKeepAlive());
+
+        conn.get("/", TIMEOUT, body);
+        assertEquals(304, conn.getResponseCode());
+        assertEquals(0, body.length());
+
+        conn.get("/", TIMEOUT, body);
+        assertEquals("ok", body.decode());
+        conn.close();
+    }
+
+    public void testStaleRetried() throws Exception {
+        // First connection closed by the server when the second request comes in
+        server.enqueue("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nfirst", StubHttpServer.DROP);
+        server.enqueue("HTTP/1.1 200 OK\r\nContent-Length: 6\r\n\r\nsecond");
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + "/cgi-bin/status");
+
+        assertEquals("first", NetUtils.downloadUrl(url));
+        assertEquals("second", NetUtils.downloadUrl(url));
+        assertEquals(2, server.getConnectionCount());
+    }
+
+    private PooledConnection connect() throws IOException {
+        return new PooledConnection("127.0.0.1", server.getPort(), TIMEOUT);
+    }
+
+
+    private StubHttpServer server;
+
+    private ResponseBuffer body;
+
+    private static final int TIMEOUT = 2000;
+}
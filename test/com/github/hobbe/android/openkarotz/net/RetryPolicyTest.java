@@ -0,0 +1,18 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import junit.framework.TestCase;
+
+public class RetryPolicyTest extends TestCase {
+
+    public void testDelay() {
+        RetryPolicy retry = new RetryPolicy(3, 100L, 300L);
+        assertTrue(retry.isRetryAllowed(2));
+        assertFalse(retry.isRetryAllowed(3));
+        for (int i = 0; i < 100; i++) {
+            long first = retry.getDelay(1);
+            assertTrue(first >= 0 && first <= 100);
+            long capped = retry.getDelay(10);
+            assertTrue(capped >= 0 && capped <= 300);
+        }
+    }
+}
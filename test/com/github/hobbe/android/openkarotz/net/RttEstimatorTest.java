@@ -0,0 +1,61 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import junit.framework.TestCase;
+
+public class RttEstimatorTest extends TestCase {
+
+    public void testBackoff() {
+        RttEstimator rtt = new RttEstimator(6000, 500, 6000);
+        rtt.addSample(100);
+        assertEquals(500, rtt.getTimeout());
+
+        rtt.onTimeout();
+        assertEquals(1000, rtt.getTimeout());
+        rtt.onTimeout();
+        assertEquals(2000, rtt.getTimeout());
+        for (int i = 0; i < 10; i++) {
+            rtt.onTimeout();
+        }
+        assertEquals(6000, rtt.getTimeout());
+        assertEquals(12, rtt.getTimeoutCount());
+
+        // Back to the estimation with the next sample
+        rtt.addSample(100);
+        assertEquals(500, rtt.getTimeout());
+    }
+
+    public void testInitial() {
+        RttEstimator rtt = new RttEstimator(6000, 500, 10000);
+        assertEquals(6000, rtt.getTimeout());
+        assertEquals(-1, rtt.getSmoothedRtt());
+        assertEquals(-1, rtt.getMinRtt());
+        assertEquals(0, rtt.getSampleCount());
+    }
+
+    public void testSamples() {
+        RttEstimator rtt = new RttEstimator(10000, 100, 10000);
+        rtt.addSample(400);
+        assertEquals(400, rtt.getSmoothedRtt());
+        assertEquals(200, rtt.getRttVariation());
+        assertEquals(1200, rtt.getTimeout());
+
+        // rttvar = 3/4 * 200 + 1/4 * 400, srtt = 7/8 * 400 + 1/8 * 800
+        rtt.addSample(800);
+        assertEquals(450, rtt.getSmoothedRtt());
+        assertEquals(250, rtt.getRttVariation());
+        assertEquals(1450, rtt.getTimeout());
+
+        assertEquals(400, rtt.getMinRtt());
+        assertEquals(800, rtt.getMaxRtt());
+        assertEquals(2, rtt.getSampleCount());
+    }
+
+    public void testSteady() {
+        RttEstimator rtt = new RttEstimator(10000, 100, 10000);
+        for (int i = 0; i < 100; i++) {
+            rtt.addSample(200);
+        }
+        assertEquals(200, rtt.getSmoothedRtt());
+        assertTrue(rtt.getTimeout() < 210);
+    }
+}
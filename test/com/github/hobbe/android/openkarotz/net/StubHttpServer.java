@@ -0,0 +1,133 @@
+package com.github.hobbe.android.openkarotz.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Stand-in HTTP server answering each accepted connection with a script of raw responses, one per request.
+ * <p>
+ * A {@link #DROP} entry reads the request and closes the connection without answering, a {@link #CLOSE} entry closes
+ * it right away. Once its script is done, a connection is kept open until the server is closed.
+ */
+class StubHttpServer {
+
+    StubHttpServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread t = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket s = server.accept();
+                        final String[] script;
+                        synchronized (scripts) {
+                            sockets.add(s);
+                            connectionCount++;
+                            script = scripts.poll();
+                        }
+                        if (script == null) {
+                            continue;
+                        }
+                        Thread worker = new Thread(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                serve(s, script);
+                            }
+                        });
+                        worker.setDaemon(true);
+                        worker.start();
+                    }
+                } catch (IOException e) {
+                    // Server closed
+                }
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+    }
+
+    void close() throws IOException {
+        server.close();
+        synchronized (scripts) {
+            for (Socket s : sockets) {
+                s.close();
+            }
+        }
+    }
+
+    /**
+     * Add the script of the next accepted connection.
+     */
+    void enqueue(String... responses) {
+        synchronized (scripts) {
+            scripts.add(responses);
+        }
+    }
+
+    int getConnectionCount() {
+        synchronized (scripts) {
+            return connectionCount;
+        }
+    }
+
+    int getPort() {
+        return server.getLocalPort();
+    }
+
+    private void serve(Socket s, String[] script) {
+        try {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            for (String response : script) {
+                if (response == CLOSE) {
+                    break;
+                }
+                readRequest(in);
+                if (response == DROP) {
+                    break;
+                }
+                out.write(response.getBytes("ISO-8859-1"));
+                out.flush();
+            }
+            if (script.length > 0 && (script[script.length - 1] == CLOSE || script[script.length - 1] == DROP)) {
+                s.close();
+            }
+        } catch (IOException e) {
+            // Client gone
+        }
+    }
+
+    private static void readRequest(InputStream in) throws IOException {
+        // Requests have no body: read up to the blank line
+        int matched = 0;
+        while (matched < 4) {
+            int c = in.read();
+            if (c == -1) {
+                throw new EOFException();
+            }
+            matched = (c == (matched % 2 == 0 ? '\r' : '\n')) ? matched + 1 : (c == '\r' ? 1 : 0);
+        }
+    }
+
+
+    private final ServerSocket server;
+
+    private final LinkedList<String[]> scripts = new LinkedList<String[]>();
+    private final List<Socket> sockets = new ArrayList<Socket>();
+    private int connectionCount = 0;
+
+    static final String CLOSE = new String("<close>");
+
+    static final String DROP = new String("<drop>");
+}
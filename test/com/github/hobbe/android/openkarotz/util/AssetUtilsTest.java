@@ -0,0 +1,20 @@
+package com.github.hobbe.android.openkarotz.util;
+
+import junit.framework.TestCase;
+
+public class AssetUtilsTest extends TestCase {
+
+    public void testInSampleSize() {
+        // Logo already at the button size
+        assertEquals(1, AssetUtils.calculateInSampleSize(80, 60, 80, 80));
+
+        // Never smaller than requested
+        assertEquals(2, AssetUtils.calculateInSampleSize(320, 240, 120, 120));
+        assertEquals(4, AssetUtils.calculateInSampleSize(320, 320, 80, 80));
+        assertEquals(2, AssetUtils.calculateInSampleSize(320, 160, 80, 80));
+
+        // No constraint
+        assertEquals(1, AssetUtils.calculateInSampleSize(320, 320, 0, 0));
+        assertEquals(4, AssetUtils.calculateInSampleSize(320, 100, 80, 0));
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.hobbe.android.openkarotz.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.github.hobbe.android.openkarotz.model.RadioGroupModel;
+import com.github.hobbe.android.openkarotz.model.RadioModel;
+
+public class CatalogLoaderTest extends TestCase {
+
+    public void testColors() throws IOException {
+        List<String> colors = CatalogLoader.readColors(json("{ \"colors\": [ { \"code\": \"FFFFFF\" }, { \"name\": \"red\", \"code\": \"FF0000\" } ] }"));
+        assertEquals(2, colors.size());
+        assertEquals("FFFFFF", colors.get(0));
+        assertEquals("FF0000", colors.get(1));
+    }
+
+    public void testMissingKey() {
+        try {
+            CatalogLoader.readColors(json("{ \"colors\": [ { \"name\": \"red\" } ] }"));
+            fail("Missing code");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        try {
+            readRadios("{ \"radios\": [ { \"id\": \"france\", \"name\": \"France\", \"radios\": [ { \"id\": \"fip\", \"name\": \"FIP\" } ] } ] }");
+            fail("Missing url");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testRadios() throws IOException {
+        List<RadioGroupModel> groups = readRadios("{ \"version\": 2, \"radios\": [ "
+                + "{ \"id\": \"france\", \"name\": \"France\", \"radios\": [ "
+                + "{ \"id\": \"cheriefm\", \"name\": \"Ch\\u00e9rie FM\", \"url\": \"http://cherie\", \"tags\": [ \"pop\" ] }, "
+                + "{ \"id\": \"fip\", \"name\": \"FIP\", \"url\": \"http://fip\" } ] }, "
+                + "{ \"radios\": [], \"name\": \"World\", \"id\": \"world\" } ] }");
+
+        assertEquals(2, groups.size());
+        assertEquals("france", groups.get(0).getId());
+        assertEquals("France", groups.get(0).getName());
+
+        List<RadioModel> radios = groups.get(0).getRadios();
+        assertEquals(2, radios.size());
+        assertEquals("cheriefm", radios.get(0).getId());
+        assertEquals("Chérie FM", radios.get(0).getName());
+        assertEquals("http://cherie", radios.get(0).getUrl());
+        assertEquals("fip", radios.get(1).getId());
+
+        // Keys in any order
+        assertEquals("world", groups.get(1).getId());
+        assertTrue(groups.get(1).getRadios().isEmpty());
+    }
+
+    private static InputStream json(String content) throws IOException {
+        return new ByteArrayInputStream(content.getBytes("UTF-8"));
+    }
+
+    private static List<RadioGroupModel> readRadios(String content) throws IOException {
+        final List<RadioGroupModel> groups = new ArrayList<RadioGroupModel>();
+        CatalogLoader.readRadios(json(content), new CatalogLoader.GroupListener() {
+
+            @Override
+            public void onGroup(RadioGroupModel group) {
+                groups.add(group);
+            }
+        });
+        return groups;
+    }
+}
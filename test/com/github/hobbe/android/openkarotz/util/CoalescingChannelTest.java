@@ -0,0 +1,193 @@
+package com.github.hobbe.android.openkarotz.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class CoalescingChannelTest extends TestCase {
+
+    public void testDuplicateSuppressed() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSink sink = new RecordingSink();
+        CoalescingChannel<Integer> channel = new CoalescingChannel<Integer>(executor, sink);
+
+        channel.offer(Integer.valueOf(1));
+        executor.runAll();
+        channel.offer(Integer.valueOf(1));
+        executor.runAll();
+        assertEquals(Collections.singletonList(Integer.valueOf(1)), sink.values);
+        assertEquals(1, channel.getSuppressedCount());
+
+        // Forgotten: delivered again
+        channel.forget();
+        channel.offer(Integer.valueOf(1));
+        executor.runAll();
+        assertEquals(2, sink.values.size());
+    }
+
+    public void testFailedDeliveryRetried() {
+        ManualExecutor executor = new ManualExecutor();
+        final List<Integer> values = new ArrayList<Integer>();
+        CoalescingChannel<Integer> channel = new CoalescingChannel<Integer>(executor, new CoalescingChannel.Sink<Integer>() {
+
+            @Override
+            public void deliver(Integer value) throws Exception {
+                values.add(value);
+                if (values.size() == 1) {
+                    throw new Exception("Karotz offline");
+                }
+            }
+        });
+
+        channel.offer(Integer.valueOf(1));
+        executor.runAll();
+        assertFalse(channel.isBusy());
+
+        // Not suppressed: the first delivery failed
+        channel.offer(Integer.valueOf(1));
+        executor.runAll();
+        assertEquals(2, values.size());
+    }
+
+    public void testLatestWins() {
+        ManualExecutor executor = new ManualExecutor();
+        RecordingSink sink = new RecordingSink();
+        CoalescingChannel<Integer> channel = new CoalescingChannel<Integer>(executor, sink);
+
+        channel.offer(Integer.valueOf(1));
+        channel.offer(Integer.valueOf(2));
+        channel.offer(Integer.valueOf(3));
+        assertTrue(channel.isBusy());
+
+        // Single delivery scheduled, of the newest value
+        assertEquals(1, executor.tasks.size());
+        executor.runAll();
+        assertEquals(Collections.singletonList(Integer.valueOf(3)), sink.values);
+        assertEquals(2, channel.getDroppedCount());
+        assertEquals(1, channel.getDeliveredCount());
+        assertFalse(channel.isBusy());
+    }
+
+    public void testRejected() {
+        RecordingSink sink = new RecordingSink();
+        final boolean[] reject = new boolean[] {
+                true
+        };
+        final ManualExecutor executor = new ManualExecutor();
+        CoalescingChannel<Integer> channel = new CoalescingChannel<Integer>(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                if (reject[0]) {
+                    throw new RejectedExecutionException();
+                }
+                executor.execute(command);
+            }
+        }, sink);
+
+        channel.offer(Integer.valueOf(1));
+        assertTrue(executor.tasks.isEmpty());
+
+        // Next offer schedules again
+        reject[0] = false;
+        channel.offer(Integer.valueOf(2));
+        executor.runAll();
+        assertEquals(Collections.singletonList(Integer.valueOf(2)), sink.values);
+    }
+
+    public void testSingleInFlight() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        final CoalescingChannel<Integer> channel = new CoalescingChannel<Integer>(pool, new CoalescingChannel.Sink<Integer>() {
+
+            @Override
+            public void deliver(Integer value) throws Exception {
+                if (inFlight.incrementAndGet() > 1) {
+                    overlaps.incrementAndGet();
+                }
+                Thread.sleep(1);
+                values.add(value);
+                inFlight.decrementAndGet();
+            }
+        });
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int base = t * 1000;
+            threads[t] = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        channel.offer(Integer.valueOf(base + i));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Last offer always delivered
+        channel.offer(Integer.valueOf(-1));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (channel.isBusy() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(0, overlaps.get());
+        assertEquals(Integer.valueOf(-1), values.get(values.size() - 1));
+        assertEquals(801, channel.getDeliveredCount() + channel.getDroppedCount() + channel.getSuppressedCount());
+    }
+
+
+    private static class ManualExecutor implements Executor {
+
+        public ManualExecutor() {
+            // Nothing to do
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+
+
+        final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+    }
+
+    private static class RecordingSink implements CoalescingChannel.Sink<Integer> {
+
+        public RecordingSink() {
+            // Nothing to do
+        }
+
+        @Override
+        public void deliver(Integer value) {
+            values.add(value);
+        }
+
+
+        final List<Integer> values = new ArrayList<Integer>();
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.hobbe.android.openkarotz.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class SingleFlightTest extends TestCase {
+
+    public void testCollapsed() throws Exception {
+        final Object value = new Object();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        List<Caller> callers = run(new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                return value;
+            }
+        }, release);
+
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.getExecutedCount());
+        assertEquals(THREADS - 1, flight.getCollapsedCount());
+        assertEquals(0, flight.getInFlightCount());
+        for (Caller caller : callers) {
+            assertNull(caller.error);
+            assertSame(value, caller.result);
+        }
+    }
+
+    public void testFailureShared() throws Exception {
+        final IOException failure = new IOException("Karotz unreachable");
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        List<Caller> callers = run(new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                calls.incrementAndGet();
+                release.await();
+                throw failure;
+            }
+        }, release);
+
+        assertEquals(1, calls.get());
+        assertEquals(THREADS - 1, flight.getCollapsedCount());
+        for (Caller caller : callers) {
+            assertNull(caller.result);
+            assertSame(failure, caller.error);
+        }
+    }
+
+    public void testNotCollapsedOnceDone() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Callable<Object> call = new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                return Integer.valueOf(calls.incrementAndGet());
+            }
+        };
+
+        assertEquals(Integer.valueOf(1), flight.execute("status", call));
+        assertEquals(Integer.valueOf(2), flight.execute("status", call));
+        assertEquals(Integer.valueOf(3), flight.execute("ears", call));
+        assertEquals(3, flight.getExecutedCount());
+        assertEquals(0, flight.getCollapsedCount());
+    }
+
+    /**
+     * Run the call from all threads at once on the same key. The call is released once all other threads joined it.
+     */
+    private List<Caller> run(final Callable<Object> call, CountDownLatch release) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Caller> callers = new ArrayList<Caller>();
+        for (int i = 0; i < THREADS; i++) {
+            Caller caller = new Caller(start, call);
+            callers.add(caller);
+            caller.start();
+        }
+        start.countDown();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (flight.getCollapsedCount() < THREADS - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for (Caller caller : callers) {
+            caller.join(TIMEOUT);
+            assertFalse(caller.isAlive());
+        }
+        return callers;
+    }
+
+
+    private class Caller extends Thread {
+
+        public Caller(CountDownLatch start, Callable<Object> call) {
+            this.start = start;
+            this.call = call;
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                result = flight.execute("status", call);
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+
+
+        private final CountDownLatch start;
+        private final Callable<Object> call;
+
+        volatile Object result = null;
+        volatile Exception error = null;
+    }
+
+
+    private final SingleFlight<String, Object> flight = new SingleFlight<String, Object>();
+
+    private static final int THREADS = 8;
+
+    private static final long TIMEOUT = 5000;
+}
@@ -0,0 +1,87 @@
+package com.github.hobbe.android.openkarotz.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import android.graphics.Rect;
+
+public class TextureAtlasTest extends TestCase {
+
+    public void testBadMagic() throws IOException {
+        byte[] index = index(0x89504E47, 1, 256, 128, "bfm", 0, 0, 80, 80);
+        try {
+            TextureAtlas.readIndex(new ByteArrayInputStream(index));
+            fail("Not an index");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testBadVersion() throws IOException {
+        byte[] index = index(MAGIC, 2, 256, 128, "bfm", 0, 0, 80, 80);
+        try {
+            TextureAtlas.readIndex(new ByteArrayInputStream(index));
+            fail("Unsupported version");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testOutOfBounds() throws IOException {
+        byte[] index = index(MAGIC, 1, 256, 128, "bfm", 200, 0, 80, 80);
+        try {
+            TextureAtlas.readIndex(new ByteArrayInputStream(index));
+            fail("Region out of bounds");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    public void testReadIndex() throws IOException {
+        byte[] index = index(MAGIC, 1, 256, 128, "bfm", 2, 2, 80, 80, "fip", 84, 2, 80, 33, "rtl", 166, 2, 79, 80);
+        Map<String, Rect> regions = TextureAtlas.readIndex(new ByteArrayInputStream(index));
+
+        assertEquals(3, regions.size());
+        assertEquals(new Rect(2, 2, 82, 82), regions.get("bfm"));
+        assertEquals(new Rect(84, 2, 164, 35), regions.get("fip"));
+        assertEquals(79, regions.get("rtl").width());
+        assertNull(regions.get("europe1"));
+    }
+
+    public void testTruncated() throws IOException {
+        byte[] index = index(MAGIC, 1, 256, 128, "bfm", 2, 2, 80, 80);
+        byte[] truncated = new byte[index.length - 3];
+        System.arraycopy(index, 0, truncated, 0, truncated.length);
+        try {
+            TextureAtlas.readIndex(new ByteArrayInputStream(truncated));
+            fail("Truncated index");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static byte[] index(int magic, int version, int width, int height, Object... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(magic);
+        out.writeShort(version);
+        out.writeShort(width);
+        out.writeShort(height);
+        out.writeShort(entries.length / 5);
+        for (int i = 0; i < entries.length; i += 5) {
+            out.writeUTF((String) entries[i]);
+            for (int j = 1; j < 5; j++) {
+                out.writeShort(((Integer) entries[i + j]).intValue());
+            }
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+
+    private static final int MAGIC = 0x5241544C;
+}
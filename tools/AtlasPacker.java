@@ -0,0 +1,219 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Build-time tool packing a directory of PNG images into a single texture atlas and its binary index.
+ * <p>
+ * Images are packed on shelves, tallest first, with a transparent padding so that filtering does not bleed
+ * neighbours into each other. The image id is the file name without extension. The index, read at runtime by
+ * {@code com.github.hobbe.android.openkarotz.util.TextureAtlas}, is a big-endian stream:
+ *
+ * <pre>
+ * int    magic 'RATL'
+ * short  version (1)
+ * short  atlas width, atlas height
+ * short  entry count
+ * entry: UTF id, short x, short y, short width, short height
+ * </pre>
+ *
+ * Usage, from the project root, whenever a logo is added or changed:
+ *
+ * <pre>
+ * java tools/AtlasPacker.java assets/radios assets/radios_atlas
+ * </pre>
+ *
+ * which writes {@code assets/radios_atlas.png} and {@code assets/radios_atlas.idx}.
+ */
+public class AtlasPacker {
+
+    /**
+     * Initialize a new packer.
+     * @param maxWidth the atlas width in pixels
+     * @param padding the transparent padding around each image, in pixels
+     */
+    public AtlasPacker(int maxWidth, int padding) {
+        this.maxWidth = maxWidth;
+        this.padding = padding;
+    }
+
+    /**
+     * Pack the PNG images of a directory.
+     * @param dir the directory
+     * @param output the output path, without extension
+     * @throws IOException if an image cannot be read, or the atlas cannot be written
+     */
+    public void pack(File dir, String output) throws IOException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(File d, String name) {
+                return name.endsWith(PNG);
+            }
+        });
+        if (files == null || files.length == 0) {
+            throw new IOException("No PNG image in " + dir);
+        }
+        Arrays.sort(files);
+
+        List<Entry> entries = new ArrayList<Entry>(files.length);
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException("Cannot decode " + file);
+            }
+            if (image.getWidth() + 2 * padding > maxWidth) {
+                throw new IOException("Image wider than the atlas: " + file);
+            }
+            String name = file.getName();
+            entries.add(new Entry(name.substring(0, name.length() - PNG.length()), image));
+        }
+
+        int height = layout(entries);
+
+        BufferedImage atlas = new BufferedImage(maxWidth, height, BufferedImage.TYPE_INT_ARGB);
+        for (Entry entry : entries) {
+            atlas.getGraphics().drawImage(entry.image, entry.x, entry.y, null);
+        }
+        ImageIO.write(atlas, "png", new File(output + PNG));
+
+        writeIndex(entries, height, new File(output + INDEX));
+
+        System.out.println("Packed " + entries.size() + " images into " + maxWidth + "x" + height + ": " + output + PNG);
+    }
+
+    private int layout(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<Entry>(entries);
+        Collections.sort(sorted, new Comparator<Entry>() {
+
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                int h = e2.image.getHeight() - e1.image.getHeight();
+                return (h != 0 ? h : e1.id.compareTo(e2.id));
+            }
+        });
+
+        int x = padding;
+        int y = padding;
+        int shelfHeight = 0;
+        for (Entry entry : sorted) {
+            int w = entry.image.getWidth();
+            int h = entry.image.getHeight();
+            if (x + w + padding > maxWidth) {
+                // Next shelf
+                x = padding;
+                y += shelfHeight + padding;
+                shelfHeight = 0;
+            }
+            entry.x = x;
+            entry.y = y;
+            x += w + padding;
+            shelfHeight = Math.max(shelfHeight, h);
+        }
+        return y + shelfHeight + padding;
+    }
+
+    private void writeIndex(List<Entry> entries, int height, File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(maxWidth);
+            out.writeShort(height);
+            out.writeShort(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.id);
+                out.writeShort(entry.x);
+                out.writeShort(entry.y);
+                out.writeShort(entry.image.getWidth());
+                out.writeShort(entry.image.getHeight());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Pack the images of a directory.
+     * @param args the image directory and the output path, without extension
+     * @throws IOException if the atlas cannot be built
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java AtlasPacker <image directory> <output path without extension>");
+            System.exit(1);
+        }
+        new AtlasPacker(DEFAULT_WIDTH, DEFAULT_PADDING).pack(new File(args[0]), args[1]);
+    }
+
+
+    private static class Entry {
+
+        public Entry(String id, BufferedImage image) {
+            this.id = id;
+            this.image = image;
+        }
+
+
+        final String id;
+        final BufferedImage image;
+
+        int x;
+        int y;
+    }
+
+
+    private final int maxWidth;
+    private final int padding;
+
+    private static final int MAGIC = 0x5241544C; // 'RATL'
+
+    private static final int VERSION = 1;
+
+    private static final int DEFAULT_WIDTH = 1024;
+
+    private static final int DEFAULT_PADDING = 2;
+
+    private static final String PNG = ".png";
+
+    private static final String INDEX = ".idx";
+}
@@ -0,0 +1,359 @@
+/*
+ * OpenKarotz-Android
+ * http://github.com/hobbe/OpenKarotz-Android
+ *
+ * Copyright (c) 2014 Olivier Bagot (http://github.com/hobbe)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *
+ * http://opensource.org/licenses/MIT
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build-time tool compiling the radio list {@code radios.json} into the binary catalog read at runtime by
+ * {@code com.github.hobbe.android.openkarotz.model.RadioCatalog}, so that no JSON is parsed on the device.
+ * <p>
+ * The catalog is a big-endian stream made of a header, a table of the distinct strings, then fixed-width records
+ * referring to strings by index:
+ *
+ * <pre>
+ * int    magic 'RCAT'
+ * short  version (1)
+ * short  string count, group count, radio count
+ * string table: UTF string, in index order
+ * group record: short id, short name, short first radio, short radio count
+ * radio record: short id, short name, short url
+ * </pre>
+ *
+ * Usage, from the project root, whenever {@code radios.json} is changed:
+ *
+ * <pre>
+ * java tools/RadioCatalogCompiler.java assets/radios.json assets/radios.bin
+ * </pre>
+ */
+public class RadioCatalogCompiler {
+
+    /**
+     * Initialize a new compiler.
+     */
+    public RadioCatalogCompiler() {
+        // Nothing to do
+    }
+
+    /**
+     * Compile a radio list.
+     * @param source the JSON radio list
+     * @param target the binary catalog
+     * @throws IOException if the radio list cannot be read or is invalid, or the catalog cannot be written
+     */
+    @SuppressWarnings("unchecked")
+    public void compile(File source, File target) throws IOException {
+        Object json;
+        InputStream is = new FileInputStream(source);
+        try {
+            json = new JsonParser(new InputStreamReader(is, "UTF-8")).parse();
+        } finally {
+            is.close();
+        }
+
+        List<Object> groups = (List<Object>) get(json, "radios", List.class);
+        List<int[]> groupRecords = new ArrayList<int[]>();
+        List<int[]> radioRecords = new ArrayList<int[]>();
+
+        for (Object group : groups) {
+            List<Object> radios = (List<Object>) get(group, "radios", List.class);
+            groupRecords.add(new int[] {
+                    intern(getString(group, "id")), intern(getString(group, "name")), radioRecords.size(), radios.size()
+            });
+            for (Object radio : radios) {
+                radioRecords.add(new int[] {
+                        intern(getString(radio, "id")), intern(getString(radio, "name")), intern(getString(radio, "url"))
+                });
+            }
+        }
+
+        if (strings.size() > MAX_COUNT || radioRecords.size() > MAX_COUNT) {
+            throw new IOException("Radio list too large for the catalog format");
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(strings.size());
+            out.writeShort(groupRecords.size());
+            out.writeShort(radioRecords.size());
+            for (String s : strings) {
+                out.writeUTF(s);
+            }
+            for (int[] record : groupRecords) {
+                writeRecord(out, record);
+            }
+            for (int[] record : radioRecords) {
+                writeRecord(out, record);
+            }
+        } finally {
+            out.close();
+        }
+
+        System.out.println("Compiled " + groupRecords.size() + " groups, " + radioRecords.size() + " radios, " + strings.size() + " strings into "
+                + target + " (" + target.length() + " bytes)");
+    }
+
+    private int intern(String s) {
+        Integer index = stringIndex.get(s);
+        if (index == null) {
+            index = Integer.valueOf(strings.size());
+            strings.add(s);
+            stringIndex.put(s, index);
+        }
+        return index.intValue();
+    }
+
+    private static Object get(Object object, String key, Class<?> type) throws IOException {
+        if (!(object instanceof Map)) {
+            throw new IOException("Expected an object with key " + key + ", got: " + object);
+        }
+        Object value = ((Map<?, ?>) object).get(key);
+        if (!type.isInstance(value)) {
+            throw new IOException("Expected " + type.getSimpleName() + " for key " + key + ", got: " + value);
+        }
+        return value;
+    }
+
+    private static String getString(Object object, String key) throws IOException {
+        return (String) get(object, key, String.class);
+    }
+
+    /**
+     * Compile a radio list.
+     * @param args the JSON radio list and the binary catalog paths
+     * @throws IOException if the catalog cannot be compiled
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java RadioCatalogCompiler <radios.json> <catalog>");
+            System.exit(1);
+        }
+        new RadioCatalogCompiler().compile(new File(args[0]), new File(args[1]));
+    }
+
+    private static void writeRecord(DataOutputStream out, int[] record) throws IOException {
+        for (int field : record) {
+            out.writeShort(field);
+        }
+    }
+
+
+    /**
+     * Minimal JSON parser, enough for the radio list: objects become maps, arrays lists, scalars strings.
+     */
+    private static class JsonParser {
+
+        public JsonParser(Reader reader) {
+            this.reader = reader;
+        }
+
+        public Object parse() throws IOException {
+            next();
+            Object value = readValue();
+            skipWhitespace();
+            if (c != -1) {
+                throw error("Trailing content");
+            }
+            return value;
+        }
+
+        private IOException error(String message) {
+            return new IOException(message + " at offset " + offset);
+        }
+
+        private void expect(char expected) throws IOException {
+            skipWhitespace();
+            if (c != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+            next();
+        }
+
+        private void next() throws IOException {
+            c = reader.read();
+            offset++;
+        }
+
+        private List<Object> readArray() throws IOException {
+            List<Object> list = new ArrayList<Object>();
+            next();
+            skipWhitespace();
+            if (c == ']') {
+                next();
+                return list;
+            }
+            while (true) {
+                list.add(readValue());
+                skipWhitespace();
+                if (c == ']') {
+                    next();
+                    return list;
+                }
+                expect(',');
+            }
+        }
+
+        private Map<String, Object> readObject() throws IOException {
+            Map<String, Object> map = new LinkedHashMap<String, Object>();
+            next();
+            skipWhitespace();
+            if (c == '}') {
+                next();
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                if (c != '"') {
+                    throw error("Expected a key");
+                }
+                String key = readString();
+                expect(':');
+                map.put(key, readValue());
+                skipWhitespace();
+                if (c == '}') {
+                    next();
+                    return map;
+                }
+                expect(',');
+            }
+        }
+
+        private String readScalar() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            while (c != -1 && ",]} \t\r\n".indexOf(c) < 0) {
+                sb.append((char) c);
+                next();
+            }
+            if (sb.length() == 0) {
+                throw error("Unexpected character");
+            }
+            return sb.toString();
+        }
+
+        private String readString() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            next();
+            while (c != '"') {
+                if (c == -1) {
+                    throw error("Unterminated string");
+                }
+                if (c == '\\') {
+                    next();
+                    switch (c) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            next();
+                            hex[i] = (char) c;
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(new String(hex), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        break;
+                    default:
+                        sb.append((char) c);
+                        break;
+                    }
+                } else {
+                    sb.append((char) c);
+                }
+                next();
+            }
+            next();
+            return sb.toString();
+        }
+
+        private Object readValue() throws IOException {
+            skipWhitespace();
+            switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            default:
+                return readScalar();
+            }
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                next();
+            }
+        }
+
+
+        private final Reader reader;
+
+        private int c;
+        private int offset = -1;
+    }
+
+
+    private final List<String> strings = new ArrayList<String>();
+
+    private final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+
+    private static final int MAGIC = 0x52434154; // 'RCAT'
+
+    private static final int VERSION = 1;
+
+    private static final int MAX_COUNT = 0xFFFF;
+}